@@ -12,13 +12,16 @@ import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
 import software.amazon.awssdk.services.rekognition.model.Image;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -28,6 +31,14 @@ public class AwsImageService implements ImageService {
 
     private static final Logger log = LoggerFactory.getLogger(AwsImageService.class);
     private static RekognitionClient rekognitionClient;
+    private static final int REQUEST_THREADS = 4;
+    private static final AtomicInteger requestThreadNumber = new AtomicInteger();
+    //requests block on the network, so they get their own threads instead of the common pool
+    private static final ExecutorService requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS, r -> {
+        Thread t = new Thread(r, "rekognition-request-" + requestThreadNumber.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
 
     // Static initializer for thread-safe initialization
     static {
@@ -65,25 +76,68 @@ public class AwsImageService implements ImageService {
         }
     }
 
+    private final RekognitionClient client;
+    private final ImagePreprocessor preprocessor;
+
     public AwsImageService() {
-        // Constructor can be empty or do instance-specific initialization
+        this(new ImagePreprocessor());
+    }
+
+    /**
+     * @param preprocessor Scales and encodes images before they are uploaded
+     */
+    public AwsImageService(ImagePreprocessor preprocessor) {
         // The static client is already initialized
+        this(rekognitionClient, preprocessor);
+    }
+
+    /**
+     * Uses the given client instead of the one configured in config.properties, for example one
+     * with its own timeouts or endpoint.
+     */
+    public AwsImageService(RekognitionClient client) {
+        this(client, new ImagePreprocessor());
     }
 
+    public AwsImageService(RekognitionClient client, ImagePreprocessor preprocessor) {
+        this.client = client;
+        this.preprocessor = preprocessor;
+    }
+
+    /**
+     * @return The preprocessor, which also reports how many bytes each request uploads
+     */
+    public ImagePreprocessor getPreprocessor() {
+        return preprocessor;
+    }
+
+    /**
+     * @return True if Rekognition found a cat. False if it did not, and also if it could not be asked;
+     * use {@link #classify} to tell the two apart.
+     */
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
-        if (rekognitionClient == null) {
+        return classify(image, confidenceThreshhold) == ImageVerdict.CAT;
+    }
+
+    /**
+     * @return The verdict, or UNKNOWN if the client is not configured, the image cannot be encoded or
+     * the request fails
+     */
+    @Override
+    public ImageVerdict classify(BufferedImage image, float confidenceThreshhold) {
+        if (client == null) {
             log.error("AWS Rekognition client not initialized");
-            return false;
+            return ImageVerdict.UNKNOWN;
         }
 
-        Image awsImage = null;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "jpg", os);
-            awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
-        } catch (IOException ioe) {
+        Image awsImage;
+        try {
+            //the request keeps its own copy of the bytes, so the encoder's buffer can be reused right away
+            awsImage = preprocessor.encode(image, jpeg -> Image.builder().bytes(SdkBytes.fromByteBuffer(jpeg)).build());
+        } catch (UncheckedIOException ioe) {
             log.error("Error building image byte array", ioe);
-            return false;
+            return ImageVerdict.UNKNOWN;
         }
 
         DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder()
@@ -92,18 +146,28 @@ public class AwsImageService implements ImageService {
                 .build();
 
         try {
-            DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
+            DetectLabelsResponse response = client.detectLabels(detectLabelsRequest);
             logLabelsForFun(response);
-            return response.labels().stream()
+            return ImageVerdict.of(response.labels().stream()
                     .filter(l -> l.name().toLowerCase(Locale.ROOT).contains("cat"))  // FIX: Added Locale.ROOT
                     .findFirst()
-                    .isPresent();
+                    .isPresent());
         } catch (Exception e) {
             log.error("Error detecting labels with AWS Rekognition", e);
-            return false;
+            return ImageVerdict.UNKNOWN;
         }
     }
 
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshold) {
+        return CompletableFuture.supplyAsync(() -> imageContainsCat(image, confidenceThreshold), requestExecutor);
+    }
+
+    @Override
+    public CompletableFuture<ImageVerdict> classifyAsync(BufferedImage image, float confidenceThreshold) {
+        return CompletableFuture.supplyAsync(() -> classify(image, confidenceThreshold), requestExecutor);
+    }
+
     private void logLabelsForFun(DetectLabelsResponse response) {
         log.info(response.labels().stream()
                 .map(label -> String.format("%s(%.1f%%)", label.name(), label.confidence()))
@@ -0,0 +1,337 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ImageService decorator that remembers recent verdicts by a perceptual hash of the image, so
+ * near-identical camera frames do not each cost a call to the wrapped service.
+ *
+ * The hash is a 64-bit difference hash: the image is reduced to a 9x8 grid of average luminance and
+ * each bit records whether a cell is brighter than its right-hand neighbour. Frames whose hashes
+ * differ in at most the configured number of bits are treated as the same picture.
+ *
+ * Verdicts are remembered together with the confidence threshold they were made with. A cat found at
+ * some threshold is also found at any lower one, and a cat not found at some threshold is not found at
+ * any higher one, so a cached verdict answers every request it logically implies. The cache holds a
+ * bounded number of verdicts, evicting the least recently used, and forgets verdicts older than the
+ * time to live. Unknown verdicts are never remembered.
+ *
+ * Near-identical frames are found without scanning the whole cache. The hash is split into
+ * maxDistance + 1 bands and each verdict is indexed under every band of its hash: two hashes that
+ * differ in at most maxDistance bits cannot differ in every band, so only the verdicts sharing a band
+ * with the frame need comparing. Above {@value #MAX_BANDS} bands each band is too narrow to narrow
+ * anything down, so larger distances fall back to scanning every verdict.
+ */
+public class CachingImageService implements ImageService {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    //samples per cell edge when averaging luminance; bounds hashing cost for large frames
+    private static final int SAMPLES_PER_CELL = 4;
+    //most bands the hash is split into, keeping each band at least 4 bits wide
+    private static final int MAX_BANDS = 16;
+
+    private final ImageService delegate;
+    private final Clock clock;
+    private final long ttlMillis;
+    private final int maxDistance;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Verdict> verdicts;
+    //per band of the hash, the verdicts whose hash has each value in that band; null when scanning
+    private final List<Map<Long, List<Verdict>>> bands;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    /**
+     * @param maxEntries Most verdicts remembered at once
+     * @param ttl How long a verdict is remembered
+     * @param maxDistance Most hash bits two frames may differ in to share a verdict, 0 for exact matches only
+     */
+    public CachingImageService(ImageService delegate, int maxEntries, Duration ttl, int maxDistance) {
+        this(delegate, maxEntries, ttl, maxDistance, Clock.systemUTC());
+    }
+
+    public CachingImageService(ImageService delegate, int maxEntries, Duration ttl, int maxDistance, Clock clock) {
+        if (maxEntries < 1 || maxDistance < 0 || maxDistance > Long.SIZE || ttl.isNegative()) {
+            throw new IllegalArgumentException("maxEntries must be positive, maxDistance between 0 and 64 and ttl not negative");
+        }
+        this.delegate = delegate;
+        this.clock = clock;
+        this.ttlMillis = ttl.toMillis();
+        this.maxDistance = maxDistance;
+        this.maxEntries = maxEntries;
+        this.verdicts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Verdict> eldest) {
+                if (size() > CachingImageService.this.maxEntries) {
+                    unindex(eldest.getValue());
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (maxDistance < MAX_BANDS) {
+            this.bands = new ArrayList<>(maxDistance + 1);
+            for (int band = 0; band <= maxDistance; band++) {
+                this.bands.add(new HashMap<>());
+            }
+        } else {
+            this.bands = null;
+        }
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return classify(image, confidenceThreshold) == ImageVerdict.CAT;
+    }
+
+    @Override
+    public ImageVerdict classify(BufferedImage image, float confidenceThreshold) {
+        long hash = differenceHash(image);
+        Boolean cached = lookup(hash, confidenceThreshold);
+        if (cached != null) {
+            return ImageVerdict.of(cached);
+        }
+        ImageVerdict verdict = delegate.classify(image, confidenceThreshold);
+        store(hash, confidenceThreshold, verdict);
+        return verdict;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshold) {
+        return classifyAsync(image, confidenceThreshold).thenApply(verdict -> verdict == ImageVerdict.CAT);
+    }
+
+    @Override
+    public CompletableFuture<ImageVerdict> classifyAsync(BufferedImage image, float confidenceThreshold) {
+        long hash = differenceHash(image);
+        Boolean cached = lookup(hash, confidenceThreshold);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(ImageVerdict.of(cached));
+        }
+        return delegate.classifyAsync(image, confidenceThreshold).thenApply(verdict -> {
+            store(hash, confidenceThreshold, verdict);
+            return verdict;
+        });
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Verdicts dropped to make room for newer ones
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return Verdicts dropped because they outlived the time to live
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    public synchronized int size() {
+        return verdicts.size();
+    }
+
+    /**
+     * @return The cached verdict for a frame with this hash at this threshold, or null if there is none
+     */
+    private synchronized Boolean lookup(long hash, float threshold) {
+        long now = clock.millis();
+        Key exact = new Key(hash, threshold);
+        Verdict verdict = verdicts.get(exact);
+        if (verdict != null) {
+            if (verdict.expiresAt > now) {
+                hitCount++;
+                return verdict.cat;
+            }
+            verdicts.remove(exact);
+            unindex(verdict);
+            expirationCount++;
+        }
+        Verdict match = bands == null ? scan(hash, threshold, now) : search(hash, threshold, now);
+        if (match != null) {
+            //touch it so it counts as recently used
+            verdicts.get(match.key);
+            hitCount++;
+            return match.cat;
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Looks for a near-identical frame's verdict among those sharing a band with the hash, dropping
+     * expired ones it comes across.
+     */
+    private Verdict search(long hash, float threshold, long now) {
+        List<Verdict> expired = new ArrayList<>();
+        Verdict match = null;
+        search:
+        for (int band = 0; band < bands.size(); band++) {
+            List<Verdict> candidates = bands.get(band).get(band(hash, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (Verdict candidate : candidates) {
+                if (candidate.expiresAt <= now) {
+                    if (!expired.contains(candidate)) {
+                        expired.add(candidate);
+                    }
+                } else if (matches(candidate, hash, threshold)) {
+                    match = candidate;
+                    break search;
+                }
+            }
+        }
+        for (Verdict verdict : expired) {
+            verdicts.remove(verdict.key);
+            unindex(verdict);
+            expirationCount++;
+        }
+        return match;
+    }
+
+    /**
+     * Looks for a near-identical frame's verdict among all of them, dropping expired ones it comes across.
+     */
+    private Verdict scan(long hash, float threshold, long now) {
+        Iterator<Verdict> entries = verdicts.values().iterator();
+        while (entries.hasNext()) {
+            Verdict candidate = entries.next();
+            if (candidate.expiresAt <= now) {
+                entries.remove();
+                expirationCount++;
+            } else if (matches(candidate, hash, threshold)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(Verdict candidate, long hash, float threshold) {
+        return Long.bitCount(candidate.key.hash ^ hash) <= maxDistance
+                && implies(candidate.cat, candidate.key.threshold, threshold);
+    }
+
+    private synchronized void store(long hash, float threshold, ImageVerdict verdict) {
+        if (verdict != ImageVerdict.UNKNOWN) {
+            Key key = new Key(hash, threshold);
+            Verdict stored = new Verdict(key, verdict == ImageVerdict.CAT, clock.millis() + ttlMillis);
+            Verdict replaced = verdicts.put(key, stored);
+            if (replaced != null) {
+                unindex(replaced);
+            }
+            if (bands != null) {
+                for (int band = 0; band < bands.size(); band++) {
+                    bands.get(band).computeIfAbsent(band(hash, band), value -> new ArrayList<>()).add(stored);
+                }
+            }
+        }
+    }
+
+    private void unindex(Verdict verdict) {
+        if (bands == null) {
+            return;
+        }
+        for (int band = 0; band < bands.size(); band++) {
+            long value = band(verdict.key.hash, band);
+            List<Verdict> indexed = bands.get(band).get(value);
+            indexed.remove(verdict);
+            if (indexed.isEmpty()) {
+                bands.get(band).remove(value);
+            }
+        }
+    }
+
+    /**
+     * @return The bits of the hash in a band, the bands splitting the 64 bits as evenly as they can
+     */
+    private long band(long hash, int band) {
+        int from = band * Long.SIZE / bands.size();
+        int to = (band + 1) * Long.SIZE / bands.size();
+        long bits = hash >>> from;
+        return to - from == Long.SIZE ? bits : bits & ((1L << (to - from)) - 1);
+    }
+
+    /**
+     * @return True if a verdict made at one threshold also holds at another
+     */
+    private static boolean implies(boolean cat, float verdictThreshold, float requestedThreshold) {
+        return cat ? requestedThreshold <= verdictThreshold : requestedThreshold >= verdictThreshold;
+    }
+
+    /**
+     * Computes the 64-bit difference hash of an image.
+     */
+    static long differenceHash(BufferedImage image) {
+        int[] luminance = new int[HASH_WIDTH * HASH_HEIGHT];
+        LuminanceGrid.sample(image, HASH_WIDTH, HASH_HEIGHT, SAMPLES_PER_CELL, luminance);
+        long hash = 0;
+        for (int row = 0; row < HASH_HEIGHT; row++) {
+            for (int column = 0; column < HASH_WIDTH - 1; column++) {
+                hash <<= 1;
+                if (luminance[row * HASH_WIDTH + column] > luminance[row * HASH_WIDTH + column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static final class Key {
+        private final long hash;
+        private final float threshold;
+
+        private Key(long hash, float threshold) {
+            this.hash = hash;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && Float.compare(threshold, key.threshold) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + Float.hashCode(threshold);
+        }
+    }
+
+    private static final class Verdict {
+        private final Key key;
+        private final boolean cat;
+        private final long expiresAt;
+
+        private Verdict(Key key, boolean cat, long expiresAt) {
+            this.key = key;
+            this.cat = cat;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
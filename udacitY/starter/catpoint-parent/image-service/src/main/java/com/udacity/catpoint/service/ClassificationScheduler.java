@@ -0,0 +1,289 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps classification calls within the image service's request quota while the frames that
+ * matter most are classified first.
+ *
+ * <ul>
+ *     <li>A token bucket limits how many calls start per second, allowing short bursts up to its
+ *     capacity.</li>
+ *     <li>Frames are submitted on lanes, normally one per camera. Each lane holds at most one waiting
+ *     frame. A newer frame on the same lane replaces the waiting one, whose result is cancelled, so
+ *     the quota is never spent on a stale frame.</li>
+ *     <li>Lanes with a waiting frame take turns, so a busy camera cannot starve the others. Lanes
+ *     whose frame has {@link Priority#HIGH} go before any with {@link Priority#LOW}.</li>
+ * </ul>
+ * One dispatcher thread hands calls to the wrapped service; it does not wait for their verdicts.
+ *
+ * A scheduler can be shared by many services, for example every site of a fleet under one account
+ * quota. Lane keys are compared with equals, so each service must use keys no other service does.
+ * A lane only takes up memory while it has a frame waiting.
+ */
+public class ClassificationScheduler implements Closeable {
+
+    /**
+     * How urgently a frame should be classified.
+     */
+    public enum Priority {
+        /** For example, the system is armed and a cat means an alarm. */
+        HIGH,
+        /** For example, the system is disarmed and a cat is only shown. */
+        LOW
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final ImageService delegate;
+    private final double permitsPerNano;
+    private final int burst;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    private final Map<Priority, ArrayDeque<Lane>> ready = new EnumMap<>(Priority.class);
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private boolean closed;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong supersededCount = new AtomicLong();
+
+    /**
+     * @param delegate Service that classifies the frames
+     * @param permitsPerSecond Most calls started per second over time
+     * @param burst Most calls started at once after a quiet period
+     */
+    public ClassificationScheduler(ImageService delegate, double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.delegate = delegate;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        for (Priority priority : PRIORITIES) {
+            ready.put(priority, new ArrayDeque<>());
+        }
+        Thread dispatcher = new Thread(this::dispatch, "classification-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a frame to be classified once a call is allowed and its lane's turn has come.
+     * @param laneKey Identifies the source of the frame, such as one camera of one site. Each lane
+     *                keeps only its newest frame.
+     * @return Completes with the verdict. It is cancelled if a newer frame on the same lane replaces
+     * this one before it is sent, or if the scheduler is closed first. Cancelling it withdraws the
+     * frame, or abandons the call if it was already sent.
+     */
+    public CompletableFuture<ImageVerdict> submit(Object laneKey, BufferedImage image, float confidenceThreshold, Priority priority) {
+        Request request = new Request(image, confidenceThreshold);
+        Request replaced;
+        lock.lock();
+        try {
+            if (closed) {
+                request.result.cancel(false);
+                return request.result;
+            }
+            submittedCount.incrementAndGet();
+            Lane lane = lanes.get(laneKey);
+            if (lane == null) {
+                replaced = null;
+                lane = new Lane(laneKey, request);
+                lanes.put(laneKey, lane);
+                enqueue(lane, priority);
+            } else {
+                replaced = lane.waiting;
+                lane.waiting = request;
+                if (priority.compareTo(lane.queuedAt) < 0) {
+                    //the lane's newest frame is more urgent than the one it was queued for
+                    ready.get(lane.queuedAt).remove(lane);
+                    enqueue(lane, priority);
+                }
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (replaced != null && replaced.result.cancel(false)) {
+            supersededCount.incrementAndGet();
+        }
+        return request.result;
+    }
+
+    /**
+     * @return Lanes with a frame waiting to be sent
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return lanes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return Frames handed to the wrapped service
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return Frames dropped because a newer frame on the same lane arrived before they were sent
+     */
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+
+    /**
+     * Stops the dispatcher and cancels the frames still waiting. Calls already sent are left to finish.
+     */
+    @Override
+    public void close() {
+        List<Request> abandoned = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Lane lane : lanes.values()) {
+                abandoned.add(lane.waiting);
+            }
+            lanes.clear();
+            ready.values().forEach(ArrayDeque::clear);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        abandoned.forEach(request -> request.result.cancel(false));
+    }
+
+    private void enqueue(Lane lane, Priority priority) {
+        lane.queuedAt = priority;
+        ready.get(priority).addLast(lane);
+    }
+
+    private void dispatch() {
+        while (true) {
+            Request request = null;
+            lock.lock();
+            try {
+                while (request == null) {
+                    if (closed) {
+                        return;
+                    }
+                    if (lanes.isEmpty()) {
+                        changed.await();
+                        continue;
+                    }
+                    long wait = nanosUntilToken();
+                    if (wait > 0) {
+                        changed.awaitNanos(wait);
+                        continue;
+                    }
+                    request = next();
+                }
+                tokens--;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            send(request);
+        }
+    }
+
+    /**
+     * Takes the waiting frame of the next lane in turn, most urgent lanes first, skipping frames
+     * whose caller has given up. A lane is forgotten once its frame is taken.
+     */
+    private Request next() {
+        for (Priority priority : PRIORITIES) {
+            ArrayDeque<Lane> queue = ready.get(priority);
+            Lane lane;
+            while ((lane = queue.pollFirst()) != null) {
+                lanes.remove(lane.key);
+                if (!lane.waiting.result.isDone()) {
+                    return lane.waiting;
+                }
+            }
+        }
+        return null;
+    }
+
+    private long nanosUntilToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+    }
+
+    private void send(Request request) {
+        dispatchedCount.incrementAndGet();
+        CompletableFuture<ImageVerdict> analysis;
+        try {
+            analysis = delegate.classifyAsync(request.image, request.threshold);
+        } catch (RuntimeException e) {
+            analysis = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<ImageVerdict> sent = analysis;
+        request.result.whenComplete((verdict, error) -> {
+            if (request.result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        sent.whenComplete((verdict, error) -> {
+            if (error == null) {
+                request.result.complete(verdict);
+            } else {
+                request.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * A lane's place in the turn order and the frame it is waiting to have classified.
+     */
+    private static final class Lane {
+        private final Object key;
+        private Request waiting;
+        //queue the lane is in
+        private Priority queuedAt;
+
+        private Lane(Object key, Request waiting) {
+            this.key = key;
+            this.waiting = waiting;
+        }
+    }
+
+    private static final class Request {
+        private final BufferedImage image;
+        private final float threshold;
+        private final CompletableFuture<ImageVerdict> result = new CompletableFuture<>();
+
+        private Request(BufferedImage image, float threshold) {
+            this.image = image;
+            this.threshold = threshold;
+        }
+    }
+}
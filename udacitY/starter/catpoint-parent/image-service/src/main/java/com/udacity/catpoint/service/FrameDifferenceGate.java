@@ -0,0 +1,92 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Decides whether a camera frame differs enough from the last changed frame to be worth classifying.
+ *
+ * Each frame is reduced to a small grid of average luminance. A grid cell counts as changed if its
+ * luminance moved by more than the pixel delta, and the frame counts as changed if the share of
+ * changed cells reaches the ratio threshold. Frames are compared with the last frame that counted as
+ * changed rather than the one just before, so a scene that drifts slowly is still noticed.
+ *
+ * Both grids are allocated once and reused, so comparing a frame allocates nothing. A gate is not
+ * thread safe.
+ */
+public final class FrameDifferenceGate {
+
+    //samples per cell edge when averaging luminance; bounds comparison cost for large frames
+    private static final int SAMPLES_PER_CELL = 2;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int pixelDelta;
+    private final int changedCellsNeeded;
+    private int[] reference;
+    private int[] current;
+    private boolean hasReference;
+    private double lastChangedRatio;
+
+    /**
+     * @param pixelDelta Luminance change, out of 255, for a grid cell to count as changed
+     * @param changedRatio Share of grid cells that must change for the frame to count as changed
+     */
+    public FrameDifferenceGate(int gridWidth, int gridHeight, int pixelDelta, double changedRatio) {
+        if (gridWidth < 1 || gridHeight < 1 || pixelDelta < 0 || changedRatio < 0 || changedRatio > 1) {
+            throw new IllegalArgumentException("grid must not be empty, pixelDelta not negative and changedRatio between 0 and 1");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.pixelDelta = pixelDelta;
+        this.changedCellsNeeded = Math.max(1, (int) Math.ceil(changedRatio * gridWidth * gridHeight));
+        this.reference = new int[gridWidth * gridHeight];
+        this.current = new int[gridWidth * gridHeight];
+    }
+
+    /**
+     * Compares a frame with the last changed frame. The first frame, and the first after a
+     * {@link #reset()}, always counts as changed. A changed frame becomes the new reference.
+     * @return True if the frame changed enough to classify
+     */
+    public boolean hasChanged(BufferedImage image) {
+        LuminanceGrid.sample(image, gridWidth, gridHeight, SAMPLES_PER_CELL, current);
+        if (!hasReference) {
+            lastChangedRatio = 1;
+            accept();
+            return true;
+        }
+        int changedCells = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (Math.abs(current[i] - reference[i]) > pixelDelta) {
+                changedCells++;
+            }
+        }
+        lastChangedRatio = (double) changedCells / current.length;
+        if (changedCells < changedCellsNeeded) {
+            return false;
+        }
+        accept();
+        return true;
+    }
+
+    /**
+     * Forgets the reference frame, so the next frame counts as changed.
+     */
+    public void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * @return Share of grid cells that changed in the last comparison
+     */
+    public double getLastChangedRatio() {
+        return lastChangedRatio;
+    }
+
+    private void accept() {
+        int[] previous = reference;
+        reference = current;
+        current = previous;
+        hasReference = true;
+    }
+}
@@ -0,0 +1,237 @@
+package com.udacity.catpoint.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Prepares camera frames for upload to an image recognition service: frames larger than the
+ * maximum dimension are scaled down, and the result is encoded as JPEG at a set quality.
+ *
+ * Encoding uses a small pool of encoders. Each one keeps its JPEG writer, its output stream and, as
+ * long as frames keep the same size, its scaled frame, so a steady stream of camera frames creates
+ * little garbage. The encoded bytes are only lent to the caller while it handles them.
+ */
+public final class ImagePreprocessor {
+
+    //label detection works well at this size, and Rekognition accepts far larger images than it needs
+    public static final int DEFAULT_MAX_DIMENSION = 1024;
+    public static final float DEFAULT_JPEG_QUALITY = 0.8f;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int INITIAL_BUFFER_SIZE = 128 * 1024;
+
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final ArrayBlockingQueue<Encoder> pool;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong maxBytes = new AtomicLong();
+    private final AtomicLong totalSourcePixels = new AtomicLong();
+    private final AtomicLong totalEncodedPixels = new AtomicLong();
+
+    public ImagePreprocessor() {
+        this(DEFAULT_MAX_DIMENSION, DEFAULT_JPEG_QUALITY, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param maxDimension Longest side, in pixels, of the encoded image
+     * @param jpegQuality JPEG quality from 0 to 1
+     * @param poolSize Most encoders kept for reuse. Busier callers get a temporary encoder.
+     */
+    public ImagePreprocessor(int maxDimension, float jpegQuality, int poolSize) {
+        if (maxDimension < 1 || jpegQuality < 0 || jpegQuality > 1 || poolSize < 1) {
+            throw new IllegalArgumentException("maxDimension and poolSize must be positive and jpegQuality between 0 and 1");
+        }
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Scales and encodes a frame, and hands the JPEG bytes to the given function.
+     * @param handler Receives the encoded bytes from the buffer's position to its limit. The buffer
+     *                is reused once the handler returns, so it must not be kept.
+     * @return What the handler returned
+     * @throws UncheckedIOException if the frame cannot be encoded
+     */
+    public <T> T encode(BufferedImage image, Function<ByteBuffer, T> handler) {
+        Encoder encoder = pool.poll();
+        if (encoder == null) {
+            encoder = new Encoder();
+        }
+        try {
+            ByteBuffer jpeg = encoder.encode(image);
+            record(image, encoder.encodedPixels, jpeg.remaining());
+            return handler.apply(jpeg);
+        } finally {
+            pool.offer(encoder);
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return Encoded bytes of all frames so far
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getMaxBytesPerRequest() {
+        return maxBytes.get();
+    }
+
+    public double getAverageBytesPerRequest() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : (double) totalBytes.get() / requests;
+    }
+
+    /**
+     * @return Share of source pixels that were encoded, after downscaling
+     */
+    public double getPixelRatio() {
+        long source = totalSourcePixels.get();
+        return source == 0 ? 1 : (double) totalEncodedPixels.get() / source;
+    }
+
+    private void record(BufferedImage source, long encodedPixels, int bytes) {
+        requestCount.incrementAndGet();
+        totalBytes.addAndGet(bytes);
+        maxBytes.accumulateAndGet(bytes, Math::max);
+        totalSourcePixels.addAndGet((long) source.getWidth() * source.getHeight());
+        totalEncodedPixels.addAndGet(encodedPixels);
+    }
+
+    /**
+     * One JPEG writer with the buffers it reuses. Used by one thread at a time.
+     */
+    private final class Encoder {
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        private final ImageWriteParam param = writer.getDefaultWriteParam();
+        private final BufferOutputStream out = new BufferOutputStream();
+        private BufferedImage scaled;
+        private long encodedPixels;
+
+        private Encoder() {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+        }
+
+        private ByteBuffer encode(BufferedImage image) {
+            BufferedImage prepared = prepare(image);
+            encodedPixels = (long) prepared.getWidth() * prepared.getHeight();
+            out.clear();
+            try {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(prepared, null, null), param);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            } finally {
+                writer.reset();
+            }
+            return out.contents();
+        }
+
+        /**
+         * @return The frame scaled down to the maximum dimension, and without alpha, which JPEG cannot hold
+         */
+        private BufferedImage prepare(BufferedImage image) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+            boolean opaqueRgb = image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR;
+            if (scale == 1.0 && opaqueRgb) {
+                return image;
+            }
+            int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(height * scale));
+            scaled = ImageScaling.scale(image, targetWidth, targetHeight, scaled);
+            return scaled;
+        }
+    }
+
+    /**
+     * Image output stream that the JPEG writer writes straight into. Its buffer is kept between frames
+     * and can be read without copying, and the stream itself is never closed, so it serves every frame.
+     */
+    private static final class BufferOutputStream extends ImageOutputStreamImpl {
+        private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        private void clear() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            count = 0;
+        }
+
+        private ByteBuffer contents() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buf[(int) streamPos++] = (byte) b;
+            count = Math.max(count, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buf, (int) streamPos, len);
+            streamPos += len;
+            count = Math.max(count, (int) streamPos);
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            return streamPos < count ? buf[(int) streamPos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            if (streamPos >= count) {
+                return -1;
+            }
+            int n = Math.min(len, count - (int) streamPos);
+            System.arraycopy(buf, (int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return count;
+        }
+
+        private void ensureCapacity(long size) throws IOException {
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Encoded frame is too large");
+            }
+            if (size > buf.length) {
+                buf = Arrays.copyOf(buf, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, buf.length * 2L)));
+            }
+        }
+    }
+}
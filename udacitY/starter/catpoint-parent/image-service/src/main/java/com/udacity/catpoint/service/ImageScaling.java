@@ -0,0 +1,36 @@
+package com.udacity.catpoint.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Scales camera frames before they are analyzed or uploaded.
+ */
+public final class ImageScaling {
+
+    private ImageScaling() {
+    }
+
+    /**
+     * Draws an image at the given size into an opaque RGB image with bilinear interpolation.
+     * Transparent pixels become black.
+     * @param target An earlier result to draw into if it has the same size, or null
+     * @return The target, or a new image if the target was null or of another size
+     */
+    public static BufferedImage scale(BufferedImage image, int width, int height, BufferedImage target) {
+        if (target == null || target.getWidth() != width || target.getHeight() != height) {
+            target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            //the background also replaces whatever an earlier frame left in the target
+            g.drawImage(image, 0, 0, width, height, Color.BLACK, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
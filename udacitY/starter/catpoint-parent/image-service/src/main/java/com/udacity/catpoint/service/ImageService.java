@@ -2,7 +2,43 @@
 package com.udacity.catpoint.service;
 
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
 public interface ImageService {
     boolean imageContainsCat(BufferedImage image, float confidenceThreshold);
+
+    /**
+     * Analyzes an image without blocking the caller. Implementations that talk to a remote service
+     * should override this to use their own threads or a non-blocking client; the default runs
+     * {@link #imageContainsCat} on the common pool.
+     * @return Completes with true if the image contains a cat. Cancelling it abandons the analysis.
+     */
+    default CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshold) {
+        return CompletableFuture.supplyAsync(() -> imageContainsCat(image, confidenceThreshold));
+    }
+
+    /**
+     * Analyzes an image, telling a failed analysis apart from one that found no cat. Implementations
+     * that can fail should override this to return {@link ImageVerdict#UNKNOWN} when they do; the
+     * default trusts {@link #imageContainsCat}.
+     */
+    default ImageVerdict classify(BufferedImage image, float confidenceThreshold) {
+        return ImageVerdict.of(imageContainsCat(image, confidenceThreshold));
+    }
+
+    /**
+     * Analyzes an image without blocking the caller, telling a failed analysis apart from one that
+     * found no cat. The default builds on {@link #imageContainsCatAsync}.
+     * @return Completes with the verdict. Cancelling it abandons the analysis.
+     */
+    default CompletableFuture<ImageVerdict> classifyAsync(BufferedImage image, float confidenceThreshold) {
+        CompletableFuture<Boolean> analysis = imageContainsCatAsync(image, confidenceThreshold);
+        CompletableFuture<ImageVerdict> verdict = analysis.thenApply(ImageVerdict::of);
+        verdict.whenComplete((v, error) -> {
+            if (verdict.isCancelled()) {
+                analysis.cancel(true);
+            }
+        });
+        return verdict;
+    }
 }
\ No newline at end of file
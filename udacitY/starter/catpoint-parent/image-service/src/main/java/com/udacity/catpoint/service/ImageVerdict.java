@@ -0,0 +1,15 @@
+package com.udacity.catpoint.service;
+
+/**
+ * Outcome of analyzing an image for cats.
+ */
+public enum ImageVerdict {
+    CAT,
+    NO_CAT,
+    /** The analysis failed or took too long, so nothing is known about the image. */
+    UNKNOWN;
+
+    public static ImageVerdict of(boolean cat) {
+        return cat ? CAT : NO_CAT;
+    }
+}
@@ -0,0 +1,45 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Reduces an image to a small grid of average luminance, which is cheap to compare between frames.
+ */
+final class LuminanceGrid {
+
+    private LuminanceGrid() {
+    }
+
+    /**
+     * Averages the luminance of each grid cell over a few evenly spaced pixels.
+     * @param samplesPerCell Pixels sampled along each cell edge, which bounds the cost for large images
+     * @param grid Receives the averages, out of 255, row by row
+     */
+    static void sample(BufferedImage image, int gridWidth, int gridHeight, int samplesPerCell, int[] grid) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int row = 0; row < gridHeight; row++) {
+            int y0 = row * height / gridHeight;
+            int y1 = Math.max((row + 1) * height / gridHeight, y0 + 1);
+            int yStep = Math.max((y1 - y0) / samplesPerCell, 1);
+            for (int column = 0; column < gridWidth; column++) {
+                int x0 = column * width / gridWidth;
+                int x1 = Math.max((column + 1) * width / gridWidth, x0 + 1);
+                int xStep = Math.max((x1 - x0) / samplesPerCell, 1);
+                int sum = 0;
+                int samples = 0;
+                for (int y = y0; y < y1 && y < height; y += yStep) {
+                    for (int x = x0; x < x1 && x < width; x += xStep) {
+                        sum += luminance(image.getRGB(x, y));
+                        samples++;
+                    }
+                }
+                grid[row * gridWidth + column] = samples == 0 ? 0 : sum / samples;
+            }
+        }
+    }
+
+    private static int luminance(int rgb) {
+        return (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+    }
+}
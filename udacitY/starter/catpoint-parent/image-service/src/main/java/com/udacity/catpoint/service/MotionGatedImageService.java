@@ -0,0 +1,128 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ImageService decorator that only classifies frames in which something moved. Each frame goes
+ * through a {@link FrameDifferenceGate} first; if the scene has not changed since the last verdict,
+ * that verdict is returned again without calling the wrapped service.
+ *
+ * A verdict is only reused for the confidence threshold it was made with, and never for a frame
+ * that changed after it was requested. If classification fails or its verdict is unknown, the gate
+ * is reset so the next frame is classified.
+ */
+public class MotionGatedImageService implements ImageService {
+
+    private final ImageService delegate;
+    private final FrameDifferenceGate gate;
+
+    //counts frames the gate saw as changed, so a verdict for an older scene is not kept
+    private long scene;
+    private boolean verdictKnown;
+    private boolean lastVerdict;
+    private float lastThreshold;
+
+    private long classifiedCount;
+    private long skippedCount;
+
+    public MotionGatedImageService(ImageService delegate, FrameDifferenceGate gate) {
+        this.delegate = delegate;
+        this.gate = gate;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return classify(image, confidenceThreshold) == ImageVerdict.CAT;
+    }
+
+    @Override
+    public ImageVerdict classify(BufferedImage image, float confidenceThreshold) {
+        long requestScene;
+        synchronized (this) {
+            if (unchanged(image, confidenceThreshold)) {
+                return ImageVerdict.of(lastVerdict);
+            }
+            requestScene = scene;
+        }
+        ImageVerdict verdict;
+        try {
+            verdict = delegate.classify(image, confidenceThreshold);
+        } catch (RuntimeException e) {
+            failed(requestScene);
+            throw e;
+        }
+        classified(requestScene, confidenceThreshold, verdict);
+        return verdict;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshold) {
+        return classifyAsync(image, confidenceThreshold).thenApply(verdict -> verdict == ImageVerdict.CAT);
+    }
+
+    @Override
+    public CompletableFuture<ImageVerdict> classifyAsync(BufferedImage image, float confidenceThreshold) {
+        long requestScene;
+        synchronized (this) {
+            if (unchanged(image, confidenceThreshold)) {
+                return CompletableFuture.completedFuture(ImageVerdict.of(lastVerdict));
+            }
+            requestScene = scene;
+        }
+        return delegate.classifyAsync(image, confidenceThreshold).whenComplete((verdict, throwable) -> {
+            if (throwable == null) {
+                classified(requestScene, confidenceThreshold, verdict);
+            } else {
+                failed(requestScene);
+            }
+        });
+    }
+
+    /**
+     * @return Frames passed on to the wrapped service
+     */
+    public synchronized long getClassifiedCount() {
+        return classifiedCount;
+    }
+
+    /**
+     * @return Frames answered with the last verdict because nothing moved
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return True if the last verdict still applies to this frame
+     */
+    private boolean unchanged(BufferedImage image, float threshold) {
+        if (gate.hasChanged(image)) {
+            scene++;
+            verdictKnown = false;
+            return false;
+        }
+        if (verdictKnown && Float.compare(threshold, lastThreshold) == 0) {
+            skippedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void classified(long requestScene, float threshold, ImageVerdict verdict) {
+        classifiedCount++;
+        if (verdict == ImageVerdict.UNKNOWN) {
+            failed(requestScene);
+        } else if (requestScene == scene) {
+            verdictKnown = true;
+            lastVerdict = verdict == ImageVerdict.CAT;
+            lastThreshold = threshold;
+        }
+    }
+
+    private synchronized void failed(long requestScene) {
+        if (requestScene == scene) {
+            gate.reset();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.udacity.catpoint.service;
+
+import java.time.Duration;
+
+/**
+ * How {@link ResilientImageService} protects callers from a slow or failing image service.
+ */
+public final class ResilienceSettings {
+
+    public static final ResilienceSettings DEFAULT = new ResilienceSettings(Duration.ofSeconds(3), 5, Duration.ofSeconds(30), true);
+
+    private final Duration budget;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final boolean hedging;
+
+    /**
+     * @param budget Longest a caller waits for a verdict before it is unknown
+     * @param failureThreshold Failures in a row that open the circuit
+     * @param openDuration How long an open circuit answers unknown before it lets a trial request through
+     * @param hedging Whether to send a second request when the first is slower than usual
+     */
+    public ResilienceSettings(Duration budget, int failureThreshold, Duration openDuration, boolean hedging) {
+        if (budget.isNegative() || budget.isZero() || failureThreshold < 1 || openDuration.isNegative()) {
+            throw new IllegalArgumentException("budget and failureThreshold must be positive and openDuration not negative");
+        }
+        this.budget = budget;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.hedging = hedging;
+    }
+
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+}
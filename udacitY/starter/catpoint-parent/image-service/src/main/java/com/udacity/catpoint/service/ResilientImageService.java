@@ -0,0 +1,344 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ImageService decorator that keeps a slow or failing image service from holding up its callers or
+ * passing off a failure as "no cat".
+ *
+ * <ul>
+ *     <li>Every call has a latency budget. If no verdict has arrived when it runs out, the verdict is
+ *     {@link ImageVerdict#UNKNOWN}.</li>
+ *     <li>Failures, timeouts and unknown verdicts from the wrapped service count as failures. After
+ *     enough of them in a row the circuit opens, and calls answer unknown at once without calling the
+ *     wrapped service. Once the open duration has passed, one trial call is let through; its outcome
+ *     closes the circuit again or keeps it open.</li>
+ *     <li>With hedging on, a call that is still waiting after the 95th percentile of recent successful
+ *     latencies sends a second request, and the first verdict to arrive wins.</li>
+ * </ul>
+ * {@link #imageContainsCat} reports an unknown verdict as false, so callers that must not mistake an
+ * outage for an empty picture should use {@link #classify}.
+ */
+public class ResilientImageService implements ImageService {
+
+    /**
+     * State of the circuit breaker.
+     */
+    public enum CircuitState {
+        /** Calls go to the wrapped service. */
+        CLOSED,
+        /** Calls answer unknown without calling the wrapped service. */
+        OPEN,
+        /** One trial call is on its way to the wrapped service; other calls answer unknown. */
+        HALF_OPEN
+    }
+
+    private static final int LATENCY_SAMPLES = 128;
+    //fewer successful calls than this give no reliable percentile, so no hedging yet
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final ImageService delegate;
+    private final Clock clock;
+    private final long budgetNanos;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final boolean hedging;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilMillis;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private final long[] sortedLatencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int nextLatency;
+    private long hedgeDelayNanos = -1;
+    private boolean hedgeDelayStale;
+
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong shortCircuitCount = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    public ResilientImageService(ImageService delegate, ResilienceSettings settings) {
+        this(delegate, settings, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock Decides when an open circuit lets a trial call through. Budgets and hedging
+     *              always use real time.
+     */
+    public ResilientImageService(ImageService delegate, ResilienceSettings settings, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.budgetNanos = settings.getBudget().toNanos();
+        this.failureThreshold = settings.getFailureThreshold();
+        this.openMillis = settings.getOpenDuration().toMillis();
+        this.hedging = settings.isHedging();
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return classify(image, confidenceThreshold) == ImageVerdict.CAT;
+    }
+
+    /**
+     * Waits at most the latency budget for a verdict.
+     */
+    @Override
+    public ImageVerdict classify(BufferedImage image, float confidenceThreshold) {
+        return classifyAsync(image, confidenceThreshold).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshold) {
+        return classifyAsync(image, confidenceThreshold).thenApply(verdict -> verdict == ImageVerdict.CAT);
+    }
+
+    /**
+     * @return Completes with the verdict, or with UNKNOWN when the call fails, runs out of budget or
+     * the circuit is open. It never completes exceptionally. Cancelling it abandons the requests.
+     */
+    @Override
+    public CompletableFuture<ImageVerdict> classifyAsync(BufferedImage image, float confidenceThreshold) {
+        if (!tryAcquire()) {
+            shortCircuitCount.incrementAndGet();
+            return CompletableFuture.completedFuture(ImageVerdict.UNKNOWN);
+        }
+        return new Call(image, confidenceThreshold).start();
+    }
+
+    public synchronized CircuitState getCircuitState() {
+        return state;
+    }
+
+    /**
+     * @return Delay after which a second request is sent, or null while hedging is off or there are
+     * too few samples
+     */
+    public Duration getHedgeDelay() {
+        long delay = hedgeDelay();
+        return delay < 0 ? null : Duration.ofNanos(delay);
+    }
+
+    public long getSuccessCount() {
+        return successCount.get();
+    }
+
+    /**
+     * @return Calls that ended unknown after reaching the wrapped service, including timeouts
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return Calls answered unknown without reaching the wrapped service because the circuit was open
+     */
+    public long getShortCircuitCount() {
+        return shortCircuitCount.get();
+    }
+
+    /**
+     * @return How many times the circuit has opened
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return Hedged requests that answered before the request they were hedging
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == CircuitState.CLOSED) {
+            return true;
+        }
+        if (state == CircuitState.OPEN && clock.millis() >= openUntilMillis) {
+            state = CircuitState.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void succeeded(long latencyNanos) {
+        successCount.incrementAndGet();
+        consecutiveFailures = 0;
+        state = CircuitState.CLOSED;
+        latencies[nextLatency] = latencyNanos;
+        nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+        hedgeDelayStale = true;
+    }
+
+    private synchronized void failed() {
+        failureCount.incrementAndGet();
+        if (state == CircuitState.OPEN) {
+            //a call from before the circuit opened
+            return;
+        }
+        if (state == CircuitState.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = CircuitState.OPEN;
+            openUntilMillis = clock.millis() + openMillis;
+            consecutiveFailures = 0;
+            openCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * A cancelled trial call says nothing about the wrapped service, so the next call is a trial instead.
+     */
+    private synchronized void abandoned() {
+        if (state == CircuitState.HALF_OPEN) {
+            state = CircuitState.OPEN;
+            openUntilMillis = clock.millis();
+        }
+    }
+
+    private synchronized long hedgeDelay() {
+        if (!hedging || latencyCount < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        if (hedgeDelayStale) {
+            System.arraycopy(latencies, 0, sortedLatencies, 0, latencyCount);
+            Arrays.sort(sortedLatencies, 0, latencyCount);
+            hedgeDelayNanos = sortedLatencies[(int) Math.ceil(HEDGE_PERCENTILE * latencyCount) - 1];
+            hedgeDelayStale = false;
+        }
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * One call: its requests to the wrapped service and the verdict it settles on.
+     */
+    private final class Call {
+        private final BufferedImage image;
+        private final float threshold;
+        private final CompletableFuture<ImageVerdict> result = new CompletableFuture<>();
+        private final List<CompletableFuture<ImageVerdict>> attempts = new ArrayList<>(2);
+        private int pending;
+        private boolean settled;
+
+        private Call(BufferedImage image, float threshold) {
+            this.image = image;
+            this.threshold = threshold;
+        }
+
+        private CompletableFuture<ImageVerdict> start() {
+            result.whenComplete((verdict, error) -> {
+                if (result.isCancelled()) {
+                    cancelAttempts();
+                    abandoned();
+                }
+            });
+            launch(false);
+            CompletableFuture.delayedExecutor(budgetNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                if (settle()) {
+                    timeoutCount.incrementAndGet();
+                    failed();
+                    decide(ImageVerdict.UNKNOWN);
+                }
+            });
+            long hedgeDelay = hedgeDelay();
+            if (hedgeDelay >= 0 && hedgeDelay < budgetNanos) {
+                CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+                    if (!result.isDone()) {
+                        hedgeCount.incrementAndGet();
+                        launch(true);
+                    }
+                });
+            }
+            return result;
+        }
+
+        private void launch(boolean hedge) {
+            long start = System.nanoTime();
+            CompletableFuture<ImageVerdict> attempt;
+            try {
+                attempt = delegate.classifyAsync(image, threshold);
+            } catch (RuntimeException e) {
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            boolean decided;
+            synchronized (this) {
+                attempts.add(attempt);
+                pending++;
+                decided = settled || result.isDone();
+            }
+            if (decided) {
+                attempt.cancel(true);
+            }
+            attempt.whenComplete((verdict, error) -> finished(verdict, error, start, hedge));
+        }
+
+        private void finished(ImageVerdict verdict, Throwable error, long start, boolean hedge) {
+            boolean last;
+            synchronized (this) {
+                last = --pending == 0;
+            }
+            if (error == null && verdict != ImageVerdict.UNKNOWN) {
+                if (settle()) {
+                    succeeded(System.nanoTime() - start);
+                    if (hedge) {
+                        hedgeWinCount.incrementAndGet();
+                    }
+                    decide(verdict);
+                }
+            } else if (last && settle()) {
+                //a request still pending may yet answer, so only the last failure decides
+                failed();
+                decide(ImageVerdict.UNKNOWN);
+            }
+        }
+
+        /**
+         * Claims the right to decide the verdict. The outcome is recorded before the verdict is
+         * handed out, so a caller that got it sees the circuit state it led to.
+         */
+        private synchronized boolean settle() {
+            if (settled || result.isDone()) {
+                return false;
+            }
+            settled = true;
+            return true;
+        }
+
+        private void decide(ImageVerdict verdict) {
+            cancelAttempts();
+            result.complete(verdict);
+        }
+
+        private void cancelAttempts() {
+            List<CompletableFuture<ImageVerdict>> outstanding;
+            synchronized (this) {
+                outstanding = new ArrayList<>(attempts);
+            }
+            for (CompletableFuture<ImageVerdict> attempt : outstanding) {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
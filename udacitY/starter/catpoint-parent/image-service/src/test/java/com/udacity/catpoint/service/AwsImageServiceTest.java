@@ -0,0 +1,105 @@
+package com.udacity.catpoint.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs AwsImageService against a local stand-in for the Rekognition endpoint.
+ */
+public class AwsImageServiceTest {
+
+    private HttpServer server;
+    private RekognitionClient client;
+    private volatile int status;
+    private volatile String body;
+
+    @BeforeEach
+    void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.start();
+        client = RekognitionClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("id", "secret")))
+                .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none()))
+                .build();
+    }
+
+    @AfterEach
+    void close() {
+        client.close();
+        server.stop(0);
+    }
+
+    private void respond(int status, String body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    @Test
+    void catLabel_cat() {
+        respond(200, "{\"Labels\":[{\"Name\":\"Cat\",\"Confidence\":97.5},{\"Name\":\"Sofa\",\"Confidence\":80.1}]}");
+
+        assertEquals(ImageVerdict.CAT, new AwsImageService(client).classify(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+    }
+
+    @Test
+    void otherLabels_noCat() {
+        respond(200, "{\"Labels\":[{\"Name\":\"Dog\",\"Confidence\":91.0}]}");
+
+        AwsImageService service = new AwsImageService(client);
+
+        assertEquals(ImageVerdict.NO_CAT, service.classify(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        assertEquals(1, service.getPreprocessor().getRequestCount());
+    }
+
+    @Test
+    void serviceError_unknown() {
+        respond(500, "{\"__type\":\"InternalServerError\",\"message\":\"down\"}");
+
+        AwsImageService service = new AwsImageService(client);
+
+        assertEquals(ImageVerdict.UNKNOWN, service.classify(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        assertFalse(service.imageContainsCat(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+    }
+
+    @Test
+    void serviceErrors_openCircuit() {
+        respond(500, "{\"__type\":\"InternalServerError\",\"message\":\"down\"}");
+        ResilientImageService service = new ResilientImageService(new AwsImageService(client),
+                new ResilienceSettings(Duration.ofSeconds(5), 2, Duration.ofMinutes(1), false));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ImageVerdict.UNKNOWN, service.classify(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        }
+
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+        assertEquals(1, service.getShortCircuitCount());
+    }
+}
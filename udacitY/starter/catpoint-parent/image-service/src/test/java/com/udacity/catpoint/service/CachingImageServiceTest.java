@@ -0,0 +1,186 @@
+package com.udacity.catpoint.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CachingImageServiceTest {
+
+    private final ImageService delegate = mock(ImageService.class, CALLS_REAL_METHODS);
+    private final Clock clock = mock(Clock.class);
+
+    @BeforeEach
+    void init() {
+        when(clock.millis()).thenReturn(0L);
+    }
+
+    private static BufferedImage gradient(boolean reversed) {
+        return gradient(reversed, reversed);
+    }
+
+    /**
+     * Image whose brightness rises from left to right, or falls if reversed, separately for each half.
+     */
+    private static BufferedImage gradient(boolean topReversed, boolean bottomReversed) {
+        BufferedImage image = new BufferedImage(90, 80, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            boolean reversed = y < image.getHeight() / 2 ? topReversed : bottomReversed;
+            for (int x = 0; x < image.getWidth(); x++) {
+                int level = (reversed ? image.getWidth() - 1 - x : x) * 255 / image.getWidth();
+                image.setRGB(x, y, level << 16 | level << 8 | level);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void nearIdenticalFrame_answeredFromCache() {
+        CachingImageService cache = new CachingImageService(delegate, 16, Duration.ofMinutes(1), 4, clock);
+        BufferedImage frame = gradient(false);
+        BufferedImage noisyFrame = gradient(false);
+        noisyFrame.setRGB(3, 3, 0xFFFFFF);
+        when(delegate.imageContainsCat(any(), anyFloat())).thenReturn(true);
+
+        assertTrue(cache.imageContainsCat(frame, 50.0f));
+        assertTrue(cache.imageContainsCat(noisyFrame, 50.0f));
+
+        verify(delegate, times(1)).imageContainsCat(any(), anyFloat());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void differentFrame_callsDelegate() {
+        CachingImageService cache = new CachingImageService(delegate, 16, Duration.ofMinutes(1), 4, clock);
+
+        cache.imageContainsCat(gradient(false), 50.0f);
+        cache.imageContainsCat(gradient(true), 50.0f);
+
+        verify(delegate, times(2)).imageContainsCat(any(), anyFloat());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void verdict_reusedOnlyForThresholdsItImplies() {
+        CachingImageService cache = new CachingImageService(delegate, 16, Duration.ofMinutes(1), 0, clock);
+        BufferedImage frame = gradient(false);
+        when(delegate.imageContainsCat(frame, 50.0f)).thenReturn(true);
+        when(delegate.imageContainsCat(frame, 90.0f)).thenReturn(false);
+
+        cache.imageContainsCat(frame, 50.0f);
+        //a cat at 50% confidence is a cat at 30%, but says nothing about 90%
+        assertTrue(cache.imageContainsCat(frame, 30.0f));
+        assertFalse(cache.imageContainsCat(frame, 90.0f));
+        //no cat at 90% means no cat at 95%
+        assertFalse(cache.imageContainsCat(frame, 95.0f));
+
+        verify(delegate, times(2)).imageContainsCat(eq(frame), anyFloat());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void expiredVerdict_notReused() {
+        CachingImageService cache = new CachingImageService(delegate, 16, Duration.ofSeconds(10), 4, clock);
+        BufferedImage frame = gradient(false);
+
+        cache.imageContainsCat(frame, 50.0f);
+        when(clock.millis()).thenReturn(10_000L);
+        cache.imageContainsCat(frame, 50.0f);
+
+        verify(delegate, times(2)).imageContainsCat(any(), anyFloat());
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void fullCache_evictsLeastRecentlyUsed() {
+        CachingImageService cache = new CachingImageService(delegate, 2, Duration.ofMinutes(1), 0, clock);
+        BufferedImage rising = gradient(false);
+        BufferedImage falling = gradient(true);
+        BufferedImage mixed = gradient(false, true);
+
+        cache.imageContainsCat(rising, 50.0f);
+        cache.imageContainsCat(falling, 50.0f);
+        cache.imageContainsCat(rising, 50.0f);
+        cache.imageContainsCat(mixed, 50.0f);
+        cache.imageContainsCat(rising, 50.0f);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Image made of 9x8 blocks of random brightness, so its hash is random too.
+     */
+    private static BufferedImage blocks(Random random) {
+        BufferedImage image = new BufferedImage(90, 80, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 9; column++) {
+                fillBlock(image, row, column, random.nextInt(256));
+            }
+        }
+        return image;
+    }
+
+    private static void fillBlock(BufferedImage image, int row, int column, int level) {
+        for (int y = row * 10; y < row * 10 + 10; y++) {
+            for (int x = column * 10; x < column * 10 + 10; x++) {
+                image.setRGB(x, y, level << 16 | level << 8 | level);
+            }
+        }
+    }
+
+    @Test
+    void manyVerdicts_nearIdenticalFramesFoundAsByComparingEveryHash() {
+        for (int maxDistance : new int[] {0, 2, 4, 15, 16, 64}) {
+            CachingImageService cache = new CachingImageService(delegate, 2000, Duration.ofMinutes(1), maxDistance, clock);
+            Random random = new Random(maxDistance);
+            List<BufferedImage> frames = new ArrayList<>();
+            List<Long> cached = new ArrayList<>();
+            long expectedMisses = 0;
+            for (int i = 0; i < 1000; i++) {
+                BufferedImage frame = blocks(random);
+                if (i < 500) {
+                    frames.add(frame);
+                } else {
+                    //from here on, frames are earlier ones with a block changed
+                    frame.setData(frames.get(i - 500).getData());
+                    fillBlock(frame, random.nextInt(8), random.nextInt(9), random.nextInt(256));
+                }
+                long hash = CachingImageService.differenceHash(frame);
+                if (cached.stream().noneMatch(other -> Long.bitCount(other ^ hash) <= maxDistance)) {
+                    expectedMisses++;
+                    cached.add(hash);
+                }
+                cache.imageContainsCat(frame, 50.0f);
+            }
+
+            assertTrue(expectedMisses < 1000);
+            assertEquals(expectedMisses, cache.getMissCount(), "maxDistance " + maxDistance);
+        }
+    }
+
+    @Test
+    void asyncMiss_cachesVerdictWhenAnalysisCompletes() {
+        CachingImageService cache = new CachingImageService(delegate, 16, Duration.ofMinutes(1), 4, clock);
+        BufferedImage frame = gradient(false);
+        doReturn(CompletableFuture.completedFuture(true)).when(delegate).imageContainsCatAsync(frame, 50.0f);
+
+        assertTrue(cache.imageContainsCatAsync(frame, 50.0f).join());
+        assertTrue(cache.imageContainsCatAsync(frame, 50.0f).join());
+
+        verify(delegate, times(1)).imageContainsCatAsync(any(), anyFloat());
+        verify(delegate, never()).imageContainsCat(any(), anyFloat());
+    }
+}
@@ -0,0 +1,144 @@
+package com.udacity.catpoint.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ClassificationSchedulerTest {
+
+    private final ImageService delegate = mock(ImageService.class, CALLS_REAL_METHODS);
+    //frames in the order the wrapped service was asked about them
+    private final List<BufferedImage> classified = new CopyOnWriteArrayList<>();
+    private ClassificationScheduler scheduler;
+
+    private ClassificationScheduler scheduler(double permitsPerSecond, int burst) {
+        doAnswer(call -> {
+            classified.add(call.getArgument(0));
+            return CompletableFuture.completedFuture(ImageVerdict.CAT);
+        }).when(delegate).classifyAsync(any(), anyFloat());
+        scheduler = new ClassificationScheduler(delegate, permitsPerSecond, burst);
+        return scheduler;
+    }
+
+    @AfterEach
+    void close() {
+        scheduler.close();
+    }
+
+    private static BufferedImage frame() {
+        return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Sends a first frame and waits until it has used up the only token, so the next frames have to wait.
+     */
+    private void useUpToken() throws InterruptedException {
+        scheduler.submit("warm-up", frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        while (scheduler.getDispatchedCount() == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void manyCameras_callsKeptToRate() {
+        scheduler(50, 5);
+        CompletableFuture<?>[] results = new CompletableFuture<?>[30];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < results.length; i++) {
+            results[i] = scheduler.submit("camera-" + i, frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        }
+        CompletableFuture.allOf(results).join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //five calls start at once, the other twenty-five at fifty per second
+        assertTrue(elapsedMillis >= 400, "30 calls took " + elapsedMillis + "ms");
+        assertEquals(30, scheduler.getDispatchedCount());
+    }
+
+    @Test
+    void newerFrame_replacesWaitingFrame() throws InterruptedException {
+        scheduler(5, 1);
+        useUpToken();
+        BufferedImage newest = frame();
+
+        CompletableFuture<ImageVerdict> first = scheduler.submit("garden", frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture<ImageVerdict> second = scheduler.submit("garden", frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture<ImageVerdict> third = scheduler.submit("garden", newest, 50.0f, ClassificationScheduler.Priority.HIGH);
+
+        assertEquals(ImageVerdict.CAT, third.join());
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertEquals(newest, classified.get(1));
+        assertEquals(2, scheduler.getDispatchedCount());
+        assertEquals(2, scheduler.getSupersededCount());
+        assertEquals(0, scheduler.getWaitingCount());
+    }
+
+    @Test
+    void sameCameraIdOnDifferentLanes_neitherReplaced() throws InterruptedException {
+        scheduler(5, 1);
+        useUpToken();
+
+        CompletableFuture<ImageVerdict> home = scheduler.submit(List.of("home", "garden"), frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture<ImageVerdict> office = scheduler.submit(List.of("office", "garden"), frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        assertEquals(2, scheduler.getWaitingCount());
+
+        assertEquals(ImageVerdict.CAT, home.join());
+        assertEquals(ImageVerdict.CAT, office.join());
+        assertEquals(0, scheduler.getSupersededCount());
+    }
+
+    @Test
+    void highPriority_sentBeforeLowPriority() throws InterruptedException {
+        scheduler(5, 1);
+        useUpToken();
+        BufferedImage disarmed = frame();
+        BufferedImage armed = frame();
+
+        CompletableFuture<ImageVerdict> low = scheduler.submit("kitchen", disarmed, 50.0f, ClassificationScheduler.Priority.LOW);
+        CompletableFuture<ImageVerdict> high = scheduler.submit("garden", armed, 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture.allOf(low, high).join();
+
+        assertEquals(List.of(armed, disarmed), classified.subList(1, 3));
+    }
+
+    @Test
+    void busyCamera_takesTurnsWithOthers() throws InterruptedException {
+        scheduler(10, 1);
+        useUpToken();
+        BufferedImage busyFrame = frame();
+        BufferedImage quietFrame = frame();
+
+        scheduler.submit("busy", busyFrame, 50.0f, ClassificationScheduler.Priority.HIGH);
+        while (scheduler.getDispatchedCount() < 2) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<ImageVerdict> quiet = scheduler.submit("quiet", quietFrame, 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture<ImageVerdict> busy = scheduler.submit("busy", busyFrame, 50.0f, ClassificationScheduler.Priority.HIGH);
+        CompletableFuture.allOf(quiet, busy).join();
+
+        assertEquals(List.of(busyFrame, quietFrame, busyFrame), classified.subList(1, 4));
+    }
+
+    @Test
+    void close_cancelsWaitingFrames() throws InterruptedException {
+        scheduler(1, 1);
+        useUpToken();
+
+        CompletableFuture<ImageVerdict> waiting = scheduler.submit("garden", frame(), 50.0f, ClassificationScheduler.Priority.HIGH);
+        scheduler.close();
+
+        assertTrue(waiting.isCancelled());
+        assertTrue(scheduler.submit("garden", frame(), 50.0f, ClassificationScheduler.Priority.HIGH).isCancelled());
+        assertEquals(1, scheduler.getDispatchedCount());
+    }
+}
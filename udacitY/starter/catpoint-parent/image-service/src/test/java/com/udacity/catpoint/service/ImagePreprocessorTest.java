@@ -0,0 +1,111 @@
+package com.udacity.catpoint.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImagePreprocessorTest {
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y += 7) {
+            for (int x = 0; x < width; x += 3) {
+                image.setRGB(x, y, 0xFF000000 | (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decode(ByteBuffer jpeg) {
+        byte[] bytes = new byte[jpeg.remaining()];
+        jpeg.duplicate().get(bytes);
+        try {
+            return ImageIO.read(new ByteArrayInputStream(bytes));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Test
+    void largeFrame_scaledToMaxDimension() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(640, 0.8f, 2);
+
+        BufferedImage encoded = preprocessor.encode(image(3840, 2160, BufferedImage.TYPE_INT_RGB), ImagePreprocessorTest::decode);
+
+        assertEquals(640, encoded.getWidth());
+        assertEquals(360, encoded.getHeight());
+        assertEquals(1, preprocessor.getRequestCount());
+        assertTrue(preprocessor.getPixelRatio() < 0.03);
+    }
+
+    @Test
+    void smallFrame_keepsItsSize() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(640, 0.8f, 2);
+
+        BufferedImage encoded = preprocessor.encode(image(320, 240, BufferedImage.TYPE_INT_RGB), ImagePreprocessorTest::decode);
+
+        assertEquals(320, encoded.getWidth());
+        assertEquals(1.0, preprocessor.getPixelRatio());
+    }
+
+    @Test
+    void frameWithAlpha_encoded() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(640, 0.8f, 2);
+
+        assertNotNull(preprocessor.encode(image(100, 100, BufferedImage.TYPE_INT_ARGB), ImagePreprocessorTest::decode));
+    }
+
+    @Test
+    void lowerQuality_fewerBytesPerRequest() {
+        BufferedImage frame = image(800, 600, BufferedImage.TYPE_INT_RGB);
+        ImagePreprocessor high = new ImagePreprocessor(1024, 0.95f, 1);
+        ImagePreprocessor low = new ImagePreprocessor(1024, 0.3f, 1);
+
+        high.encode(frame, ByteBuffer::remaining);
+        low.encode(frame, ByteBuffer::remaining);
+
+        assertTrue(low.getTotalBytes() < high.getTotalBytes());
+    }
+
+    @Test
+    void repeatedFrames_reuseEncoderBuffer() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(640, 0.8f, 1);
+        BufferedImage frame = image(1280, 720, BufferedImage.TYPE_INT_RGB);
+
+        byte[] first = preprocessor.encode(frame, ByteBuffer::array);
+        byte[] second = preprocessor.encode(frame, ByteBuffer::array);
+
+        assertSame(first, second);
+        assertEquals(2, preprocessor.getRequestCount());
+        assertEquals(preprocessor.getTotalBytes() / 2.0, preprocessor.getAverageBytesPerRequest());
+        assertEquals(preprocessor.getMaxBytesPerRequest(), preprocessor.getTotalBytes() / 2);
+    }
+
+    @Test
+    void frameLargerThanBuffer_thenSmallerFrame_bothDecode() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(1024, 1.0f, 1);
+        BufferedImage noise = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                noise.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        BufferedImage large = preprocessor.encode(noise, ImagePreprocessorTest::decode);
+        assertTrue(preprocessor.getMaxBytesPerRequest() > 128 * 1024);
+        BufferedImage small = preprocessor.encode(image(64, 48, BufferedImage.TYPE_INT_RGB), ImagePreprocessorTest::decode);
+
+        assertEquals(1024, large.getWidth());
+        assertEquals(64, small.getWidth());
+        assertEquals(48, small.getHeight());
+    }
+}
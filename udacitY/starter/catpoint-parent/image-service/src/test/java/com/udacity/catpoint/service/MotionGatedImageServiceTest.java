@@ -0,0 +1,116 @@
+package com.udacity.catpoint.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MotionGatedImageServiceTest {
+
+    private final ImageService delegate = mock(ImageService.class, CALLS_REAL_METHODS);
+    private final FrameDifferenceGate gate = new FrameDifferenceGate(32, 24, 16, 0.02);
+    private final MotionGatedImageService gatedService = new MotionGatedImageService(delegate, gate);
+
+    /**
+     * Grey frame with a black square at the given position, standing in for something that moves.
+     */
+    private static BufferedImage frame(int squareX) {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, 320, 240);
+        g.setColor(Color.BLACK);
+        g.fillRect(squareX, 100, 40, 40);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    void unchangedFrames_reuseLastVerdict() {
+        when(delegate.imageContainsCat(any(), anyFloat())).thenReturn(true);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(gatedService.imageContainsCat(frame(20), 50.0f));
+        }
+
+        verify(delegate, times(1)).imageContainsCat(any(), anyFloat());
+        assertEquals(9, gatedService.getSkippedCount());
+    }
+
+    @Test
+    void movement_classifiedAgain() {
+        when(delegate.imageContainsCat(any(), anyFloat())).thenReturn(false, true);
+
+        assertFalse(gatedService.imageContainsCat(frame(20), 50.0f));
+        assertTrue(gatedService.imageContainsCat(frame(200), 50.0f));
+
+        verify(delegate, times(2)).imageContainsCat(any(), anyFloat());
+        assertTrue(gate.getLastChangedRatio() > 0.02);
+    }
+
+    @Test
+    void slowDrift_comparedAgainstLastChangedFrame() {
+        gatedService.imageContainsCat(frame(0), 50.0f);
+        for (int x = 2; x <= 60; x += 2) {
+            gatedService.imageContainsCat(frame(x), 50.0f);
+        }
+
+        //each step is too small on its own, but the square ends up somewhere else
+        verify(delegate, atLeast(2)).imageContainsCat(any(), anyFloat());
+        assertTrue(gatedService.getSkippedCount() > 0);
+    }
+
+    @Test
+    void differentThreshold_notAnsweredFromLastVerdict() {
+        gatedService.imageContainsCat(frame(20), 50.0f);
+        gatedService.imageContainsCat(frame(20), 90.0f);
+
+        verify(delegate).imageContainsCat(any(), eq(50.0f));
+        verify(delegate).imageContainsCat(any(), eq(90.0f));
+    }
+
+    @Test
+    void failedClassification_nextFrameClassified() {
+        when(delegate.imageContainsCat(any(), anyFloat())).thenThrow(new IllegalStateException()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> gatedService.imageContainsCat(frame(20), 50.0f));
+        assertTrue(gatedService.imageContainsCat(frame(20), 50.0f));
+
+        verify(delegate, times(2)).imageContainsCat(any(), anyFloat());
+    }
+
+    @Test
+    void asyncVerdict_reusedOnceAvailable() {
+        CompletableFuture<Boolean> analysis = new CompletableFuture<>();
+        doReturn(analysis, CompletableFuture.completedFuture(true)).when(delegate).imageContainsCatAsync(any(), anyFloat());
+
+        CompletableFuture<Boolean> first = gatedService.imageContainsCatAsync(frame(20), 50.0f);
+        //verdict still pending, so the unchanged frame cannot be answered yet
+        gatedService.imageContainsCatAsync(frame(20), 50.0f);
+        analysis.complete(true);
+        assertTrue(gatedService.imageContainsCatAsync(frame(20), 50.0f).join());
+
+        assertTrue(first.join());
+        verify(delegate, times(2)).imageContainsCatAsync(any(), anyFloat());
+        assertEquals(1, gatedService.getSkippedCount());
+    }
+
+    @Test
+    void comparison_fastEnoughForLiveVideo() {
+        BufferedImage still = frame(20);
+        gate.hasChanged(still);
+        int frames = 2_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            gate.hasChanged(still);
+        }
+        long nanosPerFrame = (System.nanoTime() - start) / frames;
+
+        assertTrue(nanosPerFrame < 1_000_000, "comparison took " + nanosPerFrame + "ns per frame");
+    }
+}
@@ -0,0 +1,121 @@
+package com.udacity.catpoint.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ResilientImageServiceTest {
+
+    private final ImageService delegate = mock(ImageService.class, CALLS_REAL_METHODS);
+    private final Clock clock = mock(Clock.class);
+    private final BufferedImage frame = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    @BeforeEach
+    void init() {
+        when(clock.millis()).thenReturn(0L);
+    }
+
+    private ResilientImageService resilient(Duration budget, int failureThreshold, boolean hedging) {
+        return new ResilientImageService(delegate, new ResilienceSettings(budget, failureThreshold, Duration.ofSeconds(30), hedging), clock);
+    }
+
+    @Test
+    void slowService_unknownOnceBudgetRunsOut() {
+        CompletableFuture<ImageVerdict> analysis = new CompletableFuture<>();
+        doReturn(analysis).when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofMillis(50), 5, false);
+
+        assertEquals(ImageVerdict.UNKNOWN, service.classify(frame, 50.0f));
+
+        assertTrue(analysis.isCancelled());
+        assertEquals(1, service.getTimeoutCount());
+        assertEquals(1, service.getFailureCount());
+    }
+
+    @Test
+    void failingService_opensCircuit_thenTrialCallClosesIt() {
+        doReturn(CompletableFuture.failedFuture(new IllegalStateException())).when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofSeconds(5), 3, false);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ImageVerdict.UNKNOWN, service.classify(frame, 50.0f));
+        }
+
+        verify(delegate, times(3)).classifyAsync(any(), anyFloat());
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+        assertEquals(2, service.getShortCircuitCount());
+
+        when(clock.millis()).thenReturn(30_000L);
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.CAT)).when(delegate).classifyAsync(any(), anyFloat());
+
+        assertEquals(ImageVerdict.CAT, service.classify(frame, 50.0f));
+        assertEquals(ResilientImageService.CircuitState.CLOSED, service.getCircuitState());
+        assertEquals(1, service.getOpenCount());
+    }
+
+    @Test
+    void failedTrialCall_reopensCircuit() {
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.UNKNOWN)).when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofSeconds(5), 1, false);
+
+        service.classify(frame, 50.0f);
+        when(clock.millis()).thenReturn(30_000L);
+        service.classify(frame, 50.0f);
+        service.classify(frame, 50.0f);
+
+        verify(delegate, times(2)).classifyAsync(any(), anyFloat());
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+        assertEquals(2, service.getOpenCount());
+    }
+
+    @Test
+    void serviceThrows_countedAsFailure() {
+        doThrow(new IllegalStateException()).when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofSeconds(5), 5, false);
+
+        assertEquals(ImageVerdict.UNKNOWN, service.classify(frame, 50.0f));
+        assertEquals(1, service.getFailureCount());
+    }
+
+    @Test
+    void slowRequest_hedgedRequestWins() {
+        CompletableFuture<ImageVerdict> stuck = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        //twenty quick answers set the hedge delay, then the next request hangs and its hedge answers
+        doAnswer(call -> calls.incrementAndGet() == 21 ? stuck : CompletableFuture.completedFuture(ImageVerdict.CAT))
+                .when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofSeconds(5), 5, true);
+
+        for (int i = 0; i < 20; i++) {
+            service.classify(frame, 50.0f);
+        }
+        assertNotNull(service.getHedgeDelay());
+
+        assertEquals(ImageVerdict.CAT, service.classify(frame, 50.0f));
+        assertEquals(1, service.getHedgeCount());
+        assertEquals(1, service.getHedgeWinCount());
+        assertTrue(stuck.isCancelled());
+    }
+
+    @Test
+    void hedgingOff_noSecondRequest() {
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.NO_CAT)).when(delegate).classifyAsync(any(), anyFloat());
+        ResilientImageService service = resilient(Duration.ofSeconds(5), 5, false);
+
+        for (int i = 0; i < 30; i++) {
+            assertEquals(ImageVerdict.NO_CAT, service.classify(frame, 50.0f));
+        }
+
+        assertNull(service.getHedgeDelay());
+        assertEquals(0, service.getHedgeCount());
+        assertEquals(30, service.getSuccessCount());
+    }
+}
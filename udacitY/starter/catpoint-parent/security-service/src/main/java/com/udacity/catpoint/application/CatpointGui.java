@@ -7,6 +7,9 @@ import com.udacity.catpoint.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.Duration;
 
 /**
  * This is the primary JFrame for the application that contains all the top-level JPanels.
@@ -15,7 +18,9 @@ import javax.swing.*;
  * all our dependencies and providing them to other classes as necessary.
  */
 public class CatpointGui extends JFrame {
-    private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+    //write-behind keeps preference writes off the Swing event thread
+    private PretendDatabaseSecurityRepositoryImpl repositoryStore = new PretendDatabaseSecurityRepositoryImpl(Duration.ofMillis(250), 64);
+    private SecurityRepository securityRepository = repositoryStore;
     private FakeImageService imageService = new FakeImageService();
     private SecurityService securityService = new SecurityService(securityRepository, imageService);
     private DisplayPanel displayPanel = new DisplayPanel(securityService);
@@ -28,6 +33,12 @@ public class CatpointGui extends JFrame {
         setSize(600, 850);
         setTitle("Very Secure App");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                repositoryStore.close();
+            }
+        });
 
         JPanel mainPanel = new JPanel();
         mainPanel.setLayout(new MigLayout());
@@ -11,6 +11,8 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
@@ -22,6 +24,8 @@ public class ImagePanel extends JPanel implements StatusListener {
     private JLabel cameraLabel;
     private BufferedImage currentCameraImage;
 
+    private static final Duration SCAN_TIMEOUT = Duration.ofSeconds(10);
+
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
 
@@ -29,7 +33,7 @@ public class ImagePanel extends JPanel implements StatusListener {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        securityService.addStatusListener(this, SwingUtilities::invokeLater);
 
         cameraHeader = new JLabel("Camera Feed");
         cameraHeader.setFont(StyleService.HEADING_FONT);
@@ -62,7 +66,12 @@ public class ImagePanel extends JPanel implements StatusListener {
         //button that sends the image to the image service
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            securityService.processImageAsync(currentCameraImage, SCAN_TIMEOUT).exceptionally(error -> {
+                if(!(error instanceof CancellationException)) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Unable to scan picture."));
+                }
+                return null;
+            });
         });
 
         add(cameraHeader, "span 3, wrap");
@@ -1,6 +1,7 @@
 package com.udacity.catpoint.application;
 
 import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorSnapshot;
 import com.udacity.catpoint.data.SensorType;
 import com.udacity.catpoint.service.SecurityService;
 import com.udacity.catpoint.service.StyleService;
@@ -25,6 +26,7 @@ public class SensorPanel extends JPanel {
 
     private JPanel sensorListPanel;
     private JPanel newSensorPanel;
+    private long renderedSnapshotVersion = -1;
 
     public SensorPanel(SecurityService securityService) {
         super();
@@ -63,12 +65,18 @@ public class SensorPanel extends JPanel {
 
     /**
      * Requests the current list of sensors and updates the provided panel to display them. Sensors
-     * will display in the order that they are created.
+     * will display in the order that they are created. Does nothing if no sensor changed since the
+     * list was last built.
      * @param p The Panel to populate with the current list of sensors
      */
     private void updateSensorList(JPanel p) {
+        SensorSnapshot snapshot = securityService.getSensorSnapshot();
+        if (snapshot.getVersion() == renderedSnapshotVersion) {
+            return;
+        }
+        renderedSnapshotVersion = snapshot.getVersion();
         p.removeAll();
-        securityService.getSensors().stream().sorted().forEach(s -> {
+        snapshot.getSensors().stream().sorted().forEach(s -> {
             JLabel sensorLabel = new JLabel(String.format("%s(%s): %s", s.getName(),  s.getSensorType().toString(),(s.getActive() ? "Active" : "Inactive")));
             JButton sensorToggleButton = new JButton((s.getActive() ? "Deactivate" : "Activate"));
             JButton sensorRemoveButton = new JButton("Remove Sensor");
@@ -1,6 +1,7 @@
 package com.udacity.catpoint.application;
 
 import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.Sensor;
 
 /**
  * Identifies a component that should be notified whenever the system status changes
@@ -9,4 +10,10 @@ public interface StatusListener {
     void notify(AlarmStatus status);
     void catDetected(boolean catDetected);
     void sensorStatusChanged();
+
+    /**
+     * Called when a sensor has not reported within its heartbeat timeout. Does nothing by default.
+     */
+    default void sensorOffline(Sensor sensor) {
+    }
 }
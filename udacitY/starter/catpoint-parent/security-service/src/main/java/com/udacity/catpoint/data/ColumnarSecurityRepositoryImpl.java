@@ -0,0 +1,114 @@
+package com.udacity.catpoint.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory repository for large installations that keeps its sensors in a {@link SensorTable}
+ * instead of as Sensor objects, so each stored sensor costs a few bytes of primitive columns.
+ * Sensor changes and the active sensor counts never touch more than the sensors involved.
+ *
+ * Sensor objects are only created when the sensors are read as a whole. The snapshot is built from
+ * the table on the first read after a change, which takes time in proportion to the number of
+ * sensors, and is then shared until the next change. The sensors it holds are copies, so changing
+ * one has no effect until it is stored again with {@link #updateSensor(Sensor)}.
+ */
+public class ColumnarSecurityRepositoryImpl implements SecurityRepository {
+
+    private final SensorTable table;
+    private long version;
+    //built on demand, null after a change
+    private SensorSnapshot snapshot = SensorSnapshot.EMPTY;
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    public ColumnarSecurityRepositoryImpl() {
+        this.table = new SensorTable();
+    }
+
+    /**
+     * @param expectedSensors Number of sensors to allocate room for up front
+     */
+    public ColumnarSecurityRepositoryImpl(int expectedSensors) {
+        this.table = new SensorTable(expectedSensors);
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        table.put(sensor);
+        changed();
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        if (table.remove(sensor.getSensorId())) {
+            changed();
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        table.put(sensor);
+        changed();
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updatedSensors) {
+        if (!updatedSensors.isEmpty()) {
+            updatedSensors.forEach(table::put);
+            changed();
+        }
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return getSensorSnapshot().getSensors();
+    }
+
+    @Override
+    public synchronized SensorSnapshot getSensorSnapshot() {
+        if (snapshot == null) {
+            List<Sensor> sensors = new ArrayList<>(table.size());
+            table.forEachSlot(slot -> sensors.add(table.toSensor(slot)));
+            snapshot = SensorSnapshot.of(version, sensors);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount() {
+        return table.getActiveCount();
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount(SensorType sensorType) {
+        return table.getActiveCount(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+}
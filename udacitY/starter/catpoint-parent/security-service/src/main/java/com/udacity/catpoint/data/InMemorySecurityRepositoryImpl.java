@@ -0,0 +1,77 @@
+package com.udacity.catpoint.data;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Repository that keeps its state in memory only. Useful for tests, replays and anything else that
+ * needs a fresh, isolated system state without touching storage.
+ */
+public class InMemorySecurityRepositoryImpl implements SecurityRepository {
+
+    private volatile SensorSnapshot sensors = SensorSnapshot.EMPTY;
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors = sensors.with(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors = sensors.without(sensor);
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors = sensors.with(sensor);
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updatedSensors) {
+        if (!updatedSensors.isEmpty()) {
+            sensors = sensors.with(updatedSensors);
+        }
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.getSensors();
+    }
+
+    @Override
+    public SensorSnapshot getSensorSnapshot() {
+        return sensors;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.getActiveCount();
+    }
+
+    @Override
+    public int getActiveSensorCount(SensorType sensorType) {
+        return sensors.getActiveCount(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
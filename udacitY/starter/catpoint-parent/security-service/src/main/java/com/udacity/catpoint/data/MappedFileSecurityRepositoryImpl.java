@@ -0,0 +1,498 @@
+package com.udacity.catpoint.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Repository that keeps its state in a fixed-layout binary file mapped into memory. The file starts
+ * with a header holding the alarm and arming status and the active sensor counts, followed by one
+ * fixed-width record per sensor slot. Updating a sensor rewrites its record in place.
+ *
+ * Opening a file that was closed cleanly only maps it and reads the header. The index from sensor id
+ * to slot is built on the first change to the sensors, and Sensor objects are decoded the first time
+ * the sensors are requested. The header is marked as in use, and forced to disk, before the first
+ * record changes; if a file is opened without a clean close, every record is checked and the counts
+ * are rebuilt before the repository is used.
+ *
+ * Each record carries a CRC32C of its contents, written after the rest of the record. A record
+ * whose checksum does not match was torn by a crash while it was being written; it is dropped with
+ * a warning and its slot reused, so the sensor it held is lost rather than read back corrupted.
+ *
+ * The records are mapped in segments that double in size as the file grows, so growing maps only
+ * the new part of the file and never abandons a mapping that is still in use.
+ *
+ * Sensor names are stored as at most {@value #NAME_BYTES} bytes of UTF-8 and are truncated beyond that.
+ */
+public class MappedFileSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileSecurityRepositoryImpl.class);
+
+    private static final int MAGIC = 0x43415450; //"CATP"
+    private static final int FORMAT_VERSION = 2;
+
+    //header layout
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_OFFSET = 4;
+    private static final int ALARM_OFFSET = 8;
+    private static final int ARMING_OFFSET = 9;
+    private static final int CLEAN_OFFSET = 10;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int HIGH_WATER_OFFSET = 16;
+    //one int per sensor type, valid while the file is marked clean
+    private static final int ACTIVE_COUNTS_OFFSET = 20;
+
+    //record layout
+    private static final int RECORD_BYTES = 96;
+    private static final int FLAGS_OFFSET = 0;
+    private static final int TYPE_OFFSET = 1;
+    private static final int NAME_LENGTH_OFFSET = 2;
+    private static final int CRC_OFFSET = 4;
+    private static final int ID_MOST_OFFSET = 8;
+    private static final int ID_LEAST_OFFSET = 16;
+    private static final int NAME_OFFSET = 24;
+    private static final int NAME_BYTES = RECORD_BYTES - NAME_OFFSET;
+
+    private static final byte USED = 1;
+    private static final byte ACTIVE = 2;
+
+    //slots in the first segment; each later segment is as large as all earlier ones together
+    private static final int INITIAL_CAPACITY = 64;
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    private final FileChannel channel;
+    private final boolean syncOnWrite;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int capacity;
+    private int highWater;
+    private boolean clean;
+
+    //null until the sensors first change
+    private Map<UUID, Integer> slots;
+    private final List<Integer> freeSlots = new ArrayList<>();
+    private int activeCount;
+    private final int[] activeCountByType = new int[SENSOR_TYPES.length];
+
+    private final CRC32C crc = new CRC32C();
+    private final byte[] recordBytes = new byte[RECORD_BYTES];
+
+    //built on first request, then maintained on every mutation
+    private volatile SensorSnapshot snapshot;
+    private long version;
+
+    private volatile AlarmStatus alarmStatus;
+    private volatile ArmingStatus armingStatus;
+
+    public MappedFileSecurityRepositoryImpl(Path file) {
+        this(file, false);
+    }
+
+    /**
+     * @param file The state file. Created with an empty state if it does not exist.
+     * @param syncOnWrite If true, every changed region of the file is forced to disk before the
+     *                    mutating call returns.
+     */
+    public MappedFileSecurityRepositoryImpl(Path file, boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean created = channel.size() == 0;
+            if (!created) {
+                ByteBuffer existing = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(existing, 0);
+                if (existing.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException("Not a sensor state file: " + file);
+                }
+                if (existing.getInt(FORMAT_OFFSET) != FORMAT_VERSION) {
+                    throw new IOException("Unsupported sensor state file version " + existing.getInt(FORMAT_OFFSET) + ": " + file);
+                }
+            }
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (created) {
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(FORMAT_OFFSET, FORMAT_VERSION);
+                header.put(ALARM_OFFSET, (byte) AlarmStatus.NO_ALARM.ordinal());
+                header.put(ARMING_OFFSET, (byte) ArmingStatus.DISARMED.ordinal());
+                header.put(CLEAN_OFFSET, (byte) 1);
+                header.putInt(CAPACITY_OFFSET, INITIAL_CAPACITY);
+                header.putInt(HIGH_WATER_OFFSET, 0);
+            }
+            capacity = header.getInt(CAPACITY_OFFSET);
+            mapSegments();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open sensor state file " + file, ioe);
+        }
+        alarmStatus = AlarmStatus.values()[header.get(ALARM_OFFSET)];
+        armingStatus = ArmingStatus.values()[header.get(ARMING_OFFSET)];
+        highWater = header.getInt(HIGH_WATER_OFFSET);
+        clean = header.get(CLEAN_OFFSET) != 0;
+        if (clean) {
+            for (int type = 0; type < SENSOR_TYPES.length; type++) {
+                activeCountByType[type] = header.getInt(ACTIVE_COUNTS_OFFSET + type * Integer.BYTES);
+                activeCount += activeCountByType[type];
+            }
+        } else {
+            log.warn("Sensor state file {} was not closed cleanly, checking its records", file);
+            indexRecords();
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        beginChange();
+        int slot = writeSensor(sensor);
+        if (snapshot != null) {
+            snapshot = snapshot.with(sensor);
+        }
+        changed(slot, slot);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        beginChange();
+        Integer slot = slots.remove(sensor.getSensorId());
+        if (slot == null) {
+            return;
+        }
+        MappedByteBuffer segment = segmentOf(slot);
+        int base = base(slot);
+        if ((segment.get(base + FLAGS_OFFSET) & ACTIVE) != 0) {
+            countActive(segment.get(base + TYPE_OFFSET), -1);
+        }
+        segment.put(base + FLAGS_OFFSET, (byte) 0);
+        freeSlots.add(slot);
+        if (snapshot != null) {
+            snapshot = snapshot.without(sensor);
+        }
+        changed(slot, slot);
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        addSensor(sensor);
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> sensors) {
+        if (sensors.isEmpty()) {
+            return;
+        }
+        beginChange();
+        int first = Integer.MAX_VALUE;
+        int last = 0;
+        for (Sensor sensor : sensors) {
+            int slot = writeSensor(sensor);
+            first = Math.min(first, slot);
+            last = Math.max(last, slot);
+        }
+        if (snapshot != null) {
+            snapshot = snapshot.with(sensors);
+        }
+        changed(first, last);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        header.put(ALARM_OFFSET, (byte) alarmStatus.ordinal());
+        forceHeader();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        header.put(ARMING_OFFSET, (byte) armingStatus.ordinal());
+        forceHeader();
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return getSensorSnapshot().getSensors();
+    }
+
+    @Override
+    public SensorSnapshot getSensorSnapshot() {
+        SensorSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                List<Sensor> sensors = new ArrayList<>(highWater);
+                for (int slot = 0; slot < highWater; slot++) {
+                    if (isLive(slot)) {
+                        sensors.add(readSensor(slot));
+                    }
+                }
+                snapshot = SensorSnapshot.of(version, sensors);
+            }
+            return snapshot;
+        }
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount() {
+        return activeCount;
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount(SensorType sensorType) {
+        return activeCountByType[sensorType.ordinal()];
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Writes the active counts and marks the file as cleanly closed, after every record is on disk.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        segments.forEach(MappedByteBuffer::force);
+        for (int type = 0; type < SENSOR_TYPES.length; type++) {
+            header.putInt(ACTIVE_COUNTS_OFFSET + type * Integer.BYTES, activeCountByType[type]);
+        }
+        header.put(CLEAN_OFFSET, (byte) 1);
+        header.force();
+        channel.close();
+    }
+
+    /**
+     * Prepares for a change to the records: marks the file as in use on disk before any record
+     * changes, and builds the slot index if it does not exist yet.
+     */
+    private void beginChange() {
+        if (clean) {
+            header.put(CLEAN_OFFSET, (byte) 0);
+            header.force();
+            clean = false;
+        }
+        if (slots == null) {
+            indexRecords();
+        }
+    }
+
+    /**
+     * Reads the flags and id of every record to rebuild the slot index and active counts, dropping
+     * records that fail their checksum.
+     */
+    private void indexRecords() {
+        slots = new HashMap<>();
+        freeSlots.clear();
+        activeCount = 0;
+        Arrays.fill(activeCountByType, 0);
+        for (int slot = 0; slot < highWater; slot++) {
+            MappedByteBuffer segment = segmentOf(slot);
+            int base = base(slot);
+            byte flags = segment.get(base + FLAGS_OFFSET);
+            if ((flags & USED) != 0 && !checksumMatches(slot)) {
+                log.warn("Dropping torn sensor record in slot {}", slot);
+                segment.put(base + FLAGS_OFFSET, (byte) 0);
+                flags = 0;
+            }
+            if ((flags & USED) == 0) {
+                freeSlots.add(slot);
+                continue;
+            }
+            slots.put(new UUID(segment.getLong(base + ID_MOST_OFFSET), segment.getLong(base + ID_LEAST_OFFSET)), slot);
+            if ((flags & ACTIVE) != 0) {
+                countActive(segment.get(base + TYPE_OFFSET), 1);
+            }
+        }
+    }
+
+    /**
+     * Writes the sensor into its existing slot, or into a free slot if it is new.
+     * @return The slot of the record
+     */
+    private int writeSensor(Sensor sensor) {
+        Integer slot = slots.get(sensor.getSensorId());
+        if (slot == null) {
+            slot = allocateSlot();
+            slots.put(sensor.getSensorId(), slot);
+        }
+        MappedByteBuffer segment = segmentOf(slot);
+        int base = base(slot);
+        byte oldFlags = segment.get(base + FLAGS_OFFSET);
+        if ((oldFlags & ACTIVE) != 0) {
+            countActive(segment.get(base + TYPE_OFFSET), -1);
+        }
+        boolean active = Boolean.TRUE.equals(sensor.getActive());
+        byte type = (byte) sensor.getSensorType().ordinal();
+        if (active) {
+            countActive(type, 1);
+        }
+
+        byte[] name = encodeName(sensor.getName());
+        segment.put(base + TYPE_OFFSET, type);
+        segment.putShort(base + NAME_LENGTH_OFFSET, (short) name.length);
+        segment.putLong(base + ID_MOST_OFFSET, sensor.getSensorId().getMostSignificantBits());
+        segment.putLong(base + ID_LEAST_OFFSET, sensor.getSensorId().getLeastSignificantBits());
+        segment.put(base + NAME_OFFSET, name);
+        //flags and then the checksum last, so a record only becomes valid once its fields are written
+        segment.put(base + FLAGS_OFFSET, (byte) (USED | (active ? ACTIVE : 0)));
+        segment.putInt(base + CRC_OFFSET, checksum(slot));
+        return slot;
+    }
+
+    private Sensor readSensor(int slot) {
+        MappedByteBuffer segment = segmentOf(slot);
+        int base = base(slot);
+        byte[] name = new byte[segment.getShort(base + NAME_LENGTH_OFFSET)];
+        segment.get(base + NAME_OFFSET, name);
+        Sensor sensor = new Sensor(new String(name, StandardCharsets.UTF_8), SENSOR_TYPES[segment.get(base + TYPE_OFFSET)]);
+        sensor.setSensorId(new UUID(segment.getLong(base + ID_MOST_OFFSET), segment.getLong(base + ID_LEAST_OFFSET)));
+        sensor.setActive((segment.get(base + FLAGS_OFFSET) & ACTIVE) != 0);
+        return sensor;
+    }
+
+    /**
+     * @return True if the slot holds a sensor whose record is intact
+     */
+    private boolean isLive(int slot) {
+        return (segmentOf(slot).get(base(slot) + FLAGS_OFFSET) & USED) != 0 && checksumMatches(slot);
+    }
+
+    private boolean checksumMatches(int slot) {
+        return segmentOf(slot).getInt(base(slot) + CRC_OFFSET) == checksum(slot);
+    }
+
+    /**
+     * @return CRC32C of the record, leaving out the checksum field itself
+     */
+    private int checksum(int slot) {
+        segmentOf(slot).get(base(slot), recordBytes);
+        crc.reset();
+        crc.update(recordBytes, 0, CRC_OFFSET);
+        crc.update(recordBytes, CRC_OFFSET + Integer.BYTES, RECORD_BYTES - CRC_OFFSET - Integer.BYTES);
+        return (int) crc.getValue();
+    }
+
+    private int allocateSlot() {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.remove(freeSlots.size() - 1);
+        }
+        if (highWater == capacity) {
+            capacity *= 2;
+            try {
+                mapSegments();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to grow sensor state file", ioe);
+            }
+            header.putInt(CAPACITY_OFFSET, capacity);
+        }
+        header.putInt(HIGH_WATER_OFFSET, highWater + 1);
+        return highWater++;
+    }
+
+    /**
+     * Maps the segments needed to hold every slot up to the capacity.
+     */
+    private void mapSegments() throws IOException {
+        while (segmentStart(segments.size()) < capacity) {
+            int index = segments.size();
+            long offset = HEADER_BYTES + (long) segmentStart(index) * RECORD_BYTES;
+            long length = (long) segmentLength(index) * RECORD_BYTES;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, length));
+        }
+    }
+
+    private MappedByteBuffer segmentOf(int slot) {
+        return segments.get(segmentIndex(slot));
+    }
+
+    private static int segmentIndex(int slot) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(slot / INITIAL_CAPACITY);
+    }
+
+    private static int segmentStart(int index) {
+        return index == 0 ? 0 : INITIAL_CAPACITY << (index - 1);
+    }
+
+    private static int segmentLength(int index) {
+        return index == 0 ? INITIAL_CAPACITY : INITIAL_CAPACITY << (index - 1);
+    }
+
+    /**
+     * @return Position of the slot's record within its segment
+     */
+    private static int base(int slot) {
+        return (slot - segmentStart(segmentIndex(slot))) * RECORD_BYTES;
+    }
+
+    private void countActive(byte type, int delta) {
+        activeCount += delta;
+        activeCountByType[type] += delta;
+    }
+
+    /**
+     * Records that the sensor records between two slots changed, forcing them and the header to
+     * disk if required.
+     */
+    private void changed(int firstSlot, int lastSlot) {
+        if (snapshot == null) {
+            version++;
+        } else {
+            version = snapshot.getVersion();
+        }
+        if (syncOnWrite) {
+            for (int index = segmentIndex(firstSlot); index <= segmentIndex(lastSlot); index++) {
+                int from = Math.max(firstSlot, segmentStart(index));
+                int to = Math.min(lastSlot, segmentStart(index) + segmentLength(index) - 1);
+                segments.get(index).force(base(from), (to - from + 1) * RECORD_BYTES);
+            }
+        }
+        forceHeader();
+    }
+
+    private void forceHeader() {
+        if (syncOnWrite) {
+            header.force();
+        }
+    }
+
+    /**
+     * Encodes the name as UTF-8, cutting it at a character boundary if it does not fit the record.
+     */
+    private static byte[] encodeName(String name) {
+        byte[] bytes = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= NAME_BYTES) {
+            return bytes;
+        }
+        int length = NAME_BYTES;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+}
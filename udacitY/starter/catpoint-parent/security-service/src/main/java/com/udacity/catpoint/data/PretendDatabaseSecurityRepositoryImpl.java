@@ -2,34 +2,118 @@ package com.udacity.catpoint.data;
 
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.HashSet; // ADD THIS IMPORT
-import java.util.Collections; // ADD THIS IMPORT
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 /**
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ *
+ * By default every change is written to preferences on the calling thread. In write-behind mode
+ * changes only update memory and mark the state dirty; a background writer later persists the
+ * dirty state in one write, coalescing bursts of changes. Flushes run one at a time, in the order
+ * they were requested, and each one writes a copy of the state taken while holding the repository's
+ * lock, with sensors written before the alarm and arming status. The copy holds each sensor's field
+ * values rather than the Sensor objects, which callers may go on changing while it is written. The
+ * stored state therefore only ever moves forward, and never holds a status that is newer than the
+ * sensors it was derived from.
+ *
+ * A closed repository rejects further changes, so none can be left unwritten after the final flush.
+ *
+ * Each repository stores its state under its own preferences node, so several repositories, such as
+ * the sites of a fleet, can live in one JVM without overwriting each other. Many write-behind
+ * repositories may share one single-threaded writer instead of starting a thread each.
  */
-public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository {
+public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository, Closeable {
 
-    private Set<Sensor> sensors;
-    private AlarmStatus alarmStatus;
-    private ArmingStatus armingStatus;
+    private static final Logger log = LoggerFactory.getLogger(PretendDatabaseSecurityRepositoryImpl.class);
+
+    //replaced wholesale on every sensor change so readers never need a lock or a copy
+    private volatile SensorSnapshot sensors;
+    private volatile AlarmStatus alarmStatus;
+    private volatile ArmingStatus armingStatus;
+
+    //dirty flags for write-behind mode
+    private static final int SENSORS_DIRTY = 1;
+    private static final int ALARM_STATUS_DIRTY = 2;
+    private static final int ARMING_STATUS_DIRTY = 4;
+
+    private final ScheduledExecutorService writer;
+    private final boolean ownsWriter;
+    private final long maxDelayMillis;
+    private final int maxBatchSize;
+    private int dirty;
+    private int pendingChanges;
+    private boolean flushScheduled;
+    private boolean closed;
 
     //preference keys
     private static final String SENSORS = "SENSORS";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
-    private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+    private final Preferences prefs;
     private static final Gson gson = new Gson(); //used to serialize objects into JSON
+    private static final Type SENSOR_SET_TYPE = new TypeToken<Set<Sensor>>() {
+    }.getType();
 
     public PretendDatabaseSecurityRepositoryImpl() {
+        this(defaultNode());
+    }
+
+    /**
+     * Creates a repository that writes every change to the given preferences node right away.
+     * @param node Preferences node that belongs to this repository alone
+     */
+    public PretendDatabaseSecurityRepositoryImpl(Preferences node) {
+        this(node, null, false, null, 0);
+    }
+
+    /**
+     * Creates a repository in write-behind mode.
+     * @param maxDelay The longest a change may stay in memory before the background writer persists it.
+     * @param maxBatchSize The number of pending changes that triggers a flush without waiting for maxDelay.
+     */
+    public PretendDatabaseSecurityRepositoryImpl(Duration maxDelay, int maxBatchSize) {
+        this(defaultNode(), newWriter(), true, maxDelay, maxBatchSize);
+    }
+
+    /**
+     * Creates a repository in write-behind mode that persists on a writer shared with other repositories.
+     * The writer is not shut down when this repository is closed.
+     * @param node Preferences node that belongs to this repository alone
+     * @param sharedWriter Single-threaded executor, so each repository's flushes stay in order
+     */
+    public PretendDatabaseSecurityRepositoryImpl(Preferences node, ScheduledExecutorService sharedWriter,
+                                                 Duration maxDelay, int maxBatchSize) {
+        this(node, sharedWriter, false, maxDelay, maxBatchSize);
+    }
+
+    private PretendDatabaseSecurityRepositoryImpl(Preferences node, ScheduledExecutorService writer, boolean ownsWriter,
+                                                  Duration maxDelay, int maxBatchSize) {
+        if (writer != null && (maxDelay.isNegative() || maxBatchSize < 1)) {
+            throw new IllegalArgumentException("maxDelay must not be negative and maxBatchSize must be positive");
+        }
+        this.prefs = node;
+        this.writer = writer;
+        this.ownsWriter = ownsWriter;
+        this.maxDelayMillis = writer == null ? 0 : maxDelay.toMillis();
+        this.maxBatchSize = maxBatchSize;
+
         //load system state from prefs, or else default
         alarmStatus = AlarmStatus.valueOf(prefs.get(ALARM_STATUS, AlarmStatus.NO_ALARM.toString()));
         armingStatus = ArmingStatus.valueOf(prefs.get(ARMING_STATUS, ArmingStatus.DISARMED.toString()));
@@ -38,49 +122,84 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
         // this is likely an impractical solution for a real system
         String sensorString = prefs.get(SENSORS, null);
         if (sensorString == null) {
-            sensors = new TreeSet<>();
+            sensors = SensorSnapshot.EMPTY;
         } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+            Set<Sensor> storedSensors = gson.fromJson(sensorString, SENSOR_SET_TYPE);
+            sensors = SensorSnapshot.of(0, storedSensors);
         }
     }
 
     @Override
-    public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void addSensor(Sensor sensor) {
+        checkOpen();
+        sensors = sensors.with(sensor);
+        sensorsChanged();
     }
 
     @Override
-    public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void removeSensor(Sensor sensor) {
+        checkOpen();
+        sensors = sensors.without(sensor);
+        sensorsChanged();
     }
 
     @Override
-    public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void updateSensor(Sensor sensor) {
+        checkOpen();
+        sensors = sensors.with(sensor);
+        sensorsChanged();
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updatedSensors) {
+        checkOpen();
+        if (updatedSensors.isEmpty()) {
+            return;
+        }
+        sensors = sensors.with(updatedSensors);
+        sensorsChanged();
     }
 
     @Override
-    public void setAlarmStatus(AlarmStatus alarmStatus) {
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        checkOpen();
         this.alarmStatus = alarmStatus;
-        prefs.put(ALARM_STATUS, this.alarmStatus.toString());
+        if (writer == null) {
+            prefs.put(ALARM_STATUS, this.alarmStatus.toString());
+        } else {
+            markDirty(ALARM_STATUS_DIRTY);
+        }
     }
 
     @Override
-    public void setArmingStatus(ArmingStatus armingStatus) {
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        checkOpen();
         this.armingStatus = armingStatus;
-        prefs.put(ARMING_STATUS, this.armingStatus.toString());
+        if (writer == null) {
+            prefs.put(ARMING_STATUS, this.armingStatus.toString());
+        } else {
+            markDirty(ARMING_STATUS_DIRTY);
+        }
     }
 
     @Override
     public Set<Sensor> getSensors() {
-        // FIX: Return an unmodifiable defensive copy
-        return Collections.unmodifiableSet(new HashSet<>(sensors));
+        return sensors.getSensors();
+    }
+
+    @Override
+    public SensorSnapshot getSensorSnapshot() {
+        return sensors;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.getActiveCount();
+    }
+
+    @Override
+    public int getActiveSensorCount(SensorType sensorType) {
+        return sensors.getActiveCount(sensorType);
     }
 
     @Override
@@ -92,4 +211,140 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
     public ArmingStatus getArmingStatus() {
         return armingStatus;
     }
+
+    /**
+     * Persists all pending changes and waits until they have reached the backing store.
+     */
+    public void flush() {
+        if (writer == null) {
+            flushPreferences();
+            return;
+        }
+        if (writer.isShutdown()) {
+            //closed, and close() has already written everything
+            return;
+        }
+        try {
+            writer.submit(this::writeDirtyState).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            log.error("Unable to flush security state", ee.getCause());
+        }
+    }
+
+    /**
+     * Flushes all pending changes and stops the background writer, if this repository started one.
+     * Changes made after this are rejected with an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        if (ownsWriter) {
+            writer.shutdown();
+        }
+    }
+
+    private static Preferences defaultNode() {
+        return Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+    }
+
+    private static ScheduledExecutorService newWriter() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "security-repository-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Repository is closed");
+        }
+    }
+
+    private void sensorsChanged() {
+        if (writer == null) {
+            prefs.put(SENSORS, gson.toJson(sensors.getSensors(), SENSOR_SET_TYPE));
+        } else {
+            markDirty(SENSORS_DIRTY);
+        }
+    }
+
+    /**
+     * Records a pending change and makes sure the background writer will pick it up, either
+     * immediately once a full batch is pending or after at most maxDelay.
+     */
+    private void markDirty(int flag) {
+        dirty |= flag;
+        pendingChanges++;
+        if (pendingChanges >= maxBatchSize) {
+            pendingChanges = 0;
+            flushScheduled = true;
+            writer.execute(this::writeDirtyState);
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::writeDirtyState, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the background writer. Copies the dirty state while holding the lock, then
+     * serializes and stores the copy without blocking callers.
+     */
+    private void writeDirtyState() {
+        int flags;
+        Set<Sensor> sensorCopy = null;
+        AlarmStatus alarmCopy;
+        ArmingStatus armingCopy;
+        synchronized (this) {
+            flags = dirty;
+            dirty = 0;
+            pendingChanges = 0;
+            flushScheduled = false;
+            if ((flags & SENSORS_DIRTY) != 0) {
+                sensorCopy = copyOf(sensors.getSensors());
+            }
+            alarmCopy = alarmStatus;
+            armingCopy = armingStatus;
+        }
+        if (flags == 0) {
+            return;
+        }
+        if (sensorCopy != null) {
+            prefs.put(SENSORS, gson.toJson(sensorCopy, SENSOR_SET_TYPE));
+        }
+        if ((flags & ARMING_STATUS_DIRTY) != 0) {
+            prefs.put(ARMING_STATUS, armingCopy.toString());
+        }
+        if ((flags & ALARM_STATUS_DIRTY) != 0) {
+            prefs.put(ALARM_STATUS, alarmCopy.toString());
+        }
+        flushPreferences();
+    }
+
+    private static Set<Sensor> copyOf(Set<Sensor> sensors) {
+        Set<Sensor> copy = new LinkedHashSet<>(sensors.size() * 2);
+        for (Sensor sensor : sensors) {
+            Sensor sensorCopy = new Sensor(sensor.getName(), sensor.getSensorType());
+            sensorCopy.setSensorId(sensor.getSensorId());
+            sensorCopy.setActive(sensor.getActive());
+            copy.add(sensorCopy);
+        }
+        return copy;
+    }
+
+    private void flushPreferences() {
+        try {
+            prefs.flush();
+        } catch (BackingStoreException bse) {
+            log.error("Unable to write security state to preferences", bse);
+        }
+    }
 }
\ No newline at end of file
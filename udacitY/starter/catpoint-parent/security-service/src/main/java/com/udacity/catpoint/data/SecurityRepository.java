@@ -1,5 +1,6 @@
 package com.udacity.catpoint.data;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -9,9 +10,31 @@ public interface SecurityRepository {
     void addSensor(Sensor sensor);
     void removeSensor(Sensor sensor);
     void updateSensor(Sensor sensor);
+
+    /**
+     * Adds or replaces all the given sensors in a single persistence round.
+     * @param sensors The sensors to store
+     */
+    void updateSensors(Collection<Sensor> sensors);
     void setAlarmStatus(AlarmStatus alarmStatus);
     void setArmingStatus(ArmingStatus armingStatus);
     Set<Sensor> getSensors();
+
+    /**
+     * @return The current immutable sensor snapshot. Its version changes whenever a sensor is
+     * added, removed or updated.
+     */
+    SensorSnapshot getSensorSnapshot();
+
+    /**
+     * @return The number of active sensors. Reading it does not scan the sensors.
+     */
+    int getActiveSensorCount();
+
+    /**
+     * @return The number of active sensors of the given type. Reading it does not scan the sensors.
+     */
+    int getActiveSensorCount(SensorType sensorType);
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
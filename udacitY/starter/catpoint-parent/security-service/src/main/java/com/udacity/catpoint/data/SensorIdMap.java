@@ -0,0 +1,330 @@
+package com.udacity.catpoint.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Immutable map from sensor id to a value, stored as a hash trie so that adding or removing an
+ * entry copies only the path to it (a few small arrays) and shares everything else with the map it
+ * was derived from. Lookups and updates take time in proportion to the depth of the trie, which
+ * grows with the logarithm of the size in base 32.
+ *
+ * Each level of the trie consumes five bits of a 64-bit hash of the id. Ids whose hashes are equal
+ * share a collision bucket at the point where their paths would otherwise continue.
+ * Iteration order is unspecified.
+ */
+final class SensorIdMap<V> implements Iterable<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    //a path ends once all 64 hash bits are used
+    private static final int MAX_DEPTH = (Long.SIZE + BITS - 1) / BITS + 1;
+
+    private static final SensorIdMap<?> EMPTY = new SensorIdMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private SensorIdMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> SensorIdMap<V> empty() {
+        return (SensorIdMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(UUID key) {
+        long hash = hash(key);
+        Object item = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (item instanceof Node node) {
+                int bit = bit(hash, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                item = node.slots[node.index(bit)];
+            } else if (item instanceof Leaf<?> leaf) {
+                return leaf.key.equals(key) ? (V) leaf.value : null;
+            } else {
+                Leaf<?> leaf = ((Collision) item).find(key);
+                return leaf == null ? null : (V) leaf.value;
+            }
+        }
+    }
+
+    /**
+     * @return A map with the entry added or replaced
+     */
+    SensorIdMap<V> with(UUID key, V value) {
+        Leaf<V> leaf = new Leaf<>(key, hash(key), value);
+        boolean[] added = new boolean[1];
+        Node newRoot = (Node) put(root, 0, leaf, added);
+        return new SensorIdMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return A map without the entry, or this map if it has no entry for the key
+     */
+    SensorIdMap<V> without(UUID key) {
+        Object newRoot = remove(root, 0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new SensorIdMap<>((Node) newRoot, size - 1);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new ValueIterator<>(root);
+    }
+
+    private static Object put(Object item, int shift, Leaf<?> leaf, boolean[] added) {
+        if (item instanceof Node node) {
+            int bit = bit(leaf.hash, shift);
+            int index = node.index(bit);
+            if ((node.bitmap & bit) == 0) {
+                added[0] = true;
+                return node.insert(bit, index, leaf);
+            }
+            return node.replace(index, put(node.slots[index], shift + BITS, leaf, added));
+        }
+        if (item instanceof Leaf<?> existing) {
+            if (existing.key.equals(leaf.key)) {
+                return leaf;
+            }
+            added[0] = true;
+            if (existing.hash == leaf.hash) {
+                return new Collision(leaf.hash, new Leaf<?>[]{existing, leaf});
+            }
+            return split(existing, existing.hash, leaf, shift);
+        }
+        Collision collision = (Collision) item;
+        if (collision.hash == leaf.hash) {
+            Collision updated = collision.with(leaf);
+            added[0] = updated.leaves.length > collision.leaves.length;
+            return updated;
+        }
+        added[0] = true;
+        return split(collision, collision.hash, leaf, shift);
+    }
+
+    /**
+     * Builds the nodes that separate an existing item from a new leaf with a different hash.
+     */
+    private static Node split(Object existing, long existingHash, Leaf<?> leaf, int shift) {
+        int existingBit = bit(existingHash, shift);
+        int leafBit = bit(leaf.hash, shift);
+        if (existingBit == leafBit) {
+            return new Node(existingBit, new Object[]{split(existing, existingHash, leaf, shift + BITS)});
+        }
+        //the bit for position 31 is negative, so positions are compared unsigned
+        Object[] slots = Integer.compareUnsigned(existingBit, leafBit) < 0
+                ? new Object[]{existing, leaf} : new Object[]{leaf, existing};
+        return new Node(existingBit | leafBit, slots);
+    }
+
+    /**
+     * @return The item without the key: the same item if the key is absent, null if nothing is
+     * left, or a lone leaf or collision in place of a node below the root so the trie stays shallow
+     */
+    private static Object remove(Object item, int shift, long hash, UUID key) {
+        if (item instanceof Node node) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return node;
+            }
+            int index = node.index(bit);
+            Object child = node.slots[index];
+            Object newChild = remove(child, shift + BITS, hash, key);
+            if (newChild == child) {
+                return node;
+            }
+            Node updated = newChild == null ? node.delete(bit, index) : node.replace(index, newChild);
+            if (shift > 0 && updated.slots.length == 1 && !(updated.slots[0] instanceof Node)) {
+                return updated.slots[0];
+            }
+            if (shift > 0 && updated.slots.length == 0) {
+                return null;
+            }
+            return updated;
+        }
+        if (item instanceof Leaf<?> leaf) {
+            return leaf.key.equals(key) ? null : leaf;
+        }
+        return ((Collision) item).without(key);
+    }
+
+    private static int bit(long hash, int shift) {
+        return 1 << ((int) (hash >>> shift) & MASK);
+    }
+
+    private static long hash(UUID key) {
+        long h = key.getMostSignificantBits() ^ key.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Interior node holding only the occupied positions of its 32, in position order.
+     */
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node insert(int bit, int index, Object item) {
+            Object[] copy = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            copy[index] = item;
+            System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+            return new Node(bitmap | bit, copy);
+        }
+
+        private Node replace(int index, Object item) {
+            Object[] copy = slots.clone();
+            copy[index] = item;
+            return new Node(bitmap, copy);
+        }
+
+        private Node delete(int bit, int index) {
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, copy.length - index);
+            return new Node(bitmap & ~bit, copy);
+        }
+    }
+
+    private static final class Leaf<V> {
+        private final UUID key;
+        private final long hash;
+        private final V value;
+
+        private Leaf(UUID key, long hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Entries whose ids have the same hash.
+     */
+    private static final class Collision {
+        private final long hash;
+        private final Leaf<?>[] leaves;
+
+        private Collision(long hash, Leaf<?>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private Leaf<?> find(UUID key) {
+            for (Leaf<?> leaf : leaves) {
+                if (leaf.key.equals(key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        private Collision with(Leaf<?> leaf) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    Leaf<?>[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new Collision(hash, copy);
+                }
+            }
+            Leaf<?>[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+            copy[leaves.length] = leaf;
+            return new Collision(hash, copy);
+        }
+
+        /**
+         * @return This collision if the key is absent, otherwise what is left without it
+         */
+        private Object without(UUID key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Leaf<?>[] copy = new Leaf<?>[leaves.length - 1];
+                    System.arraycopy(leaves, 0, copy, 0, i);
+                    System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+                    return new Collision(hash, copy);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Depth-first walk over the trie, keeping the position in each node on the current path.
+     */
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Object[][] path = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth;
+        private Leaf<?> next;
+
+        private ValueIterator(Node root) {
+            path[0] = root.slots;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) next.value;
+            advance();
+            return value;
+        }
+
+        private void advance() {
+            while (depth >= 0) {
+                Object[] slots = path[depth];
+                if (positions[depth] == slots.length) {
+                    depth--;
+                    continue;
+                }
+                Object item = slots[positions[depth]++];
+                if (item instanceof Leaf<?> leaf) {
+                    next = leaf;
+                    return;
+                }
+                depth++;
+                path[depth] = item instanceof Node node ? node.slots : ((Collision) item).leaves;
+                positions[depth] = 0;
+            }
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.udacity.catpoint.data;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable, versioned view of all sensors stored in a repository. Repositories publish a new
+ * snapshot on every sensor mutation, so readers can hold on to one without copying it, and can
+ * compare versions to find out whether anything changed since they last looked.
+ *
+ * Each snapshot also carries the number of active sensors, in total and per sensor type. The counts
+ * are adjusted only for the sensors that changed, using the activation state each sensor had when it
+ * was last stored, so reading them is a constant-time field access.
+ *
+ * Sensors are kept in a persistent hash trie, so a new snapshot shares almost all of its structure
+ * with the previous one: adding, replacing or removing a sensor costs time and memory in proportion
+ * to the logarithm of the number of sensors, not the number itself. Iteration order is unspecified.
+ *
+ * The sensor objects themselves are shared with the repository, just like the sets returned
+ * by {@link SecurityRepository#getSensors()}.
+ */
+public final class SensorSnapshot {
+
+    private static final int SENSOR_TYPES = SensorType.values().length;
+
+    public static final SensorSnapshot EMPTY = new SensorSnapshot(0, SensorIdMap.empty(), 0, new int[SENSOR_TYPES]);
+
+    private final long version;
+    private final SensorIdMap<Entry> entriesById;
+    private final Set<Sensor> sensors;
+    private final int activeCount;
+    private final int[] activeCountByType;
+
+    private SensorSnapshot(long version, SensorIdMap<Entry> entriesById, int activeCount, int[] activeCountByType) {
+        this.version = version;
+        this.entriesById = entriesById;
+        this.sensors = new SensorSet();
+        this.activeCount = activeCount;
+        this.activeCountByType = activeCountByType;
+    }
+
+    /**
+     * Builds a snapshot containing the given sensors.
+     */
+    public static SensorSnapshot of(long version, Collection<Sensor> sensors) {
+        return new SensorSnapshot(version - 1, SensorIdMap.empty(), 0, new int[SENSOR_TYPES]).with(sensors);
+    }
+
+    /**
+     * @return A snapshot one version newer, with the given sensors added or replaced.
+     */
+    public SensorSnapshot with(Collection<Sensor> updatedSensors) {
+        SensorIdMap<Entry> byId = entriesById;
+        int active = activeCount;
+        int[] activeByType = activeCountByType.clone();
+        for (Sensor sensor : updatedSensors) {
+            Entry entry = new Entry(sensor);
+            Entry previous = byId.get(sensor.getSensorId());
+            byId = byId.with(sensor.getSensorId(), entry);
+            if (previous != null && previous.active) {
+                active--;
+                activeByType[previous.sensorType.ordinal()]--;
+            }
+            if (entry.active) {
+                active++;
+                activeByType[entry.sensorType.ordinal()]++;
+            }
+        }
+        return new SensorSnapshot(version + 1, byId, active, activeByType);
+    }
+
+    /**
+     * @return A snapshot one version newer, with the given sensor added or replaced.
+     */
+    public SensorSnapshot with(Sensor sensor) {
+        return with(Collections.singleton(sensor));
+    }
+
+    /**
+     * @return A snapshot one version newer, without the given sensor.
+     */
+    public SensorSnapshot without(Sensor sensor) {
+        Entry previous = entriesById.get(sensor.getSensorId());
+        SensorIdMap<Entry> byId = entriesById.without(sensor.getSensorId());
+        int active = activeCount;
+        int[] activeByType = activeCountByType;
+        if (previous != null && previous.active) {
+            active--;
+            activeByType = activeCountByType.clone();
+            activeByType[previous.sensorType.ordinal()]--;
+        }
+        return new SensorSnapshot(version + 1, byId, active, activeByType);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return An unmodifiable set of the sensors in this snapshot. Calling this does not allocate.
+     */
+    public Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    /**
+     * @return The sensor with the given id, or null if this snapshot does not contain it.
+     */
+    public Sensor getSensor(UUID sensorId) {
+        Entry entry = entriesById.get(sensorId);
+        return entry == null ? null : entry.sensor;
+    }
+
+    public int size() {
+        return entriesById.size();
+    }
+
+    /**
+     * @return The number of sensors that were active when they were last stored.
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return The number of sensors of the given type that were active when they were last stored.
+     */
+    public int getActiveCount(SensorType sensorType) {
+        return activeCountByType[sensorType.ordinal()];
+    }
+
+    /**
+     * A stored sensor along with the activation state and type it was counted with, since the
+     * sensor object itself may be changed by its owner before it is stored again.
+     */
+    private static final class Entry {
+        private final Sensor sensor;
+        private final boolean active;
+        private final SensorType sensorType;
+
+        private Entry(Sensor sensor) {
+            this.sensor = sensor;
+            this.active = Boolean.TRUE.equals(sensor.getActive());
+            this.sensorType = sensor.getSensorType();
+        }
+    }
+
+    /**
+     * Read-only set view over the snapshot entries. Sensors are equal by id, so membership
+     * checks are a trie lookup.
+     */
+    private class SensorSet extends AbstractSet<Sensor> {
+        @Override
+        public Iterator<Sensor> iterator() {
+            Iterator<Entry> entries = entriesById.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Sensor next() {
+                    return entries.next().sensor;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return entriesById.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Sensor sensor && entriesById.get(sensor.getSensorId()) != null;
+        }
+    }
+}
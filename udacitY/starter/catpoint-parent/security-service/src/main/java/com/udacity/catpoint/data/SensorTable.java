@@ -0,0 +1,379 @@
+package com.udacity.catpoint.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Column-oriented sensor store for large installations. Every sensor is assigned a dense int slot,
+ * and its fields are kept in primitive arrays indexed by that slot instead of in a Sensor object:
+ * ids as two longs, activation flags and per-type membership as bitmaps, types as bytes and names as
+ * references into a shared table of interned names. Slots of removed sensors are reused.
+ *
+ * Active sensor counts, in total and per type, are kept up to date as sensors change, so reading
+ * them is constant time. Scanning and resetting active sensors works on 64 sensors per operation.
+ * Use {@link #view(int)} to read a single sensor without materializing a {@link Sensor}.
+ * {@link ColumnarSecurityRepositoryImpl} stores its sensors in a table.
+ *
+ * This class is not thread-safe; it is meant to be owned by a single writer.
+ */
+public class SensorTable {
+
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    //columns, indexed by slot
+    private long[] idMost;
+    private long[] idLeast;
+    private byte[] types;
+    private int[] nameRefs;
+    private long[] usedBits;
+    private long[] activeBits;
+    private long[][] typeBits;
+
+    //open addressing index from sensor id to slot + 1, 0 marks an empty bucket
+    private int[] index;
+
+    //slots freed by removals, reused before growing
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWater;
+    private int size;
+    private int activeCount;
+    private final int[] activeCountByType = new int[SENSOR_TYPES.length];
+
+    private final NameTable names = new NameTable();
+
+    public SensorTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public SensorTable(int initialCapacity) {
+        int capacity = Math.max(64, initialCapacity);
+        idMost = new long[capacity];
+        idLeast = new long[capacity];
+        types = new byte[capacity];
+        nameRefs = new int[capacity];
+        usedBits = new long[words(capacity)];
+        activeBits = new long[words(capacity)];
+        typeBits = new long[SENSOR_TYPES.length][words(capacity)];
+        index = new int[tableSize(capacity)];
+    }
+
+    /**
+     * Adds a sensor, or replaces the stored fields if a sensor with the same id exists.
+     * @return The slot of the sensor
+     */
+    public int put(UUID sensorId, String name, SensorType sensorType, boolean active) {
+        long most = sensorId.getMostSignificantBits();
+        long least = sensorId.getLeastSignificantBits();
+        int slot = find(most, least);
+        if (slot < 0) {
+            slot = allocateSlot();
+            idMost[slot] = most;
+            idLeast[slot] = least;
+            setBit(usedBits, slot, true);
+            insertIndex(slot);
+            size++;
+        } else {
+            names.release(nameRefs[slot]);
+            setBit(typeBits[types[slot]], slot, false);
+            count(slot, false);
+        }
+        types[slot] = (byte) sensorType.ordinal();
+        nameRefs[slot] = names.intern(name);
+        setBit(typeBits[sensorType.ordinal()], slot, true);
+        count(slot, active);
+        return slot;
+    }
+
+    /**
+     * Copies a sensor object into the table.
+     * @return The slot of the sensor
+     */
+    public int put(Sensor sensor) {
+        return put(sensor.getSensorId(), sensor.getName(), sensor.getSensorType(), Boolean.TRUE.equals(sensor.getActive()));
+    }
+
+    /**
+     * @return True if the sensor was present and has been removed
+     */
+    public boolean remove(UUID sensorId) {
+        int slot = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if (slot < 0) {
+            return false;
+        }
+        removeIndex(slot);
+        names.release(nameRefs[slot]);
+        count(slot, false);
+        setBit(usedBits, slot, false);
+        setBit(typeBits[types[slot]], slot, false);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return The slot holding the sensor with the given id, or -1 if there is none
+     */
+    public int slotOf(UUID sensorId) {
+        return find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isActive(int slot) {
+        return (activeBits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return True if the activation state of the slot changed
+     */
+    public boolean setActive(int slot, boolean active) {
+        if (isActive(slot) == active) {
+            return false;
+        }
+        count(slot, active);
+        return true;
+    }
+
+    public SensorType getSensorType(int slot) {
+        return SENSOR_TYPES[types[slot]];
+    }
+
+    public String getName(int slot) {
+        return names.get(nameRefs[slot]);
+    }
+
+    public UUID getSensorId(int slot) {
+        return new UUID(idMost[slot], idLeast[slot]);
+    }
+
+    /**
+     * @return A new Sensor object with the fields stored in the slot
+     */
+    public Sensor toSensor(int slot) {
+        Sensor sensor = new Sensor(getName(slot), getSensorType(slot));
+        sensor.setSensorId(getSensorId(slot));
+        sensor.setActive(isActive(slot));
+        return sensor;
+    }
+
+    /**
+     * @return A reusable view positioned on the given slot
+     */
+    public SensorView view(int slot) {
+        return new SensorView(this).moveTo(slot);
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getActiveCount(SensorType sensorType) {
+        return activeCountByType[sensorType.ordinal()];
+    }
+
+    public boolean anyActive() {
+        for (long word : activeBits) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks every sensor inactive.
+     */
+    public void deactivateAll() {
+        Arrays.fill(activeBits, 0L);
+        activeCount = 0;
+        Arrays.fill(activeCountByType, 0);
+    }
+
+    /**
+     * Calls the consumer with the slot of every active sensor, in slot order.
+     */
+    public void forEachActive(IntConsumer consumer) {
+        for (int i = 0; i < activeBits.length; i++) {
+            long word = activeBits[i];
+            while (word != 0) {
+                consumer.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with the slot of every stored sensor, in slot order.
+     */
+    public void forEachSlot(IntConsumer consumer) {
+        for (int i = 0; i < usedBits.length; i++) {
+            long word = usedBits[i];
+            while (word != 0) {
+                consumer.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Sets the active bit of a slot and adjusts the active counts for the type stored in it.
+     */
+    private void count(int slot, boolean active) {
+        if (isActive(slot) == active) {
+            return;
+        }
+        setBit(activeBits, slot, active);
+        int delta = active ? 1 : -1;
+        activeCount += delta;
+        activeCountByType[types[slot]] += delta;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == idMost.length) {
+            grow();
+        }
+        return highWater++;
+    }
+
+    private void grow() {
+        int capacity = idMost.length * 2;
+        idMost = Arrays.copyOf(idMost, capacity);
+        idLeast = Arrays.copyOf(idLeast, capacity);
+        types = Arrays.copyOf(types, capacity);
+        nameRefs = Arrays.copyOf(nameRefs, capacity);
+        usedBits = Arrays.copyOf(usedBits, words(capacity));
+        activeBits = Arrays.copyOf(activeBits, words(capacity));
+        for (int t = 0; t < typeBits.length; t++) {
+            typeBits[t] = Arrays.copyOf(typeBits[t], words(capacity));
+        }
+        index = new int[tableSize(capacity)];
+        forEachSlot(this::insertIndex);
+    }
+
+    private int find(long most, long least) {
+        int mask = index.length - 1;
+        for (int bucket = hash(most, least) & mask; ; bucket = (bucket + 1) & mask) {
+            int entry = index[bucket];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (idMost[slot] == most && idLeast[slot] == least) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertIndex(int slot) {
+        int mask = index.length - 1;
+        int bucket = hash(idMost[slot], idLeast[slot]) & mask;
+        while (index[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        index[bucket] = slot + 1;
+    }
+
+    /**
+     * Removes a slot from the linear probing index, shifting later entries of the probe
+     * sequence back so that lookups never need tombstones.
+     */
+    private void removeIndex(int slot) {
+        int mask = index.length - 1;
+        int bucket = hash(idMost[slot], idLeast[slot]) & mask;
+        while (index[bucket] != slot + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        int hole = bucket;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int candidate = index[next] - 1;
+            int home = hash(idMost[candidate], idLeast[candidate]) & mask;
+            //move the entry into the hole unless its home bucket lies cyclically in (hole, next]
+            boolean homeBetween = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!homeBetween) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private static int hash(long most, long least) {
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static void setBit(long[] bits, int slot, boolean value) {
+        if (value) {
+            bits[slot >>> 6] |= 1L << slot;
+        } else {
+            bits[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    private static int tableSize(int capacity) {
+        //keep the index at most half full
+        return Integer.highestOneBit(capacity * 2 - 1) * 2;
+    }
+
+    /**
+     * Reference-counted table of distinct sensor names, so sensors sharing a name share one String.
+     */
+    private static class NameTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[16];
+        private int[] refCounts = new int[16];
+        private int[] free = new int[16];
+        private int freeCount;
+        private int next;
+
+        int intern(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = freeCount > 0 ? free[--freeCount] : next++;
+                if (id == names.length) {
+                    names = Arrays.copyOf(names, id * 2);
+                    refCounts = Arrays.copyOf(refCounts, id * 2);
+                }
+                names[id] = name;
+                ids.put(name, id);
+            }
+            refCounts[id]++;
+            return id;
+        }
+
+        void release(int id) {
+            if (--refCounts[id] == 0) {
+                ids.remove(names[id]);
+                names[id] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = id;
+            }
+        }
+
+        String get(int id) {
+            return names[id];
+        }
+    }
+}
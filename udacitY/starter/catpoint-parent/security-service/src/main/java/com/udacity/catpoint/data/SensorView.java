@@ -0,0 +1,57 @@
+package com.udacity.catpoint.data;
+
+import java.util.UUID;
+
+/**
+ * Flyweight over a single slot of a {@link SensorTable}. A view can be moved from slot to slot,
+ * so scanning many sensors needs only one view object.
+ */
+public class SensorView {
+
+    private final SensorTable table;
+    private int slot = -1;
+
+    SensorView(SensorTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Positions this view on another slot of the same table.
+     * @return This view
+     */
+    public SensorView moveTo(int slot) {
+        this.slot = slot;
+        return this;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public UUID getSensorId() {
+        return table.getSensorId(slot);
+    }
+
+    public String getName() {
+        return table.getName(slot);
+    }
+
+    public SensorType getSensorType() {
+        return table.getSensorType(slot);
+    }
+
+    public boolean isActive() {
+        return table.isActive(slot);
+    }
+
+    public void setActive(boolean active) {
+        table.setActive(slot, active);
+    }
+
+    /**
+     * @return A standalone Sensor object copied from the current slot
+     */
+    public Sensor toSensor() {
+        return table.toSensor(slot);
+    }
+}
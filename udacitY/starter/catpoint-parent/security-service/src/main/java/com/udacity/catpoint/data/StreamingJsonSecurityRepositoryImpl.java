@@ -0,0 +1,436 @@
+package com.udacity.catpoint.data;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository that stores its state as human-readable JSON. A base document holds the full state and
+ * a delta file next to it holds one JSON object per line for every change made since the base was
+ * written. Once enough deltas have accumulated they are merged into a new base document.
+ *
+ * Both files are read and written with Gson's streaming JsonReader and JsonWriter, field by field,
+ * so the whole document never has to exist as a String in memory and no reflection is involved.
+ * Sensor fields use the same names Gson would use for {@link Sensor}.
+ *
+ * When loading, only an unfinished last delta line counts as torn by a crash; it is dropped and the
+ * rest is merged into a new base. Any other unreadable delta is corruption, and loading fails
+ * without touching either file, so nothing is lost to a merge.
+ */
+public class StreamingJsonSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingJsonSecurityRepositoryImpl.class);
+
+    //document and delta field names
+    private static final String ALARM_STATUS = "alarmStatus";
+    private static final String ARMING_STATUS = "armingStatus";
+    private static final String SENSORS = "sensors";
+    private static final String SENSOR_ID = "sensorId";
+    private static final String NAME = "name";
+    private static final String SENSOR_TYPE = "sensorType";
+    private static final String ACTIVE = "active";
+    private static final String OP = "op";
+    private static final String VALUE = "value";
+
+    //delta operations
+    private static final String PUT = "put";
+    private static final String REMOVE = "remove";
+
+    private static final int DEFAULT_MERGE_THRESHOLD = 1024;
+
+    private final Path baseFile;
+    private final Path deltaFile;
+    private final int mergeThreshold;
+
+    private volatile SensorSnapshot sensors = SensorSnapshot.EMPTY;
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    private Writer deltaOut;
+    private JsonWriter deltaWriter;
+    private int deltaCount;
+
+    public StreamingJsonSecurityRepositoryImpl(Path baseFile) {
+        this(baseFile, DEFAULT_MERGE_THRESHOLD);
+    }
+
+    /**
+     * @param baseFile The base JSON document. Deltas are kept in a file with the same name plus ".delta".
+     * @param mergeThreshold Number of delta records after which they are merged into the base document.
+     */
+    public StreamingJsonSecurityRepositoryImpl(Path baseFile, int mergeThreshold) {
+        if (mergeThreshold < 1) {
+            throw new IllegalArgumentException("mergeThreshold must be positive");
+        }
+        this.baseFile = baseFile;
+        this.deltaFile = baseFile.resolveSibling(baseFile.getFileName() + ".delta");
+        this.mergeThreshold = mergeThreshold;
+        try {
+            Map<UUID, Sensor> loaded = new LinkedHashMap<>();
+            readBase(loaded);
+            boolean deltasComplete = readDeltas(loaded);
+            sensors = SensorSnapshot.of(0, loaded.values());
+            if (deltasComplete) {
+                openDeltaWriter(StandardOpenOption.APPEND);
+            } else {
+                //the last delta was torn, so fold everything readable into a fresh base
+                merge();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load sensor state from " + baseFile, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors = sensors.with(sensor);
+        appendPut(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors = sensors.without(sensor);
+        try {
+            deltaWriter.beginObject();
+            deltaWriter.name(OP).value(REMOVE);
+            deltaWriter.name(SENSOR_ID).value(sensor.getSensorId().toString());
+            deltaWriter.endObject();
+            endRecord();
+            commitDeltas();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors = sensors.with(sensor);
+        appendPut(sensor);
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updatedSensors) {
+        if (updatedSensors.isEmpty()) {
+            return;
+        }
+        sensors = sensors.with(updatedSensors);
+        try {
+            for (Sensor sensor : updatedSensors) {
+                writePut(sensor);
+            }
+            commitDeltas();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        appendStatus(ALARM_STATUS, alarmStatus.name());
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        appendStatus(ARMING_STATUS, armingStatus.name());
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.getSensors();
+    }
+
+    @Override
+    public SensorSnapshot getSensorSnapshot() {
+        return sensors;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.getActiveCount();
+    }
+
+    @Override
+    public int getActiveSensorCount(SensorType sensorType) {
+        return sensors.getActiveCount(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Writes the current state as a new base document and empties the delta file. The base is
+     * written to a temporary file and moved into place atomically. If a crash happens before the
+     * delta file is emptied, the old deltas are simply applied again on the next load, which is
+     * harmless because every delta sets absolute values. If the base cannot be written, the delta
+     * file stays open and keeps every change.
+     */
+    public synchronized void merge() {
+        Path tempFile = baseFile.resolveSibling(baseFile.getFileName() + ".tmp");
+        try {
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8))) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name(ALARM_STATUS).value(alarmStatus.name());
+                writer.name(ARMING_STATUS).value(armingStatus.name());
+                writer.name(SENSORS).beginArray();
+                for (Sensor sensor : sensors.getSensors()) {
+                    writeSensorFields(writer.beginObject(), sensor);
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            Files.move(tempFile, baseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (deltaOut != null) {
+                //close the underlying writer; JsonWriter refuses to close before a value was written
+                deltaOut.close();
+            }
+            openDeltaWriter(StandardOpenOption.TRUNCATE_EXISTING);
+            deltaCount = 0;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to merge sensor state into " + baseFile, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        deltaOut.close();
+    }
+
+    private void appendPut(Sensor sensor) {
+        try {
+            writePut(sensor);
+            commitDeltas();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void appendStatus(String field, String value) {
+        try {
+            deltaWriter.beginObject();
+            deltaWriter.name(OP).value(field);
+            deltaWriter.name(VALUE).value(value);
+            deltaWriter.endObject();
+            endRecord();
+            commitDeltas();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void writePut(Sensor sensor) throws IOException {
+        deltaWriter.beginObject();
+        deltaWriter.name(OP).value(PUT);
+        writeSensorFields(deltaWriter, sensor);
+        deltaWriter.endObject();
+        endRecord();
+    }
+
+    private void endRecord() throws IOException {
+        deltaOut.write('\n');
+        deltaCount++;
+    }
+
+    /**
+     * Hands the written delta lines to the operating system and merges if enough have accumulated.
+     */
+    private void commitDeltas() throws IOException {
+        deltaOut.flush();
+        if (deltaCount >= mergeThreshold) {
+            merge();
+        }
+    }
+
+    private static void writeSensorFields(JsonWriter writer, Sensor sensor) throws IOException {
+        writer.name(SENSOR_ID).value(sensor.getSensorId().toString());
+        writer.name(NAME).value(sensor.getName());
+        writer.name(SENSOR_TYPE).value(sensor.getSensorType().name());
+        writer.name(ACTIVE).value(Boolean.TRUE.equals(sensor.getActive()));
+    }
+
+    private void openDeltaWriter(StandardOpenOption mode) throws IOException {
+        deltaOut = Files.newBufferedWriter(deltaFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+        deltaWriter = new JsonWriter(deltaOut);
+        //lenient mode allows one top-level object per line
+        deltaWriter.setLenient(true);
+    }
+
+    private void readBase(Map<UUID, Sensor> loaded) throws IOException {
+        if (!Files.exists(baseFile)) {
+            return;
+        }
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(baseFile, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case ALARM_STATUS -> alarmStatus = AlarmStatus.valueOf(reader.nextString());
+                    case ARMING_STATUS -> armingStatus = ArmingStatus.valueOf(reader.nextString());
+                    case SENSORS -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            Sensor sensor = readSensor(reader);
+                            loaded.put(sensor.getSensorId(), sensor);
+                        }
+                        reader.endArray();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    /**
+     * Applies every complete delta record on top of the loaded base, one line at a time.
+     * @return False if the delta file ends with an unfinished line, which is dropped
+     * @throws IOException If any finished line cannot be read
+     */
+    private boolean readDeltas(Map<UUID, Sensor> loaded) throws IOException {
+        if (!Files.exists(deltaFile)) {
+            return true;
+        }
+        boolean finished = endsWithNewline(deltaFile);
+        try (BufferedReader in = Files.newBufferedReader(deltaFile, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line = in.readLine();
+            while (line != null) {
+                String next = in.readLine();
+                lineNumber++;
+                boolean torn = next == null && !finished;
+                if (!line.isBlank()) {
+                    try {
+                        applyDelta(line, loaded);
+                        deltaCount++;
+                    } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+                        if (!torn) {
+                            throw new IOException("Corrupt delta record on line " + lineNumber + " of " + deltaFile, e);
+                        }
+                        log.warn("Dropping torn delta record at the end of {}", deltaFile);
+                    }
+                }
+                if (torn) {
+                    return false;
+                }
+                line = next;
+            }
+            return true;
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            if (in.length() == 0) {
+                return true;
+            }
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    /**
+     * Parses a whole delta line before applying it, so a bad line changes nothing.
+     */
+    private void applyDelta(String line, Map<UUID, Sensor> loaded) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(line));
+        reader.beginObject();
+        if (!OP.equals(reader.nextName())) {
+            throw new JsonParseException("Delta record must start with " + OP);
+        }
+        String op = reader.nextString();
+        switch (op) {
+            case PUT -> {
+                Sensor sensor = readSensor(reader);
+                loaded.put(sensor.getSensorId(), sensor);
+            }
+            case REMOVE -> {
+                reader.nextName();
+                loaded.remove(UUID.fromString(reader.nextString()));
+            }
+            case ALARM_STATUS -> {
+                reader.nextName();
+                alarmStatus = AlarmStatus.valueOf(reader.nextString());
+            }
+            case ARMING_STATUS -> {
+                reader.nextName();
+                armingStatus = ArmingStatus.valueOf(reader.nextString());
+            }
+            default -> throw new JsonParseException("Unknown delta operation " + op);
+        }
+        reader.endObject();
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonParseException("Unexpected data after delta record");
+        }
+    }
+
+    /**
+     * Reads sensor fields until the end of the current object. Leaves the end of the object
+     * for the caller when called with a reader positioned inside an already opened object.
+     */
+    private static Sensor readSensor(JsonReader reader) throws IOException {
+        boolean opened = reader.peek() == JsonToken.BEGIN_OBJECT;
+        if (opened) {
+            reader.beginObject();
+        }
+        UUID sensorId = null;
+        String name = null;
+        SensorType sensorType = null;
+        boolean active = false;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case SENSOR_ID -> sensorId = UUID.fromString(reader.nextString());
+                case NAME -> {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        name = reader.nextString();
+                    }
+                }
+                case SENSOR_TYPE -> sensorType = SensorType.valueOf(reader.nextString());
+                case ACTIVE -> active = reader.nextBoolean();
+                default -> reader.skipValue();
+            }
+        }
+        if (opened) {
+            reader.endObject();
+        }
+        if (sensorId == null || sensorType == null) {
+            throw new JsonParseException("Sensor record is missing its id or type");
+        }
+        Sensor sensor = new Sensor(name, sensorType);
+        sensor.setSensorId(sensorId);
+        sensor.setActive(active);
+        return sensor;
+    }
+}
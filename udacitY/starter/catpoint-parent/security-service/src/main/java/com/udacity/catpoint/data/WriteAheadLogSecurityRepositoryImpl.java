@@ -0,0 +1,386 @@
+package com.udacity.catpoint.data;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Repository that stores every sensor, alarm and arming mutation as a record appended to a log file.
+ * Each mutation writes a single small record, so its cost does not depend on how many sensors exist.
+ *
+ * On startup the log is replayed to rebuild the in-memory state. A torn record at the end of the file
+ * (for example from a crash mid-write) is detected by its checksum and truncated away. Once the log
+ * holds many more records than live state, it is compacted into a snapshot that replaces the log.
+ */
+public class WriteAheadLogSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    //record types
+    private static final byte SENSOR_PUT = 1;
+    private static final byte SENSOR_REMOVE = 2;
+    private static final byte ALARM_STATUS = 3;
+    private static final byte ARMING_STATUS = 4;
+
+    //length + crc header in front of every record payload
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    //sensor put payload without the name: type, id, active, sensor type and the name length
+    private static final int MAX_NAME_BYTES = MAX_RECORD_BYTES - (1 + 16 + 1 + 1 + 2);
+
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 1024;
+
+    private final Path logFile;
+    private final boolean syncOnWrite;
+    private final int compactionThreshold;
+
+    private volatile SensorSnapshot sensors = SensorSnapshot.EMPTY;
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    private final RecordBuffer recordBuffer = new RecordBuffer();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private int recordsSinceCompaction;
+
+    public WriteAheadLogSecurityRepositoryImpl(Path logFile) {
+        this(logFile, true, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param logFile The log to replay and append to. Created if it does not exist.
+     * @param syncOnWrite If true, every append is forced to disk before the mutating call returns.
+     *                    If false, the operating system decides when appended records reach the disk.
+     * @param compactionThreshold Minimum number of records the log may hold before it is considered
+     *                            for compaction. The log is compacted once it holds more than this many
+     *                            records and more than twice the number of live records.
+     */
+    public WriteAheadLogSecurityRepositoryImpl(Path logFile, boolean syncOnWrite, int compactionThreshold) {
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("compactionThreshold must be positive");
+        }
+        this.logFile = logFile;
+        this.syncOnWrite = syncOnWrite;
+        this.compactionThreshold = compactionThreshold;
+        try {
+            long validLength = replay();
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open sensor log " + logFile, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        checkName(sensor);
+        sensors = sensors.with(sensor);
+        appendSensorPut(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors = sensors.without(sensor);
+        try {
+            beginRecord(SENSOR_REMOVE);
+            writeSensorId(sensor.getSensorId());
+            writeRecord(channel);
+            afterAppend();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        checkName(sensor);
+        sensors = sensors.with(sensor);
+        appendSensorPut(sensor);
+    }
+
+    /**
+     * Appends one record per sensor and syncs them together, so a batch costs a single fsync.
+     */
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updatedSensors) {
+        if (updatedSensors.isEmpty()) {
+            return;
+        }
+        updatedSensors.forEach(WriteAheadLogSecurityRepositoryImpl::checkName);
+        sensors = sensors.with(updatedSensors);
+        try {
+            for (Sensor sensor : updatedSensors) {
+                writeSensorPut(channel, sensor);
+            }
+            afterAppend();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        appendStatus(ALARM_STATUS, alarmStatus.ordinal());
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        appendStatus(ARMING_STATUS, armingStatus.ordinal());
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.getSensors();
+    }
+
+    @Override
+    public SensorSnapshot getSensorSnapshot() {
+        return sensors;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.getActiveCount();
+    }
+
+    @Override
+    public int getActiveSensorCount(SensorType sensorType) {
+        return sensors.getActiveCount(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Rewrites the log so that it only contains the records needed to rebuild the current state.
+     * The snapshot is written to a temporary file and atomically moved over the log, so a crash
+     * during compaction leaves either the old log or the new one, never a mix of both.
+     */
+    public synchronized void compact() {
+        Path snapshot = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        try {
+            try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeStatus(out, ALARM_STATUS, alarmStatus.ordinal());
+                writeStatus(out, ARMING_STATUS, armingStatus.ordinal());
+                for (Sensor sensor : sensors.getSensors()) {
+                    writeSensorPut(out, sensor);
+                }
+                out.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(snapshot, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                //if the move failed the old log is still complete, so keep appending to it
+                channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            recordsSinceCompaction = sensors.size() + 2;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to compact sensor log " + logFile, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    /**
+     * Rejects a sensor whose record would be too long to replay, before any state changes.
+     */
+    private static void checkName(Sensor sensor) {
+        String name = sensor.getName();
+        if (name == null) {
+            return;
+        }
+        //length of the modified UTF-8 written by writeUTF
+        int bytes = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            bytes += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        if (bytes > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Sensor name is " + bytes + " bytes, at most " + MAX_NAME_BYTES + " can be logged");
+        }
+    }
+
+    private void appendSensorPut(Sensor sensor) {
+        try {
+            writeSensorPut(channel, sensor);
+            afterAppend();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void appendStatus(byte type, int ordinal) {
+        try {
+            writeStatus(channel, type, ordinal);
+            afterAppend();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void writeSensorPut(FileChannel target, Sensor sensor) throws IOException {
+        beginRecord(SENSOR_PUT);
+        writeSensorId(sensor.getSensorId());
+        recordOut.writeBoolean(Boolean.TRUE.equals(sensor.getActive()));
+        recordOut.writeByte(sensor.getSensorType().ordinal());
+        recordOut.writeUTF(sensor.getName() == null ? "" : sensor.getName());
+        writeRecord(target);
+    }
+
+    private void writeStatus(FileChannel target, byte type, int ordinal) throws IOException {
+        beginRecord(type);
+        recordOut.writeByte(ordinal);
+        writeRecord(target);
+    }
+
+    private void writeSensorId(UUID sensorId) throws IOException {
+        recordOut.writeLong(sensorId.getMostSignificantBits());
+        recordOut.writeLong(sensorId.getLeastSignificantBits());
+    }
+
+    private void beginRecord(byte type) throws IOException {
+        recordBuffer.reset();
+        recordOut.writeInt(0); //length, patched in writeRecord
+        recordOut.writeInt(0); //crc, patched in writeRecord
+        recordOut.writeByte(type);
+    }
+
+    /**
+     * Patches the header of the record held in the buffer and writes it to the target channel.
+     */
+    private void writeRecord(FileChannel target) throws IOException {
+        ByteBuffer record = recordBuffer.asByteBuffer();
+        int payloadLength = record.remaining() - RECORD_HEADER_BYTES;
+        crc.reset();
+        crc.update(record.array(), RECORD_HEADER_BYTES, payloadLength);
+        record.putInt(0, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        while (record.hasRemaining()) {
+            target.write(record);
+        }
+        recordsSinceCompaction++;
+    }
+
+    private void afterAppend() throws IOException {
+        if (syncOnWrite) {
+            channel.force(false);
+        }
+        if (recordsSinceCompaction > compactionThreshold && recordsSinceCompaction > 2 * (sensors.size() + 2)) {
+            compact();
+        }
+    }
+
+    /**
+     * Replays the log into memory.
+     * @return The length of the valid prefix of the log. Anything after it is a torn or corrupt record.
+     */
+    private long replay() throws IOException {
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+        Map<UUID, Sensor> replayed = new LinkedHashMap<>();
+        long validLength = 0;
+        try (InputStream fileIn = Files.newInputStream(logFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+            byte[] payload = new byte[256];
+            while (true) {
+                int length;
+                int expectedCrc;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    if (payload.length < length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                } catch (EOFException eof) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                applyRecord(new DataInputStream(new ByteArrayInputStream(payload, 0, length)), replayed);
+                validLength += RECORD_HEADER_BYTES + length;
+                recordsSinceCompaction++;
+            }
+        }
+        sensors = SensorSnapshot.of(0, replayed.values());
+        return validLength;
+    }
+
+    private void applyRecord(DataInputStream record, Map<UUID, Sensor> replayed) throws IOException {
+        byte type = record.readByte();
+        switch (type) {
+            case SENSOR_PUT -> {
+                UUID sensorId = new UUID(record.readLong(), record.readLong());
+                boolean active = record.readBoolean();
+                SensorType sensorType = SensorType.values()[record.readByte()];
+                Sensor sensor = new Sensor(record.readUTF(), sensorType);
+                sensor.setSensorId(sensorId);
+                sensor.setActive(active);
+                replayed.put(sensorId, sensor);
+            }
+            case SENSOR_REMOVE -> replayed.remove(new UUID(record.readLong(), record.readLong()));
+            case ALARM_STATUS -> alarmStatus = AlarmStatus.values()[record.readByte()];
+            case ARMING_STATUS -> armingStatus = ArmingStatus.values()[record.readByte()];
+            default -> throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Byte buffer that exposes its backing array so records can be written without copying.
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(128);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
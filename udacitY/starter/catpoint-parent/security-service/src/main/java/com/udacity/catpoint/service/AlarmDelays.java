@@ -0,0 +1,41 @@
+package com.udacity.catpoint.service;
+
+import java.time.Duration;
+
+/**
+ * Time-based alarm behavior. A zero duration turns the corresponding behavior off.
+ */
+public final class AlarmDelays {
+
+    public static final AlarmDelays NONE = new AlarmDelays(Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+    private final Duration entryDelay;
+    private final Duration exitDelay;
+    private final Duration autoSilence;
+
+    /**
+     * @param entryDelay How long the system stays in pending alarm before it sounds the alarm on its own
+     * @param exitDelay How long after arming sensor activations are ignored, so people can leave
+     * @param autoSilence How long the alarm sounds before it resets to no alarm on its own
+     */
+    public AlarmDelays(Duration entryDelay, Duration exitDelay, Duration autoSilence) {
+        if (entryDelay.isNegative() || exitDelay.isNegative() || autoSilence.isNegative()) {
+            throw new IllegalArgumentException("delays must not be negative");
+        }
+        this.entryDelay = entryDelay;
+        this.exitDelay = exitDelay;
+        this.autoSilence = autoSilence;
+    }
+
+    public Duration getEntryDelay() {
+        return entryDelay;
+    }
+
+    public Duration getExitDelay() {
+        return exitDelay;
+    }
+
+    public Duration getAutoSilence() {
+        return autoSilence;
+    }
+}
@@ -0,0 +1,226 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The alarm state machine as a precomputed table. The table is built once from a list of
+ * declarative rules and holds, for every combination of arming status, alarm status, event,
+ * "any sensor active" and "cat detected", the alarm status the system moves to, so resolving an
+ * event is a single array lookup.
+ *
+ * Rules are checked in order and the first matching rule decides the outcome. A combination that
+ * no rule matches leaves the alarm status alone.
+ */
+public final class AlarmTransitionTable {
+
+    /**
+     * Things that can happen to the system that may change the alarm status.
+     */
+    public enum Event {
+        /** An inactive sensor became active. */
+        SENSOR_ACTIVATED,
+        /** An active sensor was reported active again. */
+        SENSOR_REACTIVATED,
+        /** An active sensor became inactive. */
+        SENSOR_DEACTIVATED,
+        /** An inactive sensor was reported inactive again. */
+        SENSOR_STILL_INACTIVE,
+        CAT_DETECTED,
+        CAT_CLEARED,
+        DISARMED,
+        ARMED_HOME,
+        ARMED_AWAY;
+
+        public static Event forSensor(boolean wasActive, boolean active) {
+            if (active) {
+                return wasActive ? SENSOR_REACTIVATED : SENSOR_ACTIVATED;
+            }
+            return wasActive ? SENSOR_DEACTIVATED : SENSOR_STILL_INACTIVE;
+        }
+
+        public static Event forCat(boolean cat) {
+            return cat ? CAT_DETECTED : CAT_CLEARED;
+        }
+
+        public static Event forArming(ArmingStatus armingStatus) {
+            return switch (armingStatus) {
+                case DISARMED -> DISARMED;
+                case ARMED_HOME -> ARMED_HOME;
+                case ARMED_AWAY -> ARMED_AWAY;
+            };
+        }
+    }
+
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final Event[] EVENTS = Event.values();
+    private static final byte UNCHANGED = -1;
+
+    /**
+     * The rules of the security system, as described by the requirements.
+     */
+    public static final AlarmTransitionTable STANDARD = new AlarmTransitionTable(List.of(
+            // REQUIREMENT 1, 2: An activated sensor raises the alarm one step when the system is armed
+            rule(Event.SENSOR_ACTIVATED).arming(ArmingStatus.DISARMED).leave(),
+            rule(Event.SENSOR_ACTIVATED).alarm(AlarmStatus.NO_ALARM).then(AlarmStatus.PENDING_ALARM),
+            rule(Event.SENSOR_ACTIVATED).alarm(AlarmStatus.PENDING_ALARM).then(AlarmStatus.ALARM),
+            // REQUIREMENT 5: A sensor activated while already active and the system is pending goes to alarm
+            rule(Event.SENSOR_REACTIVATED).alarm(AlarmStatus.PENDING_ALARM).then(AlarmStatus.ALARM),
+            rule(Event.SENSOR_DEACTIVATED).alarm(AlarmStatus.ALARM).then(AlarmStatus.PENDING_ALARM),
+            // REQUIREMENT 3: If pending alarm and all sensors are inactive, return to no alarm state
+            rule(Event.SENSOR_DEACTIVATED).alarm(AlarmStatus.PENDING_ALARM).anyActive(false).then(AlarmStatus.NO_ALARM),
+            rule(Event.SENSOR_STILL_INACTIVE).alarm(AlarmStatus.PENDING_ALARM).anyActive(false).then(AlarmStatus.NO_ALARM),
+            // REQUIREMENT 7: A cat while armed-home sets the alarm
+            rule(Event.CAT_DETECTED).arming(ArmingStatus.ARMED_HOME).then(AlarmStatus.ALARM),
+            // REQUIREMENT 8: If no cat detected and sensors are not active, set to NO_ALARM
+            rule(Event.CAT_CLEARED).anyActive(false).then(AlarmStatus.NO_ALARM),
+            // REQUIREMENT 9: Disarming clears the alarm
+            rule(Event.DISARMED).then(AlarmStatus.NO_ALARM),
+            // REQUIREMENT 11: If the system is armed-home while the camera shows a cat, set the alarm status to alarm
+            rule(Event.ARMED_HOME).cat(true).then(AlarmStatus.ALARM)
+    ));
+
+    private final byte[] outcomes;
+    private final boolean[] usesActiveSensors;
+
+    /**
+     * Builds the table from rules, first matching rule wins.
+     */
+    public AlarmTransitionTable(List<Rule> rules) {
+        outcomes = new byte[ARMING_STATUSES.length * ALARM_STATUSES.length * EVENTS.length * 4];
+        usesActiveSensors = new boolean[EVENTS.length];
+        for (Rule rule : rules) {
+            if (rule.anyActive != null) {
+                usesActiveSensors[rule.event.ordinal()] = true;
+            }
+        }
+        for (ArmingStatus arming : ARMING_STATUSES) {
+            for (AlarmStatus alarm : ALARM_STATUSES) {
+                for (Event event : EVENTS) {
+                    for (int flags = 0; flags < 4; flags++) {
+                        boolean anyActive = (flags & 2) != 0;
+                        boolean cat = (flags & 1) != 0;
+                        byte outcome = UNCHANGED;
+                        for (Rule rule : rules) {
+                            if (rule.matches(arming, alarm, event, anyActive, cat)) {
+                                outcome = rule.outcome == null ? UNCHANGED : (byte) rule.outcome.ordinal();
+                                break;
+                            }
+                        }
+                        outcomes[index(arming, alarm, event, anyActive, cat)] = outcome;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The alarm status to move to, or null to leave the alarm status alone
+     */
+    public AlarmStatus lookup(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anyActive, boolean cat) {
+        byte outcome = outcomes[index(arming, alarm, event, anyActive, cat)];
+        return outcome == UNCHANGED ? null : ALARM_STATUSES[outcome];
+    }
+
+    /**
+     * @return False if no outcome for this event depends on whether any sensor is active,
+     * in which case callers may pass any value without looking it up
+     */
+    public boolean usesActiveSensors(Event event) {
+        return usesActiveSensors[event.ordinal()];
+    }
+
+    /**
+     * @return Every combination that changes the alarm status, one per line as
+     * {@code arming,alarm,event,anyActive,cat,outcome}, with a header line
+     */
+    public String export() {
+        StringBuilder sb = new StringBuilder("arming,alarm,event,anyActive,cat,outcome\n");
+        for (ArmingStatus arming : ARMING_STATUSES) {
+            for (AlarmStatus alarm : ALARM_STATUSES) {
+                for (Event event : EVENTS) {
+                    for (int flags = 0; flags < 4; flags++) {
+                        boolean anyActive = (flags & 2) != 0;
+                        boolean cat = (flags & 1) != 0;
+                        AlarmStatus outcome = lookup(arming, alarm, event, anyActive, cat);
+                        if (outcome != null) {
+                            sb.append(arming).append(',').append(alarm).append(',').append(event).append(',')
+                                    .append(anyActive).append(',').append(cat).append(',').append(outcome).append('\n');
+                        }
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int index(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anyActive, boolean cat) {
+        return ((arming.ordinal() * ALARM_STATUSES.length + alarm.ordinal()) * EVENTS.length + event.ordinal()) * 4
+                + (anyActive ? 2 : 0) + (cat ? 1 : 0);
+    }
+
+    public static Rule rule(Event event) {
+        return new Rule(event);
+    }
+
+    /**
+     * One declarative rule. Conditions that are not set match any value.
+     */
+    public static final class Rule {
+        private final Event event;
+        private EnumSet<ArmingStatus> arming;
+        private EnumSet<AlarmStatus> alarm;
+        private Boolean anyActive;
+        private Boolean cat;
+        private AlarmStatus outcome;
+
+        private Rule(Event event) {
+            this.event = event;
+        }
+
+        public Rule arming(ArmingStatus first, ArmingStatus... rest) {
+            arming = EnumSet.of(first, rest);
+            return this;
+        }
+
+        public Rule alarm(AlarmStatus first, AlarmStatus... rest) {
+            alarm = EnumSet.of(first, rest);
+            return this;
+        }
+
+        public Rule anyActive(boolean anyActive) {
+            this.anyActive = anyActive;
+            return this;
+        }
+
+        public Rule cat(boolean cat) {
+            this.cat = cat;
+            return this;
+        }
+
+        public Rule then(AlarmStatus outcome) {
+            this.outcome = outcome;
+            return this;
+        }
+
+        /**
+         * Matching combinations keep their alarm status, and no later rule is consulted for them.
+         */
+        public Rule leave() {
+            this.outcome = null;
+            return this;
+        }
+
+        private boolean matches(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anyActive, boolean cat) {
+            return this.event == event
+                    && (this.arming == null || this.arming.contains(arming))
+                    && (this.alarm == null || this.alarm.contains(alarm))
+                    && (this.anyActive == null || this.anyActive == anyActive)
+                    && (this.cat == null || this.cat == cat);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.application.StatusListener;
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * StatusListener decorator that hands notifications to a bounded mailbox and delivers them to the
+ * wrapped listener on an executor, so a slow listener never holds up the thread that changed the
+ * system state.
+ *
+ * A notification of the same kind as the newest one still waiting in the mailbox replaces it instead
+ * of being queued behind it, so a burst such as PENDING_ALARM, ALARM, PENDING_ALARM reaches a slow
+ * listener as the latest status only. If the mailbox is full anyway, the oldest notification that
+ * has a newer one of the same kind behind it is dropped. Either way the listener always ends up
+ * with the latest state.
+ *
+ * Offline sensor notifications are about different sensors and are never coalesced. They wait in a
+ * separate queue of the same capacity and are delivered after the status notifications pending at
+ * the time; if that queue is full, the oldest is dropped.
+ */
+public class AsyncStatusListener implements StatusListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncStatusListener.class);
+
+    //notification kinds, stored in the low bits of each mailbox entry with the value above them
+    private static final int ALARM = 0;
+    private static final int CAT = 1;
+    private static final int SENSORS = 2;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    private static final int KIND_COUNT = 3;
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+
+    private final StatusListener delegate;
+    private final Executor executor;
+    private final int[] entries;
+    private final long[] enqueuedNanos;
+    private final ArrayDeque<Sensor> offlineSensors = new ArrayDeque<>();
+    private final ArrayDeque<Long> offlineEnqueuedNanos = new ArrayDeque<>();
+    private int head;
+    private int count;
+    private boolean draining;
+
+    private long deliveredCount;
+    private long coalescedCount;
+    private long droppedCount;
+    private long lastLagNanos;
+    private long maxLagNanos;
+
+    /**
+     * @param delegate The listener to notify
+     * @param executor Runs the delivery task, for example {@code SwingUtilities::invokeLater} for Swing components
+     * @param capacity Maximum number of notifications waiting for the listener. Must be greater than
+     *                 the number of notification kinds, so a full mailbox always holds a superseded one.
+     */
+    public AsyncStatusListener(StatusListener delegate, Executor executor, int capacity) {
+        if (capacity <= KIND_COUNT) {
+            throw new IllegalArgumentException("capacity must be greater than " + KIND_COUNT);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.entries = new int[capacity];
+        this.enqueuedNanos = new long[capacity];
+    }
+
+    public StatusListener getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        offer(ALARM | status.ordinal() << KIND_BITS);
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        offer(CAT | (catDetected ? 1 : 0) << KIND_BITS);
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        offer(SENSORS);
+    }
+
+    @Override
+    public void sensorOffline(Sensor sensor) {
+        boolean schedule;
+        synchronized (this) {
+            if (offlineSensors.size() == entries.length) {
+                offlineSensors.poll();
+                offlineEnqueuedNanos.poll();
+                droppedCount++;
+            }
+            offlineSensors.add(sensor);
+            offlineEnqueuedNanos.add(System.nanoTime());
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * @return Notifications waiting to be delivered
+     */
+    public synchronized int getPendingCount() {
+        return count + offlineSensors.size();
+    }
+
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return Notifications replaced by a newer one of the same kind before being delivered
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * @return Notifications discarded because the mailbox was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return Time between queueing and delivering the most recently delivered notification
+     */
+    public synchronized long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public synchronized long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    private void offer(int entry) {
+        boolean schedule;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (count > 0 && (entries[index(count - 1)] & KIND_MASK) == (entry & KIND_MASK)) {
+                //keep the original queue time, so the reported lag covers the whole burst
+                entries[index(count - 1)] = entry;
+                coalescedCount++;
+            } else {
+                if (count == entries.length) {
+                    dropSuperseded();
+                }
+                entries[index(count)] = entry;
+                enqueuedNanos[index(count)] = now;
+                count++;
+            }
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int entry = 0;
+            Sensor offlineSensor = null;
+            synchronized (this) {
+                long enqueued;
+                if (count > 0) {
+                    entry = entries[head];
+                    enqueued = enqueuedNanos[head];
+                    head = index(1);
+                    count--;
+                } else if (!offlineSensors.isEmpty()) {
+                    offlineSensor = offlineSensors.poll();
+                    enqueued = offlineEnqueuedNanos.poll();
+                } else {
+                    draining = false;
+                    return;
+                }
+                lastLagNanos = System.nanoTime() - enqueued;
+                maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+                deliveredCount++;
+            }
+            try {
+                if (offlineSensor != null) {
+                    delegate.sensorOffline(offlineSensor);
+                } else {
+                    deliver(entry);
+                }
+            } catch (RuntimeException e) {
+                log.error("Status listener {} failed", delegate, e);
+            }
+        }
+    }
+
+    private void deliver(int entry) {
+        int value = entry >>> KIND_BITS;
+        switch (entry & KIND_MASK) {
+            case ALARM -> delegate.notify(ALARM_STATUSES[value]);
+            case CAT -> delegate.catDetected(value != 0);
+            default -> delegate.sensorStatusChanged();
+        }
+    }
+
+    /**
+     * Removes the oldest entry that is followed by a newer entry of the same kind.
+     */
+    private void dropSuperseded() {
+        int dropped = 0;
+        search:
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if ((entries[index(i)] & KIND_MASK) == (entries[index(j)] & KIND_MASK)) {
+                    dropped = i;
+                    break search;
+                }
+            }
+        }
+        for (int i = dropped; i > 0; i--) {
+            entries[index(i)] = entries[index(i - 1)];
+            enqueuedNanos[index(i)] = enqueuedNanos[index(i - 1)];
+        }
+        head = index(1);
+        count--;
+        droppedCount++;
+    }
+
+    private int index(int offset) {
+        return (head + offset) % entries.length;
+    }
+}
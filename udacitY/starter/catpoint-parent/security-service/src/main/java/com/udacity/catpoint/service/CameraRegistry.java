@@ -0,0 +1,174 @@
+package com.udacity.catpoint.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The cameras of one site and the latest cat verdict of each, so a frame without a cat from one
+ * camera does not clear a cat seen by another.
+ *
+ * Each camera gets a small index when registered. Its verdict is kept in one slot of an atomic array,
+ * together with the number of the frame it came from, so verdicts for different cameras are updated
+ * in parallel without locking, and a verdict for an older frame never replaces a newer one. The number
+ * of cameras currently seeing a cat is kept up to date with every verdict change, so asking whether any
+ * camera sees a cat does not scan the cameras.
+ *
+ * Room for cameras is allocated sixteen at a time as they register, so the capacity only limits how
+ * many cameras a site can have and costs nothing until they are added.
+ */
+public final class CameraRegistry {
+
+    private static final long CAT = 1L;
+    private static final int CHUNK_BITS = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final int capacity;
+    //grown by copying when a camera needs a new chunk, so readers never see a chunk go missing
+    private volatile Chunk[] chunks = new Chunk[0];
+    private final AtomicInteger catCameras = new AtomicInteger();
+    private volatile int cameraCount;
+
+    /**
+     * @param capacity Most cameras the site can have
+     */
+    public CameraRegistry(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a camera, unless it is already registered.
+     * @return The camera's index
+     * @throws IllegalStateException if the registry is full
+     */
+    public int register(String cameraId) {
+        Integer existing = indexes.get(cameraId);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            existing = indexes.get(cameraId);
+            if (existing != null) {
+                return existing;
+            }
+            if (cameraCount == capacity) {
+                throw new IllegalStateException("No room for camera " + cameraId + ", capacity is " + capacity);
+            }
+            int index = cameraCount;
+            if ((index & CHUNK_MASK) == 0) {
+                Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[grown.length - 1] = new Chunk();
+                chunks = grown;
+            }
+            chunks[index >>> CHUNK_BITS].cameraIds[index & CHUNK_MASK] = cameraId;
+            //publishes the chunk and the ID to readers that go through the count or the index map
+            cameraCount = index + 1;
+            indexes.put(cameraId, index);
+            return index;
+        }
+    }
+
+    /**
+     * @return The camera's index, or -1 if it is not registered
+     */
+    public int indexOf(String cameraId) {
+        return indexes.getOrDefault(cameraId, -1);
+    }
+
+    public String getCameraId(int index) {
+        if (index < 0 || index >= cameraCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chunks[index >>> CHUNK_BITS].cameraIds[index & CHUNK_MASK];
+    }
+
+    public int getCameraCount() {
+        return cameraCount;
+    }
+
+    /**
+     * @return Camera IDs in registration order
+     */
+    public List<String> getCameraIds() {
+        int count = cameraCount;
+        List<String> cameraIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cameraIds.add(getCameraId(i));
+        }
+        return cameraIds;
+    }
+
+    /**
+     * @return True if the camera's latest verdict saw a cat
+     */
+    public boolean seesCat(int index) {
+        return (chunks[index >>> CHUNK_BITS].verdicts.get(index & CHUNK_MASK) & CAT) != 0;
+    }
+
+    /**
+     * @return Number of cameras whose latest verdict saw a cat
+     */
+    public int getCatCameraCount() {
+        return catCameras.get();
+    }
+
+    public boolean anyCameraSeesCat() {
+        return catCameras.get() > 0;
+    }
+
+    /**
+     * Records a camera's verdict for a frame.
+     * @return False if the camera already has a verdict for a later frame
+     */
+    boolean update(int index, long frame, boolean cat) {
+        long next = frame << 1 | (cat ? CAT : 0);
+        AtomicLongArray verdicts = chunks[index >>> CHUNK_BITS].verdicts;
+        index &= CHUNK_MASK;
+        long current;
+        do {
+            current = verdicts.get(index);
+            if (frame < current >>> 1) {
+                return false;
+            }
+        } while (!verdicts.compareAndSet(index, current, next));
+        counted(current, next);
+        return true;
+    }
+
+    /**
+     * Forgets every camera's cat, keeping the frame numbers so older verdicts are still recognized.
+     */
+    void clearCats() {
+        int count = cameraCount;
+        for (int i = 0; i < count; i++) {
+            AtomicLongArray verdicts = chunks[i >>> CHUNK_BITS].verdicts;
+            int slot = i & CHUNK_MASK;
+            long current;
+            do {
+                current = verdicts.get(slot);
+            } while ((current & CAT) != 0 && !verdicts.compareAndSet(slot, current, current & ~CAT));
+            counted(current, current & ~CAT);
+        }
+    }
+
+    private void counted(long previous, long next) {
+        int change = (int) (next & CAT) - (int) (previous & CAT);
+        if (change != 0) {
+            catCameras.addAndGet(change);
+        }
+    }
+
+    private static final class Chunk {
+        private final String[] cameraIds = new String[CHUNK_SIZE];
+        //per camera: frame number << 1 | cat
+        private final AtomicLongArray verdicts = new AtomicLongArray(CHUNK_SIZE);
+    }
+}
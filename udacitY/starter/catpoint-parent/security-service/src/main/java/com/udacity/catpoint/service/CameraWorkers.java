@@ -0,0 +1,125 @@
+package com.udacity.catpoint.service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes the images of a site's cameras with one worker per camera, all running on a shared
+ * executor. A camera's images are processed one at a time, so its verdicts arrive in order, while
+ * different cameras are processed in parallel on as many threads as the executor has.
+ *
+ * A camera keeps at most one image waiting. A newer image replaces the waiting one, which is never
+ * classified, so a camera that sends images faster than they can be analyzed does not fall behind.
+ */
+public final class CameraWorkers {
+
+    private final SecurityService securityService;
+    private final Executor executor;
+    private final ConcurrentHashMap<String, Worker> workers = new ConcurrentHashMap<>();
+    private final AtomicLong replacedImages = new AtomicLong();
+
+    /**
+     * @param executor Runs the workers, for example a fixed pool with one thread per core
+     */
+    public CameraWorkers(SecurityService securityService, Executor executor) {
+        this.securityService = securityService;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues an image from a camera for processing.
+     * @param cameraId A camera added with {@link SecurityService#addCamera(String)}
+     * @return Completes once the image has been processed. It is cancelled if a newer image from the
+     * same camera replaced it before it was processed, and fails if processing fails.
+     * @throws IllegalArgumentException if the camera was never added
+     */
+    public CompletableFuture<Void> submit(String cameraId, BufferedImage image) {
+        if (securityService.getCameraRegistry().indexOf(cameraId) < 0) {
+            throw new IllegalArgumentException("Unknown camera " + cameraId);
+        }
+        return workers.computeIfAbsent(cameraId, Worker::new).submit(image);
+    }
+
+    /**
+     * @return Number of images replaced by a newer image from the same camera before being processed
+     */
+    public long getReplacedImageCount() {
+        return replacedImages.get();
+    }
+
+    private final class Worker {
+        private final String cameraId;
+        private BufferedImage waiting;
+        private CompletableFuture<Void> waitingResult;
+        private boolean running;
+
+        private Worker(String cameraId) {
+            this.cameraId = cameraId;
+        }
+
+        private synchronized CompletableFuture<Void> submit(BufferedImage image) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            if (waitingResult != null) {
+                waitingResult.cancel(false);
+                replacedImages.incrementAndGet();
+            }
+            waiting = image;
+            waitingResult = result;
+            if (!running) {
+                try {
+                    executor.execute(this::run);
+                    running = true;
+                } catch (RejectedExecutionException e) {
+                    waiting = null;
+                    waitingResult = null;
+                    result.completeExceptionally(e);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Processes the waiting image and then gives the thread back, so a busy camera cannot starve
+         * the others.
+         */
+        private void run() {
+            BufferedImage image;
+            CompletableFuture<Void> result;
+            synchronized (this) {
+                image = waiting;
+                result = waitingResult;
+                waiting = null;
+                waitingResult = null;
+            }
+            try {
+                securityService.processImage(cameraId, image);
+                result.complete(null);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } catch (Error e) {
+                result.completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    if (waitingResult == null) {
+                        running = false;
+                    } else {
+                        try {
+                            executor.execute(this::run);
+                        } catch (RejectedExecutionException e) {
+                            //the executor shut down, so the waiting image will never be processed
+                            running = false;
+                            waiting = null;
+                            waitingResult.completeExceptionally(e);
+                            waitingResult = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.application.StatusListener;
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records every input to a SecurityService, and every alarm status it announces, as a compact
+ * binary event stream that {@link ReplayEngine} can run again against a fresh service.
+ *
+ * The stream starts with the alarm status, arming status, alarm delays and sensors the service had
+ * when recording began, so a recording is self-contained. Each event after that is a type byte, the milliseconds
+ * since the previous event as a variable-length number, and a payload. Sensors are identified by a
+ * small index assigned when they first appear, instead of their 16-byte ID.
+ *
+ * Inputs are recorded before the service acts on them, and announced alarm statuses as they happen,
+ * so the recorded status trace can be checked during a replay. This only holds if the service's
+ * inputs come from one thread at a time while recording. If writing fails, recording stops and the
+ * service carries on.
+ *
+ * Expiring entry delay, exit delay and auto-silence timers are recorded as events too, since they
+ * change what the service does next. The replay fires its own timers at those points, which only
+ * lines up with the recording if the recorder is given the same clock as the service's timer wheel.
+ */
+public class EventRecorder implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventRecorder.class);
+
+    static final int MAGIC = 0x43504556;
+    static final byte FORMAT_VERSION = 2;
+
+    //event types
+    static final byte SENSOR_DEFINED = 1;
+    static final byte SENSOR_ADDED = 2;
+    static final byte SENSOR_REMOVED = 3;
+    static final byte SENSOR_ACTIVATION = 4;
+    static final byte ARMING_STATUS = 5;
+    static final byte ALARM_STATUS = 6;
+    static final byte CAT_VERDICT = 7;
+    static final byte ALARM_ANNOUNCED = 8;
+    static final byte TIMER_FIRED = 9;
+
+    //timers
+    static final int ENTRY_DELAY = 0;
+    static final int EXIT_DELAY = 1;
+    static final int AUTO_SILENCE = 2;
+
+    private final SecurityService securityService;
+    private final Clock clock;
+    private final DataOutputStream out;
+    private final Map<UUID, Integer> sensorIndexes = new HashMap<>();
+    private final StatusListener traceListener = new TraceListener();
+    private long lastMillis;
+    private long eventCount;
+    private boolean failed;
+
+    /**
+     * Writes the current state of the service and starts recording it.
+     */
+    public EventRecorder(SecurityService securityService, OutputStream out, Clock clock) {
+        this.securityService = securityService;
+        this.clock = clock;
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        synchronized (this) {
+            lastMillis = clock.millis();
+            try {
+                this.out.writeInt(MAGIC);
+                this.out.writeByte(FORMAT_VERSION);
+                this.out.writeLong(lastMillis);
+                this.out.writeByte(securityService.getAlarmStatus().ordinal());
+                this.out.writeByte(securityService.getArmingStatus().ordinal());
+                AlarmDelays delays = securityService.getAlarmDelays();
+                this.out.writeLong(delays.getEntryDelay().toMillis());
+                this.out.writeLong(delays.getExitDelay().toMillis());
+                this.out.writeLong(delays.getAutoSilence().toMillis());
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+            for (Sensor sensor : securityService.getSensorSnapshot().getSensors()) {
+                define(sensor, true);
+            }
+        }
+        securityService.addStatusListener(traceListener);
+        securityService.setEventRecorder(this);
+    }
+
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Stops recording and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        securityService.setEventRecorder(null);
+        securityService.removeStatusListener(traceListener);
+        synchronized (this) {
+            failed = true;
+            out.close();
+        }
+    }
+
+    synchronized void sensorAdded(Sensor sensor) {
+        int index = indexOf(sensor);
+        if (begin(SENSOR_ADDED)) {
+            try {
+                writeSensor(index, sensor);
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+    }
+
+    synchronized void sensorRemoved(Sensor sensor) {
+        Integer index = sensorIndexes.get(sensor.getSensorId());
+        if (index != null && begin(SENSOR_REMOVED)) {
+            try {
+                writeVarLong(index);
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+    }
+
+    synchronized void sensorActivation(Sensor sensor, boolean active) {
+        Integer index = sensorIndexes.get(sensor.getSensorId());
+        if (index == null) {
+            index = define(sensor, false);
+        }
+        if (begin(SENSOR_ACTIVATION)) {
+            try {
+                writeVarLong(index);
+                out.writeBoolean(active);
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+    }
+
+    synchronized void armingStatus(ArmingStatus armingStatus) {
+        writeByteEvent(ARMING_STATUS, armingStatus.ordinal());
+    }
+
+    synchronized void alarmStatus(AlarmStatus alarmStatus) {
+        writeByteEvent(ALARM_STATUS, alarmStatus.ordinal());
+    }
+
+    synchronized void catVerdict(boolean cat) {
+        writeByteEvent(CAT_VERDICT, cat ? 1 : 0);
+    }
+
+    /**
+     * @param timer {@link #ENTRY_DELAY}, {@link #EXIT_DELAY} or {@link #AUTO_SILENCE}
+     */
+    synchronized void timerFired(int timer) {
+        writeByteEvent(TIMER_FIRED, timer);
+    }
+
+    private synchronized void alarmAnnounced(AlarmStatus alarmStatus) {
+        writeByteEvent(ALARM_ANNOUNCED, alarmStatus.ordinal());
+    }
+
+    private void writeByteEvent(byte type, int value) {
+        if (begin(type)) {
+            try {
+                out.writeByte(value);
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+    }
+
+    /**
+     * Assigns an index to a sensor the recording has not seen yet.
+     * @param stored True if the sensor is in the repository when recording starts
+     */
+    private int define(Sensor sensor, boolean stored) {
+        int index = indexOf(sensor);
+        if (begin(SENSOR_DEFINED)) {
+            try {
+                writeSensor(index, sensor);
+                out.writeBoolean(stored);
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+        return index;
+    }
+
+    private int indexOf(Sensor sensor) {
+        return sensorIndexes.computeIfAbsent(sensor.getSensorId(), id -> sensorIndexes.size());
+    }
+
+    /**
+     * Writes the type and time of the next event.
+     * @return False if recording has stopped
+     */
+    private boolean begin(byte type) {
+        if (failed) {
+            return false;
+        }
+        long now = clock.millis();
+        try {
+            out.writeByte(type);
+            writeVarLong(Math.max(0, now - lastMillis));
+        } catch (IOException ioe) {
+            fail(ioe);
+            return false;
+        }
+        lastMillis = Math.max(lastMillis, now);
+        eventCount++;
+        return true;
+    }
+
+    private void writeSensor(int index, Sensor sensor) throws IOException {
+        writeVarLong(index);
+        out.writeLong(sensor.getSensorId().getMostSignificantBits());
+        out.writeLong(sensor.getSensorId().getLeastSignificantBits());
+        //name and type may be missing, which is written as a marker instead of failing the service
+        String name = sensor.getName();
+        out.writeBoolean(name != null);
+        if (name != null) {
+            out.writeUTF(name);
+        }
+        SensorType sensorType = sensor.getSensorType();
+        out.writeByte(sensorType == null ? -1 : sensorType.ordinal());
+        out.writeBoolean(Boolean.TRUE.equals(sensor.getActive()));
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private void fail(IOException ioe) {
+        if (!failed) {
+            log.error("Unable to record security events, recording stopped", ioe);
+            failed = true;
+        }
+    }
+
+    private class TraceListener implements StatusListener {
+        @Override
+        public void notify(AlarmStatus status) {
+            alarmAnnounced(status);
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+            //the verdict is recorded as an input
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            //not part of the recorded trace
+        }
+    }
+}
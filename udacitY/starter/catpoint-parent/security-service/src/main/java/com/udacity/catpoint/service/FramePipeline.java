@@ -0,0 +1,455 @@
+package com.udacity.catpoint.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Feeds camera frames through a fixed series of stages, each with its own worker threads and a
+ * bounded queue in front of it:
+ * <ol>
+ *     <li>Decode: turns encoded image bytes into a BufferedImage.</li>
+ *     <li>Downscale: shrinks frames wider than the maximum width.</li>
+ *     <li>Gate: drops frames in which nothing moved, keeping the last verdict. Skipped without a gate.</li>
+ *     <li>Classify: asks the ImageService whether the frame contains a cat. Frames it cannot tell about
+ *     go no further. If the SecurityService has a {@link ClassificationScheduler}, frames are
+ *     classified through it instead, so they count against the same quota as the service's other
+ *     images.</li>
+ *     <li>Apply: passes the verdict to the SecurityService.</li>
+ * </ol>
+ * When a queue is full, its {@link OverflowPolicy} decides whether the stage feeding it waits or
+ * frames are dropped. A live camera normally wants frames dropped, so classification always works on
+ * recent frames instead of falling further behind.
+ *
+ * Frames are numbered when submitted, and a verdict is only applied if no later frame's verdict has
+ * been applied yet, so several classify workers cannot make the alarm go back to an older verdict.
+ * The gate and apply stages keep state across frames and always have one worker. If a frame the gate
+ * let through cannot be classified, the gate is reset so the same scene is classified again instead
+ * of being filtered as unchanged.
+ */
+public class FramePipeline implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FramePipeline.class);
+
+    /**
+     * Stages of the pipeline, in the order frames pass through them.
+     */
+    public enum Stage {
+        DECODE, DOWNSCALE, GATE, CLASSIFY, APPLY
+    }
+
+    /**
+     * What a stage's queue does with a new frame when it is full.
+     */
+    public enum OverflowPolicy {
+        /** The stage feeding the queue waits for space. */
+        BLOCK,
+        /** The oldest queued frame is dropped to make room. */
+        DROP_OLDEST,
+        /** All queued frames are dropped, so the stage only ever sees the latest frame. */
+        KEEP_LATEST
+    }
+
+    /**
+     * Worker count, queue capacity and overflow policy of one stage.
+     */
+    public static final class StageSettings {
+        public static final StageSettings DEFAULT = new StageSettings(1, 8, OverflowPolicy.DROP_OLDEST);
+
+        private final int workers;
+        private final int queueCapacity;
+        private final OverflowPolicy overflowPolicy;
+
+        public StageSettings(int workers, int queueCapacity, OverflowPolicy overflowPolicy) {
+            if (workers < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("workers and queueCapacity must be positive");
+            }
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+    }
+
+    /**
+     * Counters of one stage at the time they were read.
+     */
+    public static final class StageMetrics {
+        private final Stage stage;
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final long processedCount;
+        private final long filteredCount;
+        private final long droppedCount;
+        private final long failedCount;
+        private final double framesPerSecond;
+
+        private StageMetrics(Stage stage, int queueDepth, int queueCapacity, long processedCount, long filteredCount,
+                             long droppedCount, long failedCount, double framesPerSecond) {
+            this.stage = stage;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.processedCount = processedCount;
+            this.filteredCount = filteredCount;
+            this.droppedCount = droppedCount;
+            this.failedCount = failedCount;
+            this.framesPerSecond = framesPerSecond;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * @return Frames the stage finished with, including filtered ones
+         */
+        public long getProcessedCount() {
+            return processedCount;
+        }
+
+        /**
+         * @return Frames the stage chose not to pass on, such as frames without motion or stale verdicts
+         */
+        public long getFilteredCount() {
+            return filteredCount;
+        }
+
+        /**
+         * @return Frames dropped from the stage's queue because it was full
+         */
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return Frames processed per second since the pipeline started
+         */
+        public double getFramesPerSecond() {
+            return framesPerSecond;
+        }
+    }
+
+    private final SecurityService securityService;
+    private final ImageService imageService;
+    private final FrameDifferenceGate gate;
+    private final int maxWidth;
+    private final long startNanos = System.nanoTime();
+    private final Map<Stage, StageWorker> stages = new EnumMap<>(Stage.class);
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean closed;
+    //numbers the frames the gate let through; only the gate worker touches it
+    private long scene;
+    //scene whose frame could not be classified, or -1; the gate worker resets the gate for it
+    private final AtomicLong unclassifiedScene = new AtomicLong(-1);
+
+    /**
+     * @param gate Motion gate, or null to classify every frame
+     * @param maxWidth Frames wider than this are scaled down before classification
+     * @param settings Settings per stage. Stages without settings use {@link StageSettings#DEFAULT}.
+     */
+    public FramePipeline(SecurityService securityService, ImageService imageService, FrameDifferenceGate gate,
+                         int maxWidth, Map<Stage, StageSettings> settings) {
+        if (maxWidth < 1) {
+            throw new IllegalArgumentException("maxWidth must be positive");
+        }
+        for (Stage stage : new Stage[]{Stage.GATE, Stage.APPLY}) {
+            if (settings.getOrDefault(stage, StageSettings.DEFAULT).getWorkers() != 1) {
+                throw new IllegalArgumentException(stage + " stage must have one worker");
+            }
+        }
+        this.securityService = securityService;
+        this.imageService = imageService;
+        this.gate = gate;
+        this.maxWidth = maxWidth;
+
+        //built back to front so every stage knows the one after it
+        StageWorker next = null;
+        Stage[] order = Stage.values();
+        for (int i = order.length - 1; i >= 0; i--) {
+            Stage stage = order[i];
+            if (stage == Stage.GATE && gate == null) {
+                continue;
+            }
+            next = new StageWorker(stage, settings.getOrDefault(stage, StageSettings.DEFAULT), step(stage), next);
+            stages.put(stage, next);
+        }
+        for (StageWorker stage : stages.values()) {
+            for (int i = 1; i <= stage.settings.getWorkers(); i++) {
+                Thread t = new Thread(stage::work, "frame-" + stage.stage.name().toLowerCase() + "-" + i);
+                t.setDaemon(true);
+                threads.add(t);
+                t.start();
+            }
+        }
+    }
+
+    /**
+     * Queues an encoded camera frame, in any format ImageIO can read.
+     * @return False if the pipeline is closed
+     */
+    public boolean submit(byte[] encodedFrame) {
+        return enter(Stage.DECODE, new Frame(securityService.nextFrame(), encodedFrame, null));
+    }
+
+    /**
+     * Queues a decoded camera frame. It starts at the downscale stage.
+     * @return False if the pipeline is closed
+     */
+    public boolean submit(BufferedImage frame) {
+        return enter(Stage.DOWNSCALE, new Frame(securityService.nextFrame(), null, frame));
+    }
+
+    public StageMetrics getMetrics(Stage stage) {
+        StageWorker worker = stages.get(stage);
+        return worker == null ? null : worker.metrics();
+    }
+
+    /**
+     * @return Metrics of every stage the pipeline has, in pipeline order
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (StageWorker worker : stages.values()) {
+            metrics.add(worker.metrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops all workers. Frames still queued are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean enter(Stage stage, Frame frame) {
+        if (closed) {
+            return false;
+        }
+        stages.get(stage).offer(frame);
+        return true;
+    }
+
+    /**
+     * @return The work of a stage. It returns false if the frame should not go on to the next stage.
+     */
+    private Predicate<Frame> step(Stage stage) {
+        return switch (stage) {
+            case DECODE -> frame -> {
+                try {
+                    frame.image = ImageIO.read(new ByteArrayInputStream(frame.encoded));
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+                if (frame.image == null) {
+                    throw new IllegalArgumentException("Unreadable image format for frame " + frame.number);
+                }
+                frame.encoded = null;
+                return true;
+            };
+            case DOWNSCALE -> frame -> {
+                frame.image = downscale(frame.image);
+                return true;
+            };
+            case GATE -> frame -> {
+                //the gate is not thread safe, so a reset asked for by a classify worker happens here
+                if (unclassifiedScene.getAndSet(-1) == scene) {
+                    gate.reset();
+                }
+                if (!gate.hasChanged(frame.image)) {
+                    return false;
+                }
+                frame.scene = ++scene;
+                return true;
+            };
+            case CLASSIFY -> frame -> {
+                ImageVerdict verdict;
+                try {
+                    verdict = securityService.classifyFrame(frame.image, imageService);
+                } catch (CancellationException e) {
+                    //a newer frame took this one's place with the service's classification scheduler
+                    return false;
+                } catch (RuntimeException e) {
+                    unclassified(frame);
+                    throw e;
+                } finally {
+                    frame.image = null;
+                }
+                frame.cat = verdict == ImageVerdict.CAT;
+                if (verdict == ImageVerdict.UNKNOWN) {
+                    //an unknown verdict leaves the alarm as it is
+                    unclassified(frame);
+                    return false;
+                }
+                return true;
+            };
+            case APPLY -> frame -> securityService.applyFrameVerdict(frame.number, frame.cat);
+        };
+    }
+
+    /**
+     * Asks the gate worker to forget the frame's scene, unless a newer scene has already replaced it.
+     */
+    private void unclassified(Frame frame) {
+        if (gate != null) {
+            unclassifiedScene.set(frame.scene);
+        }
+    }
+
+    private BufferedImage downscale(BufferedImage image) {
+        if (image.getWidth() <= maxWidth) {
+            return image;
+        }
+        int height = Math.max(1, (int) ((long) image.getHeight() * maxWidth / image.getWidth()));
+        //the scaled frame moves on to later stages, so each frame needs its own
+        return ImageScaling.scale(image, maxWidth, height, null);
+    }
+
+    /**
+     * A frame on its way through the pipeline. Each stage fills in what the next one needs.
+     */
+    private static final class Frame {
+        private final long number;
+        private long scene;
+        private byte[] encoded;
+        private BufferedImage image;
+        private boolean cat;
+
+        private Frame(long number, byte[] encoded, BufferedImage image) {
+            this.number = number;
+            this.encoded = encoded;
+            this.image = image;
+        }
+    }
+
+    /**
+     * One stage: its queue, its work and its counters.
+     */
+    private final class StageWorker {
+        private final Stage stage;
+        private final StageSettings settings;
+        private final Predicate<Frame> step;
+        private final StageWorker next;
+        private final ArrayBlockingQueue<Frame> queue;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong filtered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        private StageWorker(Stage stage, StageSettings settings, Predicate<Frame> step, StageWorker next) {
+            this.stage = stage;
+            this.settings = settings;
+            this.step = step;
+            this.next = next;
+            this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        }
+
+        private void offer(Frame frame) {
+            switch (settings.getOverflowPolicy()) {
+                case BLOCK -> {
+                    try {
+                        queue.put(frame);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                    }
+                }
+                case DROP_OLDEST -> {
+                    while (!queue.offer(frame)) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+                case KEEP_LATEST -> {
+                    do {
+                        while (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    } while (!queue.offer(frame));
+                }
+            }
+        }
+
+        private void work() {
+            while (!closed) {
+                Frame frame;
+                try {
+                    frame = queue.take();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                try {
+                    if (step.test(frame)) {
+                        if (next != null) {
+                            next.offer(frame);
+                        }
+                    } else {
+                        filtered.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Frame {} failed in {} stage", frame.number, stage, e);
+                    failed.incrementAndGet();
+                }
+                processed.incrementAndGet();
+            }
+        }
+
+        private StageMetrics metrics() {
+            long count = processed.get();
+            long elapsed = System.nanoTime() - startNanos;
+            return new StageMetrics(stage, queue.size(), settings.getQueueCapacity(), count, filtered.get(),
+                    dropped.get(), failed.get(), elapsed == 0 ? 0 : count * 1e9 / elapsed);
+        }
+    }
+}
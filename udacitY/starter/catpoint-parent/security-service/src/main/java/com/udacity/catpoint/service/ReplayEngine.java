@@ -0,0 +1,372 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.application.StatusListener;
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a recording made by {@link EventRecorder} against a fresh SecurityService backed by an
+ * in-memory repository, and checks that the service announces the same alarm statuses as it did
+ * when the recording was made. Cat detection uses the verdicts from the recording, so no image
+ * analysis takes place.
+ *
+ * The service gets the alarm delays of the recorded one and a timer wheel on a virtual clock that
+ * follows the recorded event times. The wheel only moves where the recording says a timer fired,
+ * so timers expire between the same inputs as they did when the recording was made.
+ *
+ * A replay runs as fast as possible, or at the recorded pace scaled by a speed factor.
+ */
+public final class ReplayEngine {
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private ReplayEngine() {
+    }
+
+    /**
+     * Replays a recording as fast as possible.
+     */
+    public static ReplayResult replay(InputStream recording) {
+        return replay(recording, 0);
+    }
+
+    /**
+     * @param speed How many times faster than recorded to replay, or 0 for as fast as possible
+     */
+    public static ReplayResult replay(InputStream recording, double speed) {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(recording));
+        try {
+            if (in.readInt() != EventRecorder.MAGIC || in.readByte() != EventRecorder.FORMAT_VERSION) {
+                throw new IOException("Not a security event recording");
+            }
+            VirtualClock clock = new VirtualClock(in.readLong());
+            InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+            repository.setAlarmStatus(ALARM_STATUSES[in.readByte()]);
+            repository.setArmingStatus(ARMING_STATUSES[in.readByte()]);
+            AlarmDelays delays = new AlarmDelays(Duration.ofMillis(in.readLong()), Duration.ofMillis(in.readLong()),
+                    Duration.ofMillis(in.readLong()));
+            return new Replay(in, repository, clock, delays, speed).run();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Outcome of a replay.
+     */
+    public static final class ReplayResult {
+        private final long eventCount;
+        private final long elapsedNanos;
+        private final long announcementCount;
+        private final long mismatchCount;
+        private final long firstMismatchEvent;
+        private final SecurityService securityService;
+
+        private ReplayResult(long eventCount, long elapsedNanos, long announcementCount, long mismatchCount,
+                             long firstMismatchEvent, SecurityService securityService) {
+            this.eventCount = eventCount;
+            this.elapsedNanos = elapsedNanos;
+            this.announcementCount = announcementCount;
+            this.mismatchCount = mismatchCount;
+            this.firstMismatchEvent = firstMismatchEvent;
+            this.securityService = securityService;
+        }
+
+        public long getEventCount() {
+            return eventCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getEventsPerSecond() {
+            return elapsedNanos == 0 ? 0 : eventCount * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return Number of alarm statuses announced in the recording
+         */
+        public long getAnnouncementCount() {
+            return announcementCount;
+        }
+
+        /**
+         * @return Recorded announcements the replay did not repeat, including announcements that
+         * were missing or extra
+         */
+        public long getMismatchCount() {
+            return mismatchCount;
+        }
+
+        /**
+         * @return Position of the first mismatching event in the recording, or -1 if the trace matched
+         */
+        public long getFirstMismatchEvent() {
+            return firstMismatchEvent;
+        }
+
+        public boolean traceMatches() {
+            return mismatchCount == 0;
+        }
+
+        /**
+         * @return The service the recording was replayed against, in its final state
+         */
+        public SecurityService getSecurityService() {
+            return securityService;
+        }
+    }
+
+    /**
+     * State of one replay run.
+     */
+    private static final class Replay implements StatusListener {
+        private final DataInputStream in;
+        private final InMemorySecurityRepositoryImpl repository;
+        private final RecordedImageService imageService = new RecordedImageService();
+        private final SecurityService securityService;
+        private final VirtualClock clock;
+        private final TimerWheel timers;
+        private final double speed;
+        private final List<Sensor> sensors = new ArrayList<>();
+        private final ArrayDeque<AlarmStatus> announced = new ArrayDeque<>();
+
+        private long eventCount;
+        private long announcementCount;
+        private long mismatchCount;
+        private long firstMismatchEvent = -1;
+
+        private Replay(DataInputStream in, InMemorySecurityRepositoryImpl repository, VirtualClock clock,
+                       AlarmDelays delays, double speed) {
+            this.in = in;
+            this.repository = repository;
+            this.clock = clock;
+            this.speed = speed;
+            //millisecond ticks, so a timer is due no later than the recording says it fired
+            this.timers = new TimerWheel(clock, Duration.ofMillis(1), TIMER_WHEEL_SIZE);
+            this.securityService = new SecurityService(repository, imageService, timers, delays);
+            securityService.addStatusListener(this);
+        }
+
+        private ReplayResult run() throws IOException {
+            long start = System.nanoTime();
+            long recordedMillis = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                recordedMillis += readVarLong();
+                if (speed > 0) {
+                    long due = start + (long) (TimeUnit.MILLISECONDS.toNanos(recordedMillis) / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                clock.millis = clock.startMillis + recordedMillis;
+                apply((byte) type);
+                eventCount++;
+            }
+            //anything the replay announced after the last recorded announcement is extra
+            mismatch(announced.size());
+            return new ReplayResult(eventCount, System.nanoTime() - start, announcementCount, mismatchCount,
+                    firstMismatchEvent, securityService);
+        }
+
+        private void apply(byte type) throws IOException {
+            switch (type) {
+                case EventRecorder.SENSOR_DEFINED -> {
+                    Sensor sensor = readSensor();
+                    if (in.readBoolean()) {
+                        repository.addSensor(sensor);
+                    }
+                }
+                case EventRecorder.SENSOR_ADDED -> securityService.addSensor(readSensor());
+                case EventRecorder.SENSOR_REMOVED -> securityService.removeSensor(sensors.get((int) readVarLong()));
+                case EventRecorder.SENSOR_ACTIVATION -> {
+                    Sensor sensor = sensors.get((int) readVarLong());
+                    securityService.changeSensorActivationStatus(sensor, in.readBoolean());
+                }
+                case EventRecorder.ARMING_STATUS -> securityService.setArmingStatus(ARMING_STATUSES[in.readByte()]);
+                case EventRecorder.ALARM_STATUS -> securityService.setAlarmStatus(ALARM_STATUSES[in.readByte()]);
+                case EventRecorder.CAT_VERDICT -> {
+                    imageService.verdict = in.readBoolean();
+                    securityService.processImage(null);
+                }
+                case EventRecorder.TIMER_FIRED -> {
+                    in.readByte();
+                    //fires every timer due by now, including this one
+                    timers.advance();
+                }
+                case EventRecorder.ALARM_ANNOUNCED -> {
+                    AlarmStatus expected = ALARM_STATUSES[in.readByte()];
+                    announcementCount++;
+                    if (announced.poll() != expected) {
+                        mismatch(1);
+                    }
+                }
+                default -> throw new IOException("Unknown event type " + type);
+            }
+        }
+
+        private void mismatch(long count) {
+            if (count == 0) {
+                return;
+            }
+            if (mismatchCount == 0) {
+                firstMismatchEvent = eventCount;
+            }
+            mismatchCount += count;
+        }
+
+        private Sensor readSensor() throws IOException {
+            int index = (int) readVarLong();
+            UUID sensorId = new UUID(in.readLong(), in.readLong());
+            String name = in.readBoolean() ? in.readUTF() : null;
+            byte sensorType = in.readByte();
+            Sensor sensor = new Sensor(name, sensorType < 0 ? null : SENSOR_TYPES[sensorType]);
+            sensor.setSensorId(sensorId);
+            sensor.setActive(in.readBoolean());
+            if (index == sensors.size()) {
+                sensors.add(sensor);
+            } else {
+                sensors.set(index, sensor);
+            }
+            return sensor;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Recording ends inside an event");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        @Override
+        public void notify(AlarmStatus status) {
+            announced.add(status);
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+            //cat verdicts come from the recording
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            //not part of the recorded trace
+        }
+    }
+
+    /**
+     * Clock that shows the recorded time of the event being replayed.
+     */
+    private static final class VirtualClock extends Clock {
+        private final long startMillis;
+        private long millis;
+
+        private VirtualClock(long startMillis) {
+            this.startMillis = startMillis;
+            this.millis = startMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return zone.equals(ZoneOffset.UTC) ? this : new Zoned(this, zone);
+        }
+
+        /**
+         * The clock seen from another zone. It shares the time of the clock it came from.
+         */
+        private static final class Zoned extends Clock {
+            private final VirtualClock source;
+            private final ZoneId zone;
+
+            private Zoned(VirtualClock source, ZoneId zone) {
+                this.source = source;
+                this.zone = zone;
+            }
+
+            @Override
+            public long millis() {
+                return source.millis();
+            }
+
+            @Override
+            public Instant instant() {
+                return source.instant();
+            }
+
+            @Override
+            public ZoneId getZone() {
+                return zone;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return source.withZone(zone);
+            }
+        }
+    }
+
+    /**
+     * Image service that answers with the verdict read from the recording.
+     */
+    private static final class RecordedImageService implements ImageService {
+        private boolean verdict;
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+            return verdict;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.SecurityRepository;
+import com.udacity.catpoint.data.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hosts many independent sites in one JVM. Each site has its own SecurityService and its own
+ * repository, created by a factory from the site ID, so sites never share persisted state.
+ *
+ * Work for a site is queued in that site's mailbox and run on a worker pool shared by all sites.
+ * A site's work runs one task at a time, in submission order, so a SecurityService never sees
+ * concurrent calls from the fleet, while different sites run in parallel. Only sites with pending
+ * work hold a place in the pool's queue, so the pool never queues more tasks than there are sites,
+ * and each mailbox is bounded, so a single busy site cannot use up memory.
+ *
+ * A fleet created with a {@link TimerWheel} gives every site the same wheel and {@link AlarmDelays}.
+ * Timers fire on the wheel's thread rather than through the site's mailbox.
+ */
+public class SecurityFleet implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SecurityFleet.class);
+
+    private final ConcurrentHashMap<String, Site> sites = new ConcurrentHashMap<>();
+    private final Function<String, SecurityRepository> repositoryFactory;
+    private final ImageService imageService;
+    private final TimerWheel timers;
+    private final AlarmDelays delays;
+    private final ExecutorService workers;
+    private final int mailboxCapacity;
+
+    /**
+     * @param workerThreads Number of threads shared by all sites
+     * @param mailboxCapacity Maximum number of tasks waiting for one site
+     * @param repositoryFactory Creates the repository for a site ID. Each site needs its own storage,
+     *                          for example its own preferences node or file.
+     */
+    public SecurityFleet(int workerThreads, int mailboxCapacity, Function<String, SecurityRepository> repositoryFactory,
+                         ImageService imageService) {
+        this(workerThreads, mailboxCapacity, repositoryFactory, imageService, null, AlarmDelays.NONE);
+    }
+
+    /**
+     * @param timers Wheel that runs the delay timers of every site, or null for no delays
+     * @param delays Entry delay, exit delay and auto-silence applied by every site
+     */
+    public SecurityFleet(int workerThreads, int mailboxCapacity, Function<String, SecurityRepository> repositoryFactory,
+                         ImageService imageService, TimerWheel timers, AlarmDelays delays) {
+        if (workerThreads < 1 || mailboxCapacity < 1) {
+            throw new IllegalArgumentException("workerThreads and mailboxCapacity must be positive");
+        }
+        this.repositoryFactory = repositoryFactory;
+        this.imageService = imageService;
+        this.timers = timers;
+        this.delays = delays;
+        this.mailboxCapacity = mailboxCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "security-fleet-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return The site with the given ID, created with a new repository if it is not hosted yet
+     */
+    public Site openSite(String siteId) {
+        return sites.computeIfAbsent(siteId, id -> {
+            SecurityRepository repository = repositoryFactory.apply(id);
+            return new Site(id, repository, new SecurityService(repository, imageService, timers, delays));
+        });
+    }
+
+    /**
+     * @return The site with the given ID, or null if it is not hosted
+     */
+    public Site getSite(String siteId) {
+        return sites.get(siteId);
+    }
+
+    public Set<String> getSiteIds() {
+        return sites.keySet();
+    }
+
+    public int getSiteCount() {
+        return sites.size();
+    }
+
+    /**
+     * Stops hosting a site once its queued work has run, and closes its repository. Until the
+     * repository is closed the site stays hosted and rejects new work, so a second site is never
+     * opened on storage that is still being written.
+     */
+    public CompletableFuture<Void> closeSite(String siteId) {
+        Site site = sites.get(siteId);
+        if (site == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return site.close().thenRun(() -> sites.remove(siteId, site));
+    }
+
+    /**
+     * Queues work for a site, opening the site if needed.
+     * @return Completes after the work has run. Fails with a RejectedExecutionException if the
+     * site's mailbox is full or the site is being closed.
+     */
+    public CompletableFuture<Void> submit(String siteId, Consumer<SecurityService> action) {
+        return openSite(siteId).submit(action);
+    }
+
+    /**
+     * Queues a sensor report for a site. Reports for sensors the site does not know are ignored.
+     */
+    public CompletableFuture<Void> changeSensorActivationStatus(String siteId, UUID sensorId, boolean active) {
+        return submit(siteId, securityService -> {
+            Sensor sensor = securityService.getSensorSnapshot().getSensor(sensorId);
+            if (sensor != null) {
+                securityService.changeSensorActivationStatus(sensor, active);
+            }
+        });
+    }
+
+    /**
+     * Lets every site finish its queued work, closes all repositories and stops the workers.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<?>[] closing = sites.keySet().stream().map(this::closeSite).toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(closing).join();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One hosted site, with a mailbox that runs its work serially on the shared workers.
+     */
+    public final class Site {
+        private final String siteId;
+        private final SecurityRepository repository;
+        private final SecurityService securityService;
+        private final ArrayDeque<Runnable> mailbox = new ArrayDeque<>();
+        private boolean running;
+        private CompletableFuture<Void> closing;
+
+        private Site(String siteId, SecurityRepository repository, SecurityService securityService) {
+            this.siteId = siteId;
+            this.repository = repository;
+            this.securityService = securityService;
+        }
+
+        public String getSiteId() {
+            return siteId;
+        }
+
+        /**
+         * Calls made directly on the service are not serialized with the site's queued work.
+         */
+        public SecurityService getSecurityService() {
+            return securityService;
+        }
+
+        public synchronized int getPendingCount() {
+            return mailbox.size();
+        }
+
+        public CompletableFuture<Void> submit(Consumer<SecurityService> action) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            Runnable task = () -> {
+                try {
+                    action.accept(securityService);
+                    result.complete(null);
+                } catch (RuntimeException e) {
+                    log.error("Task for site {} failed", siteId, e);
+                    result.completeExceptionally(e);
+                } catch (Error e) {
+                    result.completeExceptionally(e);
+                    throw e;
+                }
+            };
+            synchronized (this) {
+                if (closing != null || mailbox.size() >= mailboxCapacity) {
+                    result.completeExceptionally(new RejectedExecutionException(
+                            closing != null ? "Site " + siteId + " is closed" : "Mailbox for site " + siteId + " is full"));
+                    return result;
+                }
+                enqueue(task);
+            }
+            return result;
+        }
+
+        private synchronized CompletableFuture<Void> close() {
+            if (closing != null) {
+                return closing;
+            }
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            closing = result;
+            enqueue(() -> {
+                //timers that fire later would write to the closed repository
+                securityService.cancelTimers();
+                if (repository instanceof Closeable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Unable to close repository for site {}", siteId, e);
+                    }
+                }
+                result.complete(null);
+            });
+            return result;
+        }
+
+        private void enqueue(Runnable task) {
+            mailbox.add(task);
+            if (!running) {
+                running = true;
+                workers.execute(this::runNext);
+            }
+        }
+
+        /**
+         * Runs one task and then gives the worker back, so a busy site cannot starve the others.
+         * The site moves on to its next task even if this one throws.
+         */
+        private void runNext() {
+            Runnable task;
+            synchronized (this) {
+                task = mailbox.poll();
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    if (mailbox.isEmpty()) {
+                        running = false;
+                    } else {
+                        workers.execute(this::runNext);
+                    }
+                }
+            }
+        }
+    }
+}
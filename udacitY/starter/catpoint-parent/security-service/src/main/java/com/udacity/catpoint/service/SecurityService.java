@@ -5,28 +5,110 @@ import com.udacity.catpoint.data.AlarmStatus;
 import com.udacity.catpoint.data.ArmingStatus;
 import com.udacity.catpoint.data.SecurityRepository;
 import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorSnapshot;
+import com.udacity.catpoint.service.AlarmTransitionTable.Event;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
 
 /**
  * Service that receives information about changes to the security system. Responsible for
  * forwarding updates to the repository and making any decisions about changing the system state.
  *
  * This is the class that should contain most of the business logic for our system, and it is the
- * class you will be writing unit tests for.
+ * class you will be writing unit tests for. The alarm rules themselves live in
+ * {@link AlarmTransitionTable}; this class turns each change into an event and applies the outcome.
+ *
+ * The service is safe to call from multiple threads. Alarm status, arming status and the cat flag
+ * are packed into a single atomic state word that is loaded from the repository on first use and
+ * changed only with compare-and-set, so no transition is lost and no global lock is taken. Status
+ * changes are written back to the repository by whichever thread is currently persisting, which
+ * always writes the latest state; a call can therefore return before its own change has been
+ * written. If the repository fails to store a status, the failure reaches the caller doing the
+ * writing and the status is written again with the next change. Listeners are kept in a
+ * copy-on-write set and are notified by the thread that made the change, so concurrent transitions
+ * may be observed in either order. Activation changes for one particular sensor should still come
+ * from one thread at a time.
+ *
+ * When created with a {@link TimerWheel}, the service also applies the entry delay, exit delay and
+ * auto-silence of its {@link AlarmDelays}. These timers are restarted whenever the alarm status they
+ * guard is entered and cancelled when it is left.
  */
 public class SecurityService {
 
-    private ImageService imageService;
-    private SecurityRepository securityRepository;
-    private Set<StatusListener> statusListeners = new HashSet<>();
-    private boolean catDetected = false; // Track if cat was detected
+    //state word layout
+    private static final long UNLOADED = -1L;
+    private static final long ALARM_MASK = 0b11;
+    private static final int ARMING_SHIFT = 2;
+    private static final long ARMING_MASK = 0b11L << ARMING_SHIFT;
+    private static final long CAT_BIT = 1L << 4;
+    private static final long ALARM_DIRTY = 1L << 5;
+    private static final long ARMING_DIRTY = 1L << 6;
+    private static final long DIRTY_MASK = ALARM_DIRTY | ARMING_DIRTY;
+    private static final long VERSION_UNIT = 1L << 8;
+
+    private static final int LISTENER_MAILBOX_CAPACITY = 16;
+    static final float CAT_CONFIDENCE_THRESHOLD = 50.0f;
+    //room for cameras is allocated as they are added
+    private static final int MAX_CAMERAS = 256;
+    //camera that images submitted without a camera ID come from
+    private static final String DEFAULT_CAMERA = "default";
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+
+    private final AlarmTransitionTable transitionTable = AlarmTransitionTable.STANDARD;
+    private final ImageService imageService;
+    private final SecurityRepository securityRepository;
+    private final Set<StatusListener> statusListeners = new CopyOnWriteArraySet<>();
+    private final AtomicLong state = new AtomicLong(UNLOADED);
+    private final AtomicBoolean persisting = new AtomicBoolean();
+
+    private final TimerWheel timers;
+    private final AlarmDelays delays;
+    private final AtomicReference<TimerWheel.Timeout> entryTimer = new AtomicReference<>();
+    private final AtomicReference<TimerWheel.Timeout> exitTimer = new AtomicReference<>();
+    private final AtomicReference<TimerWheel.Timeout> silenceTimer = new AtomicReference<>();
+    private volatile EventRecorder recorder;
+    private volatile ClassificationScheduler scheduler;
+
+    //image frames, numbered in submission order so late verdicts can be recognized
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong staleFrames = new AtomicLong();
+    private final AtomicLong unknownFrames = new AtomicLong();
+    private final Object frameLock = new Object();
+    private final CameraRegistry cameras = new CameraRegistry(MAX_CAMERAS);
+    private final int defaultCamera = cameras.register(DEFAULT_CAMERA);
 
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
+        this(securityRepository, imageService, null, AlarmDelays.NONE);
+    }
+
+    /**
+     * @param timers Wheel that runs the delay timers. It may be shared by many services.
+     * @param delays Entry delay, exit delay and auto-silence to apply
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageService imageService,
+                           TimerWheel timers, AlarmDelays delays) {
         this.securityRepository = securityRepository;
         this.imageService = imageService;
+        this.timers = timers;
+        this.delays = delays;
     }
 
     /**
@@ -35,25 +117,39 @@ public class SecurityService {
      * @param armingStatus
      */
     public void setArmingStatus(ArmingStatus armingStatus) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.armingStatus(armingStatus);
+        }
         if(armingStatus == ArmingStatus.DISARMED) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-            catDetected = false; // Reset cat detection when disarmed
+            // REQUIREMENT 9: If the system is disarmed, set the status to no alarm. Reset cat detection as well
+            //under the frame lock, so no camera verdict lands between forgetting the cats and the transition
+            synchronized(frameLock) {
+                cameras.clearCats();
+                transition(Event.DISARMED, s -> withArming(s & ~CAT_BIT, armingStatus));
+            }
+            cancelTimer(exitTimer);
         } else {
             // REQUIREMENT 10: If the system is armed, reset all sensors to inactive
-            Set<Sensor> sensors = getSensors();
-            sensors.forEach(sensor -> {
+            List<Sensor> resetSensors = new ArrayList<>();
+            getSensors().forEach(sensor -> {
                 if(sensor.getActive()) {
                     sensor.setActive(false);
-                    securityRepository.updateSensor(sensor);
+                    resetSensors.add(sensor);
                 }
             });
+            securityRepository.updateSensors(resetSensors);
 
-            // REQUIREMENT 11: If the system is armed-home while the camera shows a cat, set the alarm status to alarm
-            if(armingStatus == ArmingStatus.ARMED_HOME && catDetected) {
-                setAlarmStatus(AlarmStatus.ALARM);
+            long previous = transition(Event.forArming(armingStatus), s -> withArming(s, armingStatus));
+            //only the call that actually left disarmed starts the exit delay, even if others arm at the same time
+            if(armingOf(previous) == ArmingStatus.DISARMED) {
+                startTimer(exitTimer, delays.getExitDelay(), timeout -> {
+                    if(exitTimer.compareAndSet(timeout, null)) {
+                        recordTimer(EventRecorder.EXIT_DELAY);
+                    }
+                });
             }
         }
-        securityRepository.setArmingStatus(armingStatus);
     }
 
     /**
@@ -62,21 +158,7 @@ public class SecurityService {
      * @param cat True if a cat is detected, otherwise false.
      */
     private void catDetected(Boolean cat) {
-        this.catDetected = cat; // Store cat detection state
-        ArmingStatus armingStatus = getArmingStatus();
-
-        if(cat && armingStatus == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if (!cat) {
-            // REQUIREMENT 8: If no cat detected and sensors are not active, set to NO_ALARM
-            boolean anySensorActive = getSensors().stream()
-                    .anyMatch(Sensor::getActive);
-
-            if(!anySensorActive) {
-                setAlarmStatus(AlarmStatus.NO_ALARM);
-            }
-        }
-        // If cat detected but system is not armed-home, do nothing
+        transition(Event.forCat(cat), s -> cat ? s | CAT_BIT : s & ~CAT_BIT);
 
         statusListeners.forEach(sl -> sl.catDetected(cat));
     }
@@ -89,8 +171,27 @@ public class SecurityService {
         statusListeners.add(statusListener);
     }
 
+    /**
+     * Register a StatusListener that is notified on the given executor instead of the thread that
+     * changed the status, so a slow listener does not hold up sensor or image processing.
+     * Redundant notifications are coalesced while the listener is behind.
+     * @param statusListener
+     * @param executor Delivers the notifications, for example {@code SwingUtilities::invokeLater}
+     * @return The wrapper registered for the listener, which reports its lag and drop counters
+     */
+    public AsyncStatusListener addStatusListener(StatusListener statusListener, Executor executor) {
+        AsyncStatusListener asyncListener = new AsyncStatusListener(statusListener, executor, LISTENER_MAILBOX_CAPACITY);
+        statusListeners.add(asyncListener);
+        return asyncListener;
+    }
+
+    /**
+     * Removes a listener, whether it was registered directly or with an executor.
+     * @param statusListener
+     */
     public void removeStatusListener(StatusListener statusListener) {
-        statusListeners.remove(statusListener);
+        statusListeners.removeIf(sl -> sl == statusListener
+                || sl instanceof AsyncStatusListener asyncListener && asyncListener.getDelegate() == statusListener);
     }
 
     /**
@@ -98,113 +199,549 @@ public class SecurityService {
      * @param status
      */
     public void setAlarmStatus(AlarmStatus status) {
-        securityRepository.setAlarmStatus(status);
-        statusListeners.forEach(sl -> sl.notify(status));
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.alarmStatus(status);
+        }
+        transition(s -> status, s -> s);
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been activated.
+     * Change the activation status for the specified sensor and update alarm status if necessary.
+     * @param sensor
+     * @param active
      */
-    private void handleSensorActivated() {
-        if(securityRepository.getArmingStatus() == ArmingStatus.DISARMED) {
-            return; //no problem if the system is disarmed
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.sensorActivation(sensor, active);
         }
-        switch(securityRepository.getAlarmStatus()) {
-            case NO_ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
-            case PENDING_ALARM -> setAlarmStatus(AlarmStatus.ALARM);
-            default -> {
-                // Do nothing for ALARM or other states
-            }
+        boolean sensorWasActive = sensor.getActive();
+
+        // Update sensor state first, so the active sensor count includes this change
+        sensor.setActive(active);
+        securityRepository.updateSensor(sensor);
+
+        // Activations during the exit delay are people leaving, not intruders
+        if(active && exitTimer.get() != null) {
+            return;
         }
+        transition(Event.forSensor(sensorWasActive, active), s -> s);
+    }
+
+    /**
+     * Tell listeners that a sensor has stopped reporting. Its last known activation status is left as it is.
+     * @param sensor
+     */
+    public void sensorOffline(Sensor sensor) {
+        statusListeners.forEach(sl -> sl.sensorOffline(sensor));
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been deactivated
+     * Uses the repository's active sensor count, so the check costs the same for any number of sensors.
+     * @return True if at least one sensor is active
      */
-    private void handleSensorDeactivated() {
-        AlarmStatus currentAlarmStatus = securityRepository.getAlarmStatus();
+    private boolean anySensorActive() {
+        return securityRepository.getActiveSensorCount() > 0;
+    }
 
-        switch(currentAlarmStatus) {
-            case PENDING_ALARM -> {
-                // REQUIREMENT 3: If pending alarm and all sensors are inactive, return to no alarm state
-                boolean allSensorsInactive = getSensors().stream()
-                        .allMatch(sensor -> !sensor.getActive());
+    /**
+     * Send an image to the SecurityService for processing. The securityService will use its provided
+     * ImageService to analyze the image for cats and update the alarm status accordingly.
+     * @param currentCameraImage
+     */
+    public void processImage(BufferedImage currentCameraImage) {
+        processImage(defaultCamera, currentCameraImage);
+    }
 
-                if(allSensorsInactive) {
-                    setAlarmStatus(AlarmStatus.NO_ALARM);
-                }
-            }
-            case ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
-            default -> {
-                // Do nothing for NO_ALARM and other states
-            }
+    /**
+     * Send an image from one particular camera for processing. A cat is considered detected while
+     * the latest image of any camera shows one. Images from different cameras can be processed on
+     * different threads at the same time.
+     * @param cameraId A camera added with {@link #addCamera(String)}
+     * @see CameraWorkers
+     */
+    public void processImage(String cameraId, BufferedImage currentCameraImage) {
+        processImage(cameraIndex(cameraId), currentCameraImage);
+    }
+
+    private void processImage(int camera, BufferedImage currentCameraImage) {
+        long frame = nextFrame();
+        ImageVerdict verdict;
+        try {
+            verdict = classify(camera, currentCameraImage, imageService);
+        } catch(CancellationException e) {
+            //a newer image from the same camera took this one's place with the scheduler
+            staleFrames.incrementAndGet();
+            return;
         }
+        applyCameraVerdict(camera, frame, verdict);
     }
 
     /**
-     * Change the activation status for the specified sensor and update alarm status if necessary.
-     * @param sensor
-     * @param active
+     * Send an image for processing without waiting for the analysis. The cat verdict is applied when
+     * it arrives, unless the verdict for an image submitted later has already been applied, in which
+     * case this one is stale and dropped.
+     * @param currentCameraImage
+     * @param timeout How long to wait for the analysis, or null to wait as long as it takes
+     * @return Completes with the verdict once it has been applied. It is cancelled if the verdict was
+     * dropped as stale, and fails if the analysis fails, times out or cannot tell whether there is a
+     * cat. Cancelling it abandons the analysis, and its verdict is then never applied.
      */
-    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
-        AlarmStatus currentAlarmStatus = securityRepository.getAlarmStatus();
-        boolean sensorWasActive = sensor.getActive();
+    public CompletableFuture<Boolean> processImageAsync(BufferedImage currentCameraImage, Duration timeout) {
+        return processImageAsync(defaultCamera, currentCameraImage, timeout);
+    }
+
+    /**
+     * Send an image from one particular camera for processing without waiting for the analysis.
+     * Staleness is judged per camera, so a slow verdict from one camera is never dropped because of
+     * another camera's images.
+     * @param cameraId A camera added with {@link #addCamera(String)}
+     * @see #processImageAsync(BufferedImage, Duration)
+     */
+    public CompletableFuture<Boolean> processImageAsync(String cameraId, BufferedImage currentCameraImage, Duration timeout) {
+        return processImageAsync(cameraIndex(cameraId), currentCameraImage, timeout);
+    }
 
-        if(!sensorWasActive && active) {
-            // Sensor becoming active
-            handleSensorActivated();
-        } else if (sensorWasActive && !active) {
-            // Sensor becoming inactive
-            handleSensorDeactivated();
-        } else if (sensorWasActive && active) {
-            // REQUIREMENT 5: If a sensor is activated while already active and the system is in pending state, change it to alarm state
-            if(currentAlarmStatus == AlarmStatus.PENDING_ALARM) {
-                setAlarmStatus(AlarmStatus.ALARM);
+    private CompletableFuture<Boolean> processImageAsync(int camera, BufferedImage currentCameraImage, Duration timeout) {
+        long frame = nextFrame();
+        ClassificationScheduler scheduler = this.scheduler;
+        CompletableFuture<ImageVerdict> analysis = scheduler == null
+                ? imageService.classifyAsync(currentCameraImage, CAT_CONFIDENCE_THRESHOLD)
+                : schedule(scheduler, camera, currentCameraImage);
+        if(timeout != null) {
+            analysis = analysis.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        CompletableFuture<ImageVerdict> pending = analysis;
+        result.whenComplete((cat, error) -> {
+            if(result.isCancelled()) {
+                pending.cancel(true);
+            }
+        });
+        analysis.whenComplete((verdict, error) -> {
+            boolean cat = verdict == ImageVerdict.CAT;
+            if(error != null) {
+                result.completeExceptionally(error);
+            } else if(verdictOf(verdict) == ImageVerdict.UNKNOWN) {
+                unknownFrames.incrementAndGet();
+                result.completeExceptionally(new IllegalStateException("Unable to tell whether the image shows a cat"));
+            } else if(applyCameraVerdict(camera, frame, cat, result)) {
+                result.complete(cat);
+            } else {
+                result.cancel(false);
             }
+        });
+        return result;
+    }
+
+    /**
+     * Sends every image this service classifies through a scheduler that keeps classification calls
+     * within their quota: images given to processImage and processImageAsync, and frames classified
+     * by a {@link FramePipeline} for this service. Images are classified sooner while the system is
+     * armed, and an image still waiting when a newer one from its camera arrives is dropped as stale.
+     * The scheduler classifies with its own image service, and it may be shared with other services.
+     * @param scheduler The scheduler to use, or null to ask the image service directly
+     */
+    public void setClassificationScheduler(ClassificationScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds a camera whose images can be processed separately from other cameras'. Adding a camera
+     * that already exists does nothing.
+     * @throws IllegalStateException if the site already has as many cameras as it can hold
+     */
+    public void addCamera(String cameraId) {
+        cameras.register(cameraId);
+    }
+
+    /**
+     * @return The site's cameras and their latest verdicts
+     */
+    public CameraRegistry getCameraRegistry() {
+        return cameras;
+    }
+
+    /**
+     * @return Number of image verdicts dropped because a newer image's verdict from the same camera
+     * had already been applied
+     */
+    public long getStaleFrameCount() {
+        return staleFrames.get();
+    }
+
+    /**
+     * @return Number of images whose analysis could not tell whether they show a cat, and which
+     * therefore left the alarm alone
+     */
+    public long getUnknownFrameCount() {
+        return unknownFrames.get();
+    }
+
+    /**
+     * @return The number of a newly submitted image, for {@link #applyFrameVerdict(long, boolean)}
+     */
+    long nextFrame() {
+        return submittedFrames.incrementAndGet();
+    }
+
+    /**
+     * Applies the cat verdict for an image classified outside the service.
+     * @return False if the verdict was stale and dropped
+     */
+    boolean applyFrameVerdict(long frame, boolean cat) {
+        return applyCameraVerdict(defaultCamera, frame, cat, null);
+    }
+
+    private void applyCameraVerdict(int camera, long frame, ImageVerdict verdict) {
+        // An unknown verdict must neither clear a cat (REQUIREMENT 8) nor raise the alarm
+        if(verdict == ImageVerdict.UNKNOWN) {
+            unknownFrames.incrementAndGet();
+            return;
         }
+        applyCameraVerdict(camera, frame, verdict == ImageVerdict.CAT, null);
+    }
 
-        // Update sensor state
-        sensor.setActive(active);
-        securityRepository.updateSensor(sensor);
+    /**
+     * Records a camera's cat verdict unless the camera already has a newer frame's verdict, or the
+     * caller has given up on it, and then applies whether any camera sees a cat. Cameras record their
+     * verdicts in parallel, but the combined verdict is applied one at a time and read afresh each
+     * time, so the last one applied always reflects every camera's latest verdict.
+     */
+    private boolean applyCameraVerdict(int camera, long frame, boolean cat, CompletableFuture<Boolean> request) {
+        if(request != null && request.isDone()) {
+            return false;
+        }
+        if(!cameras.update(camera, frame, cat)) {
+            staleFrames.incrementAndGet();
+            return false;
+        }
+        synchronized(frameLock) {
+            boolean anyCat = cameras.anyCameraSeesCat();
+            EventRecorder recorder = this.recorder;
+            if(recorder != null) {
+                recorder.catVerdict(anyCat);
+            }
+            catDetected(anyCat);
+        }
+        return true;
+    }
 
-        // Additional check for Requirement 3: If pending alarm and all sensors become inactive
-        // This handles the case even when deactivating an already inactive sensor
-        if(currentAlarmStatus == AlarmStatus.PENDING_ALARM && !active) {
-            boolean allSensorsInactive = getSensors().stream()
-                    .allMatch(s -> !s.getActive());
+    /**
+     * Classifies an image from the default camera for {@link FramePipeline}, through the scheduler if
+     * there is one.
+     * @param imageService Classifies the image when there is no scheduler
+     * @throws CancellationException if a newer image took this one's place with the scheduler
+     */
+    ImageVerdict classifyFrame(BufferedImage image, ImageService imageService) {
+        return classify(defaultCamera, image, imageService);
+    }
 
-            if(allSensorsInactive) {
-                setAlarmStatus(AlarmStatus.NO_ALARM);
+    private ImageVerdict classify(int camera, BufferedImage image, ImageService imageService) {
+        ClassificationScheduler scheduler = this.scheduler;
+        if(scheduler == null) {
+            return verdictOf(imageService.classify(image, CAT_CONFIDENCE_THRESHOLD));
+        }
+        try {
+            return verdictOf(schedule(scheduler, camera, image).join());
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw e;
         }
     }
 
     /**
-     * Send an image to the SecurityService for processing. The securityService will use its provided
-     * ImageService to analyze the image for cats and update the alarm status accordingly.
-     * @param currentCameraImage
+     * An image service that returns no verdict at all has not said there is no cat, so a missing
+     * verdict must not clear one (REQUIREMENT 8).
      */
-    public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+    private static ImageVerdict verdictOf(ImageVerdict verdict) {
+        return verdict == null ? ImageVerdict.UNKNOWN : verdict;
+    }
+
+    private CompletableFuture<ImageVerdict> schedule(ClassificationScheduler scheduler, int camera, BufferedImage image) {
+        //an armed system raises the alarm on a cat, so its images are the urgent ones
+        ClassificationScheduler.Priority priority = getArmingStatus() == ArmingStatus.DISARMED
+                ? ClassificationScheduler.Priority.LOW
+                : ClassificationScheduler.Priority.HIGH;
+        return scheduler.submit(new SchedulerLane(this, camera), image, CAT_CONFIDENCE_THRESHOLD, priority);
+    }
+
+    private int cameraIndex(String cameraId) {
+        int camera = cameras.indexOf(cameraId);
+        if(camera < 0) {
+            throw new IllegalArgumentException("Unknown camera " + cameraId);
+        }
+        return camera;
     }
 
     public AlarmStatus getAlarmStatus() {
-        return securityRepository.getAlarmStatus();
+        return alarmOf(currentState());
     }
 
     public Set<Sensor> getSensors() {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return The repository's current sensor snapshot. Compare its version with an earlier
+     * snapshot to skip work when no sensor has changed.
+     */
+    public SensorSnapshot getSensorSnapshot() {
+        return securityRepository.getSensorSnapshot();
+    }
+
     public void addSensor(Sensor sensor) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.sensorAdded(sensor);
+        }
         securityRepository.addSensor(sensor);
     }
 
+    /**
+     * Adds or replaces many sensors at once, for example when importing a site configuration.
+     * @param sensors The sensors to store
+     */
+    public void addSensors(Collection<Sensor> sensors) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            sensors.forEach(recorder::sensorAdded);
+        }
+        securityRepository.updateSensors(sensors);
+    }
+
     public void removeSensor(Sensor sensor) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.sensorRemoved(sensor);
+        }
         securityRepository.removeSensor(sensor);
     }
 
     public ArmingStatus getArmingStatus() {
-        return securityRepository.getArmingStatus();
+        return armingOf(currentState());
+    }
+
+    /**
+     * Used by {@link EventRecorder} to start and stop recording the inputs of this service.
+     * @param recorder The recorder to send inputs to, or null to stop recording
+     */
+    void setEventRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @return The delays this service applies, which are none without a timer wheel
+     */
+    AlarmDelays getAlarmDelays() {
+        return timers == null ? AlarmDelays.NONE : delays;
+    }
+
+    /**
+     * Runs a transition whose alarm outcome comes from the transition table. The active sensor count
+     * is only looked up for events whose outcome depends on it.
+     * @return The state the transition was applied to
+     */
+    private long transition(Event event, LongUnaryOperator fieldUpdate) {
+        return transition(s -> transitionTable.lookup(armingOf(s), alarmOf(s), event,
+                transitionTable.usesActiveSensors(event) && anySensorActive(), isCat(s)), fieldUpdate);
+    }
+
+    /**
+     * Atomically moves the state word to its next value and then persists and announces the change.
+     * Both functions are re-evaluated if another thread changes the state first.
+     * @param alarmRule Returns the alarm status to set for the given state, or null to leave it alone.
+     *                  Returning the current status still writes and announces it.
+     * @param fieldUpdate Applies any other field changes to the given state.
+     * @return The state the transition was applied to, which is the current state if nothing changed
+     */
+    private long transition(LongFunction<AlarmStatus> alarmRule, LongUnaryOperator fieldUpdate) {
+        long current;
+        long next;
+        AlarmStatus alarmStatus;
+        do {
+            current = currentState();
+            alarmStatus = alarmRule.apply(current);
+            next = fieldUpdate.applyAsLong(current);
+            if(alarmStatus != null) {
+                next = (next & ~ALARM_MASK) | alarmStatus.ordinal() | ALARM_DIRTY;
+            } else if(next == current) {
+                return current;
+            }
+        } while(!state.compareAndSet(current, next + VERSION_UNIT));
+
+        persist();
+        if(alarmStatus != null) {
+            updateAlarmTimers(alarmOf(current), alarmStatus);
+            AlarmStatus status = alarmStatus;
+            statusListeners.forEach(sl -> sl.notify(status));
+        }
+        return current;
+    }
+
+    /**
+     * Starts the entry delay when pending alarm is entered and the auto-silence when alarm is entered,
+     * and cancels each once its status is left.
+     */
+    private void updateAlarmTimers(AlarmStatus previous, AlarmStatus current) {
+        if(timers == null) {
+            return;
+        }
+        if(current != AlarmStatus.PENDING_ALARM) {
+            cancelTimer(entryTimer);
+        } else if(previous != AlarmStatus.PENDING_ALARM) {
+            startTimer(entryTimer, delays.getEntryDelay(), timeout -> escalate(entryTimer, timeout,
+                    EventRecorder.ENTRY_DELAY, AlarmStatus.PENDING_ALARM, AlarmStatus.ALARM));
+        }
+        if(current != AlarmStatus.ALARM) {
+            cancelTimer(silenceTimer);
+        } else if(previous != AlarmStatus.ALARM) {
+            startTimer(silenceTimer, delays.getAutoSilence(), timeout -> escalate(silenceTimer, timeout,
+                    EventRecorder.AUTO_SILENCE, AlarmStatus.ALARM, AlarmStatus.NO_ALARM));
+        }
+    }
+
+    /**
+     * Moves from one alarm status to another when a timer fires, unless the timer was replaced or
+     * the alarm status has changed in the meantime.
+     * @param timer Which timer fired, as recorded by {@link EventRecorder}
+     */
+    private void escalate(AtomicReference<TimerWheel.Timeout> slot, TimerWheel.Timeout timeout,
+                          int timer, AlarmStatus from, AlarmStatus to) {
+        if(slot.compareAndSet(timeout, null)) {
+            recordTimer(timer);
+            transition(s -> alarmOf(s) == from ? to : null, s -> s);
+        }
+    }
+
+    /**
+     * Cancels the entry delay, exit delay and auto-silence timers, for example before the
+     * repository is closed.
+     */
+    void cancelTimers() {
+        cancelTimer(entryTimer);
+        cancelTimer(exitTimer);
+        cancelTimer(silenceTimer);
+    }
+
+    private void recordTimer(int timer) {
+        EventRecorder recorder = this.recorder;
+        if(recorder != null) {
+            recorder.timerFired(timer);
+        }
+    }
+
+    private void startTimer(AtomicReference<TimerWheel.Timeout> slot, Duration delay, TimerWheel.Task task) {
+        if(timers == null || delay.isZero()) {
+            return;
+        }
+        TimerWheel.Timeout previous = slot.getAndSet(timers.schedule(task, delay));
+        if(previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private static void cancelTimer(AtomicReference<TimerWheel.Timeout> slot) {
+        TimerWheel.Timeout timeout = slot.getAndSet(null);
+        if(timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Writes dirty fields of the state word to the repository. Only one thread persists at a time;
+     * any other thread leaves its changes for that thread, which keeps going until nothing is dirty.
+     * The repository therefore always ends up with the latest state, never an older one, but a
+     * change may be written after the call that made it has returned.
+     *
+     * A field's dirty bit is only cleared once it has been written and only if the state has not
+     * changed since, so a write that throws leaves the field dirty and it is written again with the
+     * next change.
+     */
+    private void persist() {
+        while(persisting.compareAndSet(false, true)) {
+            try {
+                long current;
+                while(((current = state.get()) & DIRTY_MASK) != 0) {
+                    if((current & ALARM_DIRTY) != 0) {
+                        securityRepository.setAlarmStatus(alarmOf(current));
+                        if(!state.compareAndSet(current, current & ~ALARM_DIRTY)) {
+                            //changed while writing, so write the latest state instead
+                            continue;
+                        }
+                        current &= ~ALARM_DIRTY;
+                    }
+                    if((current & ARMING_DIRTY) != 0) {
+                        securityRepository.setArmingStatus(armingOf(current));
+                        state.compareAndSet(current, current & ~ARMING_DIRTY);
+                    }
+                }
+            } finally {
+                persisting.set(false);
+            }
+            // another thread may have made a change after the last check but before the flag was released
+            if((state.get() & DIRTY_MASK) == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The state word, loading it from the repository the first time it is needed
+     */
+    private long currentState() {
+        long current = state.get();
+        if(current == UNLOADED) {
+            AlarmStatus alarmStatus = securityRepository.getAlarmStatus();
+            ArmingStatus armingStatus = securityRepository.getArmingStatus();
+            long loaded = (alarmStatus == null ? AlarmStatus.NO_ALARM : alarmStatus).ordinal()
+                    | (long) (armingStatus == null ? ArmingStatus.DISARMED : armingStatus).ordinal() << ARMING_SHIFT;
+            state.compareAndSet(UNLOADED, loaded);
+            current = state.get();
+        }
+        return current;
+    }
+
+    private static AlarmStatus alarmOf(long state) {
+        return ALARM_STATUSES[(int) (state & ALARM_MASK)];
+    }
+
+    private static ArmingStatus armingOf(long state) {
+        return ARMING_STATUSES[(int) ((state & ARMING_MASK) >>> ARMING_SHIFT)];
+    }
+
+    private static boolean isCat(long state) {
+        return (state & CAT_BIT) != 0;
+    }
+
+    private static long withArming(long state, ArmingStatus armingStatus) {
+        return (state & ~ARMING_MASK) | (long) armingStatus.ordinal() << ARMING_SHIFT | ARMING_DIRTY;
+    }
+
+    /**
+     * Scheduler lane of one camera of one service, so services sharing a scheduler never replace
+     * each other's images even when their cameras have the same ID.
+     */
+    private static final class SchedulerLane {
+        private final SecurityService service;
+        private final int camera;
+
+        private SchedulerLane(SecurityService service, int camera) {
+            this.service = service;
+            this.camera = camera;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SchedulerLane lane && lane.service == service && lane.camera == camera;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(service) + camera;
+        }
     }
-}
\ No newline at end of file
+}
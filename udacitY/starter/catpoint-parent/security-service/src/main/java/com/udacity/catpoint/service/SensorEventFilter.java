@@ -0,0 +1,278 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.Sensor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Pre-filter for sensor reports that only passes meaningful activation changes on to
+ * {@link SecurityService#changeSensorActivationStatus(Sensor, Boolean)}, so a noisy sensor does not
+ * cause a repository write and listener notification for every report.
+ *
+ * A report that changes a sensor's state goes through three stages:
+ * <ol>
+ *     <li>Hysteresis: the new state must be reported a number of times in a row.</li>
+ *     <li>Debounce: the new state must then last for the debounce window. A report of the old state
+ *     within the window cancels the change. The change is passed on when the window ends.</li>
+ *     <li>Flap suppression: a sensor that changed more often than the threshold within the flap
+ *     window is held back for the hold time, after which its latest state is passed on.</li>
+ * </ol>
+ * A report that repeats the current state is passed on unless it arrives within the debounce window
+ * of the previous passed-on report, so a repeated activation can still escalate a pending alarm.
+ *
+ * Per-sensor state is kept in primitive arrays indexed by a slot per sensor. Every stage that
+ * suppresses a report counts it, so the settings can be tuned.
+ */
+public class SensorEventFilter {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final SecurityService securityService;
+    private final TimerWheel timers;
+    private final Clock clock;
+    private final long debounceMillis;
+    private final int hysteresis;
+    private final long flapWindowMillis;
+    private final int flapThreshold;
+    private final long flapHoldMillis;
+    private final boolean detectsFlapping;
+
+    private final Map<UUID, Integer> slotsById = new HashMap<>();
+    private Sensor[] sensors = new Sensor[INITIAL_CAPACITY];
+    private boolean[] stable = new boolean[INITIAL_CAPACITY];
+    private boolean[] latest = new boolean[INITIAL_CAPACITY];
+    private int[] streak = new int[INITIAL_CAPACITY];
+    private long[] lastForwardMillis = new long[INITIAL_CAPACITY];
+    private long[] flapWindowStartMillis = new long[INITIAL_CAPACITY];
+    private int[] flapCount = new int[INITIAL_CAPACITY];
+    private long[] holdUntilMillis = new long[INITIAL_CAPACITY];
+    private TimerWheel.Timeout[] settleTimers = new TimerWheel.Timeout[INITIAL_CAPACITY];
+    private int slotCount;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    private long forwardedCount;
+    private long repeatSuppressedCount;
+    private long hysteresisSuppressedCount;
+    private long bounceSuppressedCount;
+    private long flapSuppressedCount;
+    private long flapDetectedCount;
+
+    /**
+     * @param timers Wheel that ends debounce windows and flap holds. Its clock is used for all timing.
+     */
+    public SensorEventFilter(SecurityService securityService, TimerWheel timers, Clock clock, SensorFilterSettings settings) {
+        this.securityService = securityService;
+        this.timers = timers;
+        this.clock = clock;
+        this.debounceMillis = settings.getDebounce().toMillis();
+        this.hysteresis = settings.getHysteresis();
+        this.flapWindowMillis = settings.getFlapWindow().toMillis();
+        this.flapThreshold = settings.getFlapThreshold();
+        this.flapHoldMillis = settings.getFlapHold().toMillis();
+        this.detectsFlapping = settings.detectsFlapping();
+    }
+
+    /**
+     * Filters one sensor report.
+     * @return True if the report was passed on to the security service right away
+     */
+    public boolean changeSensorActivationStatus(Sensor sensor, boolean active) {
+        synchronized (this) {
+            long now = clock.millis();
+            int slot = slotOf(sensor);
+            if (latest[slot] == active) {
+                streak[slot]++;
+            } else {
+                latest[slot] = active;
+                streak[slot] = 1;
+            }
+            if (active == stable[slot]) {
+                if (cancelSettle(slot)) {
+                    bounceSuppressedCount++;
+                    return false;
+                }
+                if (now - lastForwardMillis[slot] < debounceMillis) {
+                    repeatSuppressedCount++;
+                    return false;
+                }
+            } else if (streak[slot] < hysteresis) {
+                hysteresisSuppressedCount++;
+                return false;
+            } else if (now < holdUntilMillis[slot]) {
+                flapSuppressedCount++;
+                settleAt(slot, holdUntilMillis[slot] - now);
+                return false;
+            } else if (debounceMillis > 0) {
+                if (settleTimers[slot] == null) {
+                    settleAt(slot, debounceMillis);
+                }
+                return false;
+            }
+            forwarded(slot, active, now);
+        }
+        securityService.changeSensorActivationStatus(sensor, active);
+        return true;
+    }
+
+    /**
+     * Stops tracking a sensor, for example when it is removed from the system.
+     */
+    public synchronized void removeSensor(Sensor sensor) {
+        Integer slot = slotsById.remove(sensor.getSensorId());
+        if (slot != null) {
+            cancelSettle(slot);
+            sensors[slot] = null;
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    public synchronized long getForwardedCount() {
+        return forwardedCount;
+    }
+
+    /**
+     * @return Reports of an unchanged state dropped because they came within the debounce window
+     */
+    public synchronized long getRepeatSuppressedCount() {
+        return repeatSuppressedCount;
+    }
+
+    /**
+     * @return Reports of a new state dropped because it had not been reported often enough in a row
+     */
+    public synchronized long getHysteresisSuppressedCount() {
+        return hysteresisSuppressedCount;
+    }
+
+    /**
+     * @return Changes cancelled because the sensor went back to its old state within the debounce window
+     */
+    public synchronized long getBounceSuppressedCount() {
+        return bounceSuppressedCount;
+    }
+
+    /**
+     * @return Reports held back because their sensor was flapping
+     */
+    public synchronized long getFlapSuppressedCount() {
+        return flapSuppressedCount;
+    }
+
+    /**
+     * @return How many times a sensor was found to be flapping
+     */
+    public synchronized long getFlapDetectedCount() {
+        return flapDetectedCount;
+    }
+
+    /**
+     * Records a change as passed on and updates the flap detection for the sensor.
+     */
+    private void forwarded(int slot, boolean active, long now) {
+        boolean changed = stable[slot] != active;
+        stable[slot] = active;
+        lastForwardMillis[slot] = now;
+        forwardedCount++;
+        if (!detectsFlapping || !changed) {
+            return;
+        }
+        if (now - flapWindowStartMillis[slot] >= flapWindowMillis) {
+            flapWindowStartMillis[slot] = now;
+            flapCount[slot] = 0;
+        }
+        if (++flapCount[slot] > flapThreshold) {
+            holdUntilMillis[slot] = now + flapHoldMillis;
+            flapWindowStartMillis[slot] = holdUntilMillis[slot];
+            flapCount[slot] = 0;
+            flapDetectedCount++;
+        }
+    }
+
+    /**
+     * Ends a debounce window or flap hold: passes the sensor's latest state on if it still differs
+     * from the last state passed on.
+     */
+    private void settle(int slot, TimerWheel.Timeout timeout) {
+        Sensor sensor;
+        boolean active;
+        synchronized (this) {
+            if (settleTimers[slot] != timeout) {
+                return;
+            }
+            settleTimers[slot] = null;
+            long now = clock.millis();
+            active = latest[slot];
+            if (active == stable[slot] || streak[slot] < hysteresis) {
+                return;
+            }
+            if (now < holdUntilMillis[slot]) {
+                settleAt(slot, holdUntilMillis[slot] - now);
+                return;
+            }
+            sensor = sensors[slot];
+            forwarded(slot, active, now);
+        }
+        securityService.changeSensorActivationStatus(sensor, active);
+    }
+
+    private void settleAt(int slot, long delayMillis) {
+        cancelSettle(slot);
+        settleTimers[slot] = timers.schedule(timeout -> settle(slot, timeout), Duration.ofMillis(delayMillis));
+    }
+
+    private boolean cancelSettle(int slot) {
+        TimerWheel.Timeout timeout = settleTimers[slot];
+        if (timeout == null) {
+            return false;
+        }
+        settleTimers[slot] = null;
+        timeout.cancel();
+        return true;
+    }
+
+    private int slotOf(Sensor sensor) {
+        Integer existing = slotsById.get(sensor.getSensorId());
+        if (existing != null) {
+            return existing;
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == sensors.length) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        slotsById.put(sensor.getSensorId(), slot);
+        sensors[slot] = sensor;
+        stable[slot] = sensor.getActive();
+        latest[slot] = sensor.getActive();
+        streak[slot] = 0;
+        lastForwardMillis[slot] = Long.MIN_VALUE / 2;
+        flapWindowStartMillis[slot] = Long.MIN_VALUE / 2;
+        flapCount[slot] = 0;
+        holdUntilMillis[slot] = 0;
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = sensors.length * 2;
+        sensors = Arrays.copyOf(sensors, capacity);
+        stable = Arrays.copyOf(stable, capacity);
+        latest = Arrays.copyOf(latest, capacity);
+        streak = Arrays.copyOf(streak, capacity);
+        lastForwardMillis = Arrays.copyOf(lastForwardMillis, capacity);
+        flapWindowStartMillis = Arrays.copyOf(flapWindowStartMillis, capacity);
+        flapCount = Arrays.copyOf(flapCount, capacity);
+        holdUntilMillis = Arrays.copyOf(holdUntilMillis, capacity);
+        settleTimers = Arrays.copyOf(settleTimers, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
@@ -0,0 +1,264 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Front end that lets many producer threads report sensor activation changes without calling
+ * {@link SecurityService#changeSensorActivationStatus(Sensor, Boolean)} themselves. Events are written
+ * into a pre-allocated ring of mutable slots; producers claim slots with a single atomic increment and
+ * a single consumer thread applies published events to the service in batches, in claim order.
+ *
+ * Publishing does not allocate. When the ring is full, {@link #tryPublish} reports the event as
+ * rejected instead of waiting, and the rejection is counted, so producers can apply their own
+ * backpressure policy; {@link #publish} waits for space using the configured wait strategy instead.
+ */
+public class SensorEventIngestor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorEventIngestor.class);
+
+    /**
+     * How the consumer waits for new events, and how blocking producers wait for free slots.
+     */
+    public enum WaitStrategy {
+        /** Spin without pausing. Lowest latency, keeps a core busy. */
+        BUSY_SPIN,
+        /** Spin, yielding the processor between checks. */
+        YIELDING,
+        /** Sleep briefly between checks. Low CPU use, adds up to the sleep time of latency. */
+        SLEEPING,
+        /** Park until a producer publishes. Lowest CPU use when idle. */
+        BLOCKING
+    }
+
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCKING_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final SecurityService securityService;
+    private final WaitStrategy waitStrategy;
+    private final int batchSize;
+    private final Slot[] slots;
+    private final int mask;
+
+    //next sequence to be claimed by a producer
+    private final AtomicLong claimSequence = new AtomicLong();
+    //next sequence to be applied by the consumer; everything before it has been applied
+    private volatile long consumeSequence;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile long appliedCount;
+    private volatile long unknownSensorCount;
+    private volatile long lastAppliedTimestamp;
+
+    private volatile boolean running;
+    private volatile boolean consumerParked;
+    private Thread consumer;
+
+    /**
+     * @param capacity Number of slots in the ring, rounded up to a power of two.
+     * @param batchSize Maximum number of events applied between two updates of the consumer position.
+     */
+    public SensorEventIngestor(SecurityService securityService, int capacity, int batchSize, WaitStrategy waitStrategy) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        this.securityService = securityService;
+        this.waitStrategy = waitStrategy;
+        this.batchSize = batchSize;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 1);
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i - size);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Starts the consumer thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        consumer = new Thread(this::consume, "sensor-event-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Publishes an event if a slot is free.
+     * @return False if the ring is full and the event was rejected
+     */
+    public boolean tryPublish(UUID sensorId, boolean active, long timestamp) {
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence >= slots.length) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+        write(sequence, sensorId, active, timestamp);
+        return true;
+    }
+
+    /**
+     * Publishes an event, waiting for a free slot if the ring is full.
+     */
+    public void publish(UUID sensorId, boolean active, long timestamp) {
+        long sequence = claimSequence.getAndIncrement();
+        while (sequence - consumeSequence >= slots.length) {
+            idle();
+        }
+        write(sequence, sensorId, active, timestamp);
+    }
+
+    /**
+     * @return Events published but not yet applied
+     */
+    public long getPendingCount() {
+        return Math.max(0, claimSequence.get() - consumeSequence);
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * @return Events skipped because their sensor was no longer in the repository
+     */
+    public long getUnknownSensorCount() {
+        return unknownSensorCount;
+    }
+
+    /**
+     * @return The producer timestamp of the most recently applied event, for measuring ingestion lag
+     */
+    public long getLastAppliedTimestamp() {
+        return lastAppliedTimestamp;
+    }
+
+    /**
+     * Stops the consumer after it has applied every event published so far.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = consumer;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(long sequence, UUID sensorId, boolean active, long timestamp) {
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.sensorId = sensorId;
+        slot.active = active;
+        slot.timestamp = timestamp;
+        //volatile write publishes the fields above to the consumer
+        slot.sequence = sequence;
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        long next = consumeSequence;
+        while (running || next != claimSequence.get()) {
+            int applied = 0;
+            SensorSnapshot snapshot = null;
+            while (applied < batchSize) {
+                Slot slot = slots[(int) (next & mask)];
+                if (slot.sequence != next) {
+                    break;
+                }
+                if (snapshot == null) {
+                    snapshot = securityService.getSensorSnapshot();
+                }
+                Sensor sensor = snapshot.getSensor(slot.sensorId);
+                if (sensor == null) {
+                    unknownSensorCount++;
+                } else {
+                    try {
+                        securityService.changeSensorActivationStatus(sensor, slot.active);
+                    } catch (RuntimeException e) {
+                        log.error("Unable to apply sensor event for {}", slot.sensorId, e);
+                    }
+                }
+                lastAppliedTimestamp = slot.timestamp;
+                slot.sensorId = null;
+                next++;
+                applied++;
+            }
+            if (applied > 0) {
+                appliedCount += applied;
+                consumeSequence = next;
+            } else {
+                waitForEvents();
+            }
+        }
+    }
+
+    private void waitForEvents() {
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            consumerParked = true;
+            //re-check after announcing the park, so a publish in between is not missed
+            if (slots[(int) (consumeSequence & mask)].sequence != consumeSequence && running) {
+                LockSupport.parkNanos(this, BLOCKING_PARK_NANOS);
+            }
+            consumerParked = false;
+        } else {
+            idle();
+        }
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELDING -> Thread.yield();
+            case SLEEPING, BLOCKING -> LockSupport.parkNanos(SLEEP_NANOS);
+        }
+    }
+
+    /**
+     * Mutable event slot. The sequence is written last and read first, so a consumer that sees
+     * the expected sequence also sees the fields written before it.
+     */
+    private static final class Slot {
+        private UUID sensorId;
+        private boolean active;
+        private long timestamp;
+        private volatile long sequence;
+
+        private Slot(long initialSequence) {
+            this.sequence = initialSequence;
+        }
+    }
+}
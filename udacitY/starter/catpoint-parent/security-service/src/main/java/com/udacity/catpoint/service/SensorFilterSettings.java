@@ -0,0 +1,62 @@
+package com.udacity.catpoint.service;
+
+import java.time.Duration;
+
+/**
+ * Tuning for {@link SensorEventFilter}. A zero debounce turns debouncing off and a hysteresis of one
+ * turns hysteresis off. Flap detection is off when the flap threshold is zero or the flap window or
+ * hold is zero.
+ */
+public final class SensorFilterSettings {
+
+    public static final SensorFilterSettings NONE = new SensorFilterSettings(Duration.ZERO, 1, Duration.ZERO, 0, Duration.ZERO);
+
+    private final Duration debounce;
+    private final int hysteresis;
+    private final Duration flapWindow;
+    private final int flapThreshold;
+    private final Duration flapHold;
+
+    /**
+     * @param debounce How long a new sensor state must last before it is passed on
+     * @param hysteresis How many reports in a row a new sensor state needs before it is considered
+     * @param flapWindow Period over which passed-on changes are counted to detect flapping
+     * @param flapThreshold Most changes within the window a sensor may make without flapping; the next
+     * change marks it as flapping, so 1 marks a sensor after its second change
+     * @param flapHold How long changes of a flapping sensor are held back
+     */
+    public SensorFilterSettings(Duration debounce, int hysteresis, Duration flapWindow, int flapThreshold, Duration flapHold) {
+        if (debounce.isNegative() || flapWindow.isNegative() || flapHold.isNegative() || hysteresis < 1 || flapThreshold < 0) {
+            throw new IllegalArgumentException("durations must not be negative and hysteresis must be positive");
+        }
+        this.debounce = debounce;
+        this.hysteresis = hysteresis;
+        this.flapWindow = flapWindow;
+        this.flapThreshold = flapThreshold;
+        this.flapHold = flapHold;
+    }
+
+    public Duration getDebounce() {
+        return debounce;
+    }
+
+    public int getHysteresis() {
+        return hysteresis;
+    }
+
+    public Duration getFlapWindow() {
+        return flapWindow;
+    }
+
+    public int getFlapThreshold() {
+        return flapThreshold;
+    }
+
+    public Duration getFlapHold() {
+        return flapHold;
+    }
+
+    boolean detectsFlapping() {
+        return flapThreshold > 0 && !flapWindow.isZero() && !flapHold.isZero();
+    }
+}
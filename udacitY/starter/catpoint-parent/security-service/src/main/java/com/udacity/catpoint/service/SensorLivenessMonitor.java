@@ -0,0 +1,248 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.Sensor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Detects sensors that have stopped reporting. Every registered sensor has a heartbeat interval;
+ * a sensor that sends no report for longer than its interval is announced once through
+ * {@link SecurityService#sensorOffline(Sensor)} and is watched again as soon as it reports.
+ *
+ * A report only stores the current time in a primitive array. Sensors are kept in deadline buckets
+ * and are only looked at when their bucket comes due: a sensor that has reported since it was
+ * bucketed is moved to the bucket of its new deadline, one that has not is offline. Each sweep
+ * therefore only touches the sensors whose deadline falls into the elapsed ticks, and each sensor is
+ * moved at most once per heartbeat interval, regardless of how often it reports.
+ */
+public class SensorLivenessMonitor {
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int NONE = -1;
+    //lastSeen value of a sensor that has been announced offline
+    private static final long OFFLINE = Long.MIN_VALUE;
+    //lastSeen value of a free slot
+    private static final long FREE = Long.MIN_VALUE + 1;
+
+    private final SecurityService securityService;
+    private final Clock clock;
+    private final long tickMillis;
+    private final long startMillis;
+
+    private final ConcurrentHashMap<UUID, Integer> slotsById = new ConcurrentHashMap<>();
+    private final AtomicLongArray lastSeen;
+    private final Sensor[] sensors;
+    private final long[] intervalMillis;
+    private final long[] deadlineTick;
+    private final int[] next;
+    private final int[] previous;
+    private final boolean[] bucketed;
+    private final int[] bucketHeads = new int[WHEEL_SIZE];
+    private final int[] freeSlots;
+    private int freeCount;
+    private long currentTick;
+    private long offlineCount;
+
+    /**
+     * @param capacity Maximum number of sensors watched at the same time
+     * @param tick Resolution of the deadlines. Offline sensors are detected at most one tick late.
+     */
+    public SensorLivenessMonitor(SecurityService securityService, Clock clock, int capacity, Duration tick) {
+        if (capacity < 1 || tick.toMillis() < 1) {
+            throw new IllegalArgumentException("capacity must be positive and tick at least a millisecond");
+        }
+        this.securityService = securityService;
+        this.clock = clock;
+        this.tickMillis = tick.toMillis();
+        this.startMillis = clock.millis();
+        lastSeen = new AtomicLongArray(capacity);
+        sensors = new Sensor[capacity];
+        intervalMillis = new long[capacity];
+        deadlineTick = new long[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        bucketed = new boolean[capacity];
+        freeSlots = new int[capacity];
+        Arrays.fill(bucketHeads, NONE);
+        for (int i = 0; i < capacity; i++) {
+            lastSeen.set(i, FREE);
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * Starts watching a sensor as if it had just reported.
+     * @return Handle for {@link #report(int)}
+     */
+    public synchronized int register(Sensor sensor, Duration heartbeatInterval) {
+        Integer existing = slotsById.get(sensor.getSensorId());
+        if (existing != null) {
+            return existing;
+        }
+        if (freeCount == 0) {
+            throw new IllegalStateException("Liveness monitor is full");
+        }
+        int slot = freeSlots[--freeCount];
+        sensors[slot] = sensor;
+        intervalMillis[slot] = Math.max(heartbeatInterval.toMillis(), tickMillis);
+        long now = elapsedMillis();
+        lastSeen.set(slot, now);
+        bucket(slot, now + intervalMillis[slot]);
+        slotsById.put(sensor.getSensorId(), slot);
+        return slot;
+    }
+
+    public synchronized void unregister(Sensor sensor) {
+        Integer slot = slotsById.remove(sensor.getSensorId());
+        if (slot == null) {
+            return;
+        }
+        lastSeen.set(slot, FREE);
+        if (bucketed[slot]) {
+            unbucket(slot);
+        }
+        sensors[slot] = null;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Records a report from a sensor.
+     * @return False if the sensor is not registered
+     */
+    public boolean report(UUID sensorId) {
+        Integer slot = slotsById.get(sensorId);
+        if (slot == null) {
+            return false;
+        }
+        report(slot);
+        return true;
+    }
+
+    /**
+     * Records a report using the handle returned by {@link #register}.
+     */
+    public void report(int slot) {
+        long now = elapsedMillis();
+        long previousSeen = lastSeen.get(slot);
+        if (previousSeen == FREE || !lastSeen.compareAndSet(slot, previousSeen, now)) {
+            return;
+        }
+        if (previousSeen == OFFLINE) {
+            synchronized (this) {
+                if (lastSeen.get(slot) != FREE && !bucketed[slot]) {
+                    bucket(slot, now + intervalMillis[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the sensor is registered and has not been announced offline
+     */
+    public boolean isOnline(UUID sensorId) {
+        Integer slot = slotsById.get(sensorId);
+        return slot != null && lastSeen.get(slot) != OFFLINE;
+    }
+
+    public synchronized long getOfflineCount() {
+        return offlineCount;
+    }
+
+    /**
+     * Checks every deadline bucket that has come due since the last sweep and announces the sensors
+     * that missed their heartbeat.
+     * @return The number of sensors found offline
+     */
+    public int sweep() {
+        List<Sensor> offline = new ArrayList<>();
+        synchronized (this) {
+            long now = elapsedMillis();
+            long nowTick = now / tickMillis;
+            //one turn of the wheel visits every bucket, so a longer gap needs no more than that
+            currentTick = Math.max(currentTick, nowTick - WHEEL_SIZE + 1);
+            for (; currentTick <= nowTick; currentTick++) {
+                int bucket = (int) (currentTick % WHEEL_SIZE);
+                int slot = bucketHeads[bucket];
+                while (slot != NONE) {
+                    int following = next[slot];
+                    if (deadlineTick[slot] <= currentTick) {
+                        checkDue(slot, now, offline);
+                    }
+                    slot = following;
+                }
+            }
+            offlineCount += offline.size();
+        }
+        offline.forEach(securityService::sensorOffline);
+        return offline.size();
+    }
+
+    /**
+     * Sweeps once per tick on the given wheel until the wheel is closed.
+     */
+    public void start(TimerWheel wheel) {
+        Duration tick = Duration.ofMillis(tickMillis);
+        wheel.schedule(new TimerWheel.Task() {
+            @Override
+            public void run(TimerWheel.Timeout timeout) {
+                sweep();
+                wheel.schedule(this, tick);
+            }
+        }, tick);
+    }
+
+    private void checkDue(int slot, long now, List<Sensor> offline) {
+        unbucket(slot);
+        long seen = lastSeen.get(slot);
+        long deadline = seen + intervalMillis[slot];
+        if (deadline > now) {
+            //reported since it was bucketed; wait for the new deadline
+            bucket(slot, deadline);
+        } else if (lastSeen.compareAndSet(slot, seen, OFFLINE)) {
+            offline.add(sensors[slot]);
+        } else {
+            //a report arrived just now
+            bucket(slot, lastSeen.get(slot) + intervalMillis[slot]);
+        }
+    }
+
+    private void bucket(int slot, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick);
+        deadlineTick[slot] = tick;
+        int bucket = (int) (tick % WHEEL_SIZE);
+        int head = bucketHeads[bucket];
+        next[slot] = head;
+        previous[slot] = NONE;
+        if (head != NONE) {
+            previous[head] = slot;
+        }
+        bucketHeads[bucket] = slot;
+        bucketed[slot] = true;
+    }
+
+    private void unbucket(int slot) {
+        if (previous[slot] != NONE) {
+            next[previous[slot]] = next[slot];
+        } else {
+            bucketHeads[(int) (deadlineTick[slot] % WHEEL_SIZE)] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            previous[next[slot]] = previous[slot];
+        }
+        next[slot] = NONE;
+        previous[slot] = NONE;
+        bucketed[slot] = false;
+    }
+
+    private long elapsedMillis() {
+        return clock.millis() - startMillis;
+    }
+}
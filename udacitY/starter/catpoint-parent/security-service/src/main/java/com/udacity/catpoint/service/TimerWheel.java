@@ -0,0 +1,231 @@
+package com.udacity.catpoint.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for large numbers of short timers, such as alarm entry and exit delays.
+ * Time is divided into ticks and each timer is placed in the bucket for the tick it expires in,
+ * so scheduling and cancelling are constant time and each tick only looks at one bucket.
+ * Timers further away than one turn of the wheel stay in their bucket until their turn comes.
+ *
+ * The wheel reads time from the given clock and only moves when {@link #advance()} is called, either
+ * by the driver thread started with {@link #start()} or directly, which makes it deterministic in tests.
+ * Tasks run on the thread that advances the wheel and should be short.
+ */
+public class TimerWheel implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    /**
+     * Work to run when a timer expires.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run(Timeout timeout);
+    }
+
+    private final Clock clock;
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startMillis;
+
+    //the next tick to be processed; every tick before it has fired
+    private long currentTick;
+    private int pendingCount;
+    private ScheduledExecutorService driver;
+
+    /**
+     * @param tick Resolution of the wheel. Timers fire at most one tick late.
+     * @param wheelSize Number of buckets, rounded up to a power of two.
+     */
+    public TimerWheel(Clock clock, Duration tick, int wheelSize) {
+        if (tick.toMillis() < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("tick must be at least a millisecond and wheelSize positive");
+        }
+        this.clock = clock;
+        this.tickMillis = tick.toMillis();
+        int size = Math.max(Integer.highestOneBit(wheelSize - 1) << 1, 1);
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.startMillis = clock.millis();
+    }
+
+    /**
+     * Schedules a task to run once the delay has passed.
+     * @return Handle that can cancel the timer
+     */
+    public synchronized Timeout schedule(Task task, Duration delay) {
+        long elapsed = clock.millis() - startMillis;
+        long deadlineTick = Math.max((elapsed + delay.toMillis() + tickMillis - 1) / tickMillis, currentTick);
+        Timeout timeout = new Timeout(this, task, deadlineTick);
+        link(timeout);
+        pendingCount++;
+        return timeout;
+    }
+
+    /**
+     * Fires every timer that has expired according to the clock.
+     * @return The number of tasks that ran
+     */
+    public int advance() {
+        int fired = 0;
+        while (true) {
+            Timeout expired;
+            synchronized (this) {
+                long nowTick = (clock.millis() - startMillis) / tickMillis;
+                if (currentTick > nowTick) {
+                    return fired;
+                }
+                expired = collectExpired(currentTick);
+                currentTick++;
+            }
+            while (expired != null) {
+                Timeout next = expired.next;
+                expired.next = null;
+                try {
+                    expired.task.run(expired);
+                } catch (RuntimeException e) {
+                    log.error("Timer task failed", e);
+                }
+                fired++;
+                expired = next;
+            }
+        }
+    }
+
+    /**
+     * @return Timers scheduled and not yet fired or cancelled
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Starts a daemon thread that advances the wheel once per tick.
+     */
+    public synchronized void start() {
+        if (driver != null) {
+            return;
+        }
+        driver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "timer-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        driver.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the driver thread. Pending timers are kept but no longer fire on their own.
+     */
+    @Override
+    public synchronized void close() {
+        if (driver != null) {
+            driver.shutdownNow();
+            driver = null;
+        }
+    }
+
+    /**
+     * Unlinks the timers of this tick's bucket that are due, returning them as a singly linked list.
+     */
+    private Timeout collectExpired(long tick) {
+        Timeout expired = null;
+        Timeout timeout = buckets[(int) (tick & mask)];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= tick) {
+                unlink(timeout);
+                pendingCount--;
+                timeout.state = Timeout.EXPIRED;
+                timeout.next = expired;
+                expired = timeout;
+            }
+            timeout = next;
+        }
+        return expired;
+    }
+
+    private void link(Timeout timeout) {
+        int bucket = (int) (timeout.deadlineTick & mask);
+        Timeout head = buckets[bucket];
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        buckets[bucket] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.deadlineTick & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.state != Timeout.PENDING) {
+            return false;
+        }
+        unlink(timeout);
+        pendingCount--;
+        timeout.state = Timeout.CANCELLED;
+        return true;
+    }
+
+    /**
+     * Handle for one scheduled timer.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final TimerWheel wheel;
+        private final Task task;
+        private final long deadlineTick;
+        private Timeout previous;
+        private Timeout next;
+        private int state;
+
+        private Timeout(TimerWheel wheel, Task task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return False if the timer had already fired or been cancelled
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        public boolean isCancelled() {
+            synchronized (wheel) {
+                return state == CANCELLED;
+            }
+        }
+
+        public boolean isExpired() {
+            synchronized (wheel) {
+                return state == EXPIRED;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.udacity.catpoint.data;
+
+import com.udacity.catpoint.service.ImageService;
+import com.udacity.catpoint.service.SecurityService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class ColumnarSecurityRepositoryImplTest {
+
+    @Test
+    void securityService_runsOnColumnarStore() {
+        ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl(1000);
+        SecurityService securityService = new SecurityService(repository, mock(ImageService.class));
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % 3]);
+            sensors.add(sensor);
+            securityService.addSensor(sensor);
+        }
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+
+        securityService.changeSensorActivationStatus(sensors.get(0), true);
+        securityService.changeSensorActivationStatus(sensors.get(1), true);
+
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(2, repository.getActiveSensorCount());
+        assertEquals(1, repository.getActiveSensorCount(SensorType.WINDOW));
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        assertEquals(0, repository.getActiveSensorCount());
+        securityService.removeSensor(sensors.get(2));
+        assertEquals(999, securityService.getSensors().size());
+    }
+
+    @Test
+    void snapshot_sharedUntilNextChange() {
+        ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl();
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        repository.addSensor(door);
+
+        SensorSnapshot first = repository.getSensorSnapshot();
+        assertSame(first, repository.getSensorSnapshot());
+        Sensor stored = first.getSensor(door.getSensorId());
+        assertEquals("Door", stored.getName());
+        stored.setActive(true);
+        assertEquals(0, repository.getActiveSensorCount());
+
+        repository.updateSensor(stored);
+
+        SensorSnapshot second = repository.getSensorSnapshot();
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(second.getSensor(door.getSensorId()).getActive());
+        assertEquals(1, second.getActiveCount());
+        assertEquals(1, repository.getActiveSensorCount(SensorType.DOOR));
+    }
+}
@@ -0,0 +1,106 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedFileSecurityRepositoryImplTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void stateSurvivesReopen_andFileGrows() throws IOException {
+        Path file = tempDir.resolve("security.state");
+        List<Sensor> sensors = new ArrayList<>();
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            for (int i = 0; i < 150; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % 3]);
+                sensor.setActive(i % 10 == 0);
+                sensors.add(sensor);
+                repository.addSensor(sensor);
+            }
+            repository.removeSensor(sensors.get(0));
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        }
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+            assertEquals(14, repository.getActiveSensorCount());
+
+            SensorSnapshot snapshot = repository.getSensorSnapshot();
+            assertEquals(149, snapshot.size());
+            assertNull(snapshot.getSensor(sensors.get(0).getSensorId()));
+            Sensor stored = snapshot.getSensor(sensors.get(42).getSensorId());
+            assertEquals("Sensor 42", stored.getName());
+            assertEquals(SensorType.DOOR, stored.getSensorType());
+
+            stored.setActive(true);
+            repository.updateSensor(stored);
+            assertEquals(15, repository.getActiveSensorCount());
+            assertTrue(repository.getSensorSnapshot().getVersion() > snapshot.getVersion());
+        }
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            assertTrue(repository.getSensorSnapshot().getSensor(sensors.get(42).getSensorId()).getActive());
+        }
+    }
+
+    @Test
+    void longNames_truncatedToRecordWidth() throws IOException {
+        Path file = tempDir.resolve("security.state");
+        Sensor sensor = new Sensor("é".repeat(100), SensorType.WINDOW);
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            repository.addSensor(sensor);
+        }
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            String name = repository.getSensors().iterator().next().getName();
+            assertEquals("é".repeat(36), name);
+        }
+    }
+
+    @Test
+    void uncleanShutdown_tornRecordDropped_countsRebuilt() throws IOException {
+        Path file = tempDir.resolve("security.state");
+        MappedFileSecurityRepositoryImpl crashed = new MappedFileSecurityRepositoryImpl(file);
+        Sensor kept = new Sensor("Kept", SensorType.DOOR);
+        Sensor torn = new Sensor("Torn", SensorType.WINDOW);
+        kept.setActive(true);
+        torn.setActive(true);
+        crashed.addSensor(kept);
+        crashed.addSensor(torn);
+        //half of the second record reached the disk before the crash
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("Xo".getBytes(StandardCharsets.UTF_8)), 64 + 96 + 24);
+        }
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            assertEquals(1, repository.getSensors().size());
+            assertEquals("Kept", repository.getSensors().iterator().next().getName());
+            assertEquals(1, repository.getActiveSensorCount());
+            assertEquals(0, repository.getActiveSensorCount(SensorType.WINDOW));
+            repository.addSensor(new Sensor("Reused", SensorType.MOTION));
+        }
+
+        try (MappedFileSecurityRepositoryImpl repository = new MappedFileSecurityRepositoryImpl(file)) {
+            assertEquals(2, repository.getSensors().size());
+            assertEquals(1, repository.getActiveSensorCount(SensorType.DOOR));
+        }
+        crashed.close();
+    }
+}
@@ -0,0 +1,59 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PretendDatabaseSecurityRepositoryImplTest {
+
+    private final Preferences root = Preferences.userRoot().node("catpoint-test-" + System.nanoTime());
+
+    @AfterEach
+    void tearDown() throws BackingStoreException {
+        root.removeNode();
+    }
+
+    @Test
+    void repositoriesOnDifferentNodes_doNotShareState() {
+        PretendDatabaseSecurityRepositoryImpl first = new PretendDatabaseSecurityRepositoryImpl(root.node("first"));
+        PretendDatabaseSecurityRepositoryImpl second = new PretendDatabaseSecurityRepositoryImpl(root.node("second"));
+
+        first.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        first.addSensor(new Sensor("Door", SensorType.DOOR));
+
+        PretendDatabaseSecurityRepositoryImpl reloadedFirst = new PretendDatabaseSecurityRepositoryImpl(root.node("first"));
+        PretendDatabaseSecurityRepositoryImpl reloadedSecond = new PretendDatabaseSecurityRepositoryImpl(root.node("second"));
+        assertEquals(ArmingStatus.ARMED_AWAY, reloadedFirst.getArmingStatus());
+        assertEquals(1, reloadedFirst.getSensors().size());
+        assertEquals(ArmingStatus.DISARMED, reloadedSecond.getArmingStatus());
+        assertTrue(reloadedSecond.getSensors().isEmpty());
+        assertEquals(ArmingStatus.DISARMED, second.getArmingStatus());
+    }
+
+    @Test
+    void writeBehind_closed_changesWrittenAndLaterChangesRejected() {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(root.node("site"),
+                writer, Duration.ofMinutes(1), 100);
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        repository.addSensor(door);
+        door.setActive(true);
+        repository.updateSensor(door);
+
+        repository.close();
+
+        assertThrows(IllegalStateException.class, () -> repository.setArmingStatus(ArmingStatus.ARMED_HOME));
+        assertThrows(IllegalStateException.class, () -> repository.addSensor(new Sensor("Window", SensorType.WINDOW)));
+        PretendDatabaseSecurityRepositoryImpl reloaded = new PretendDatabaseSecurityRepositoryImpl(root.node("site"));
+        assertEquals(1, reloaded.getActiveSensorCount());
+        assertEquals(ArmingStatus.DISARMED, reloaded.getArmingStatus());
+        writer.shutdown();
+    }
+}
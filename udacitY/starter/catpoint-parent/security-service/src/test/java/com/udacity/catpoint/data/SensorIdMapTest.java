@@ -0,0 +1,73 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorIdMapTest {
+
+    @Test
+    void randomChanges_matchHashMap_andOlderVersionsUnchanged() {
+        Random random = new Random(42);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        Map<UUID, Integer> expected = new HashMap<>();
+        SensorIdMap<Integer> map = SensorIdMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            UUID id = ids.get(random.nextInt(ids.size()));
+            if (random.nextInt(3) == 0) {
+                expected.remove(id);
+                map = map.without(id);
+            } else {
+                expected.put(id, i);
+                map = map.with(id, i);
+            }
+        }
+        SensorIdMap<Integer> before = map;
+        Map<UUID, Integer> expectedBefore = new HashMap<>(expected);
+        for (UUID id : ids) {
+            map = map.without(id);
+        }
+
+        assertEquals(0, map.size());
+        assertFalse(map.iterator().hasNext());
+        assertEquals(expectedBefore.size(), before.size());
+        for (UUID id : ids) {
+            assertEquals(expectedBefore.get(id), before.get(id));
+        }
+        Set<Integer> iterated = new HashSet<>();
+        before.forEach(iterated::add);
+        assertEquals(new HashSet<>(expectedBefore.values()), iterated);
+    }
+
+    @Test
+    void idsWithSameHash_keptApart() {
+        //ids are hashed from the two halves combined, so these three collide
+        UUID first = new UUID(1, 2);
+        UUID second = new UUID(3, 0);
+        UUID third = new UUID(0, 3);
+
+        SensorIdMap<String> map = SensorIdMap.<String>empty().with(first, "a").with(second, "b").with(third, "c");
+        map = map.with(second, "B");
+
+        assertEquals(3, map.size());
+        assertEquals("a", map.get(first));
+        assertEquals("B", map.get(second));
+        map = map.without(first).without(third);
+        assertEquals(1, map.size());
+        assertEquals("B", map.get(second));
+        assertNull(map.get(first));
+        assertEquals("B", map.iterator().next());
+    }
+}
@@ -0,0 +1,81 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorTableTest {
+
+    @Test
+    void putAndView_roundTripsSensorFields() {
+        SensorTable table = new SensorTable();
+        Sensor sensor = new Sensor("Back Door", SensorType.DOOR);
+        sensor.setActive(true);
+
+        int slot = table.put(sensor);
+        SensorView view = table.view(slot);
+
+        assertEquals(sensor.getSensorId(), view.getSensorId());
+        assertEquals("Back Door", view.getName());
+        assertEquals(SensorType.DOOR, view.getSensorType());
+        assertTrue(view.isActive());
+        assertEquals(sensor.getSensorId(), view.toSensor().getSensorId());
+        assertEquals(slot, table.slotOf(sensor.getSensorId()));
+    }
+
+    @Test
+    void activeCounts_trackedPerType() {
+        SensorTable table = new SensorTable();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            table.put(id, "Sensor", SensorType.values()[i % 3], i % 2 == 0);
+        }
+
+        assertEquals(1000, table.size());
+        assertEquals(500, table.getActiveCount());
+        assertEquals(167, table.getActiveCount(SensorType.DOOR));
+        assertEquals(166, table.getActiveCount(SensorType.WINDOW));
+        assertEquals(167, table.getActiveCount(SensorType.MOTION));
+
+        int[] visited = new int[1];
+        table.forEachActive(slot -> visited[0]++);
+        assertEquals(500, visited[0]);
+
+        table.deactivateAll();
+        assertFalse(table.anyActive());
+        assertEquals(1000, table.size());
+    }
+
+    @Test
+    void remove_freesSlotForReuse_andKeepsOtherLookups() {
+        SensorTable table = new SensorTable();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            table.put(id, "Sensor " + i, SensorType.MOTION, true);
+        }
+        int removedSlot = table.slotOf(ids.get(17));
+
+        assertTrue(table.remove(ids.get(17)));
+        assertFalse(table.remove(ids.get(17)));
+        assertEquals(-1, table.slotOf(ids.get(17)));
+        assertEquals(199, table.getActiveCount());
+
+        for (int i = 0; i < ids.size(); i++) {
+            if (i != 17) {
+                assertEquals("Sensor " + i, table.getName(table.slotOf(ids.get(i))));
+            }
+        }
+
+        int reused = table.put(UUID.randomUUID(), "Replacement", SensorType.WINDOW, false);
+        assertEquals(removedSlot, reused);
+        assertEquals(200, table.size());
+    }
+}
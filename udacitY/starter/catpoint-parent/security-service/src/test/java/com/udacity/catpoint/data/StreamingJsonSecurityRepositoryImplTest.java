@@ -0,0 +1,130 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingJsonSecurityRepositoryImplTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void deltasAndMerges_reloadToSameState() throws IOException {
+        Path base = tempDir.resolve("security.json");
+        Sensor door = new Sensor("Front \"Door\"", SensorType.DOOR);
+        Sensor motion = new Sensor("Hallway", SensorType.MOTION);
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base, 5)) {
+            repository.addSensor(door);
+            repository.addSensor(motion);
+            motion.setActive(true);
+            door.setActive(true);
+            repository.updateSensors(List.of(door, motion));
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+            repository.removeSensor(door);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+        assertTrue(Files.exists(base), "deltas should have been merged into the base document");
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base, 5)) {
+            assertEquals(1, repository.getSensors().size());
+            Sensor loaded = repository.getSensorSnapshot().getSensor(motion.getSensorId());
+            assertEquals("Hallway", loaded.getName());
+            assertTrue(loaded.getActive());
+            assertEquals(1, repository.getActiveSensorCount(SensorType.MOTION));
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    void tornDelta_ignoredOnLoad() throws IOException {
+        Path base = tempDir.resolve("security.json");
+        Sensor window = new Sensor("Attic", SensorType.WINDOW);
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            repository.addSensor(window);
+        }
+        Files.write(tempDir.resolve("security.json.delta"), "{\"op\":\"remove\",\"sensorId\":\"".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            assertNotNull(repository.getSensorSnapshot().getSensor(window.getSensorId()));
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        }
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            assertEquals(1, repository.getSensors().size());
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    void corruptDelta_failsLoadAndKeepsFiles() throws IOException {
+        Path base = tempDir.resolve("security.json");
+        Path delta = tempDir.resolve("security.json.delta");
+        Sensor window = new Sensor("Attic", SensorType.WINDOW);
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            repository.addSensor(window);
+        }
+        //a finished line that cannot be read, followed by a good one
+        Files.write(delta, ("{\"op\":\"remove\",\"sensorId\":\n"
+                + "{\"op\":\"alarmStatus\",\"value\":\"ALARM\"}\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        byte[] deltas = Files.readAllBytes(delta);
+
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> new StreamingJsonSecurityRepositoryImpl(base));
+        assertTrue(e.getCause().getMessage().contains("line 2"));
+        assertFalse(Files.exists(base), "nothing should have been merged");
+        assertArrayEquals(deltas, Files.readAllBytes(delta));
+    }
+
+    @Test
+    void unnamedSensor_reloaded() throws IOException {
+        Path base = tempDir.resolve("security.json");
+        Sensor unnamed = new Sensor(null, SensorType.DOOR);
+        Sensor merged = new Sensor(null, SensorType.MOTION);
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            repository.addSensor(merged);
+            repository.merge();
+            repository.addSensor(unnamed);
+        }
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            assertNull(repository.getSensorSnapshot().getSensor(unnamed.getSensorId()).getName());
+            assertNull(repository.getSensorSnapshot().getSensor(merged.getSensorId()).getName());
+        }
+    }
+
+    @Test
+    void failedMerge_deltaWriterStillOpen() throws IOException {
+        Path base = tempDir.resolve("security.json");
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            repository.addSensor(door);
+            //a directory in place of the base document makes the move fail
+            Files.createDirectory(base);
+            Files.createFile(base.resolve("blocker"));
+
+            assertThrows(UncheckedIOException.class, repository::merge);
+            door.setActive(true);
+            repository.updateSensor(door);
+
+            Files.delete(base.resolve("blocker"));
+            Files.delete(base);
+        }
+
+        try (StreamingJsonSecurityRepositoryImpl repository = new StreamingJsonSecurityRepositoryImpl(base)) {
+            assertTrue(repository.getSensorSnapshot().getSensor(door.getSensorId()).getActive());
+        }
+    }
+}
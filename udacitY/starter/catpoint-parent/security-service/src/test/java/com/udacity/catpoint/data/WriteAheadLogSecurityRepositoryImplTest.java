@@ -0,0 +1,110 @@
+package com.udacity.catpoint.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogSecurityRepositoryImplTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void mutations_replayedOnReopen() throws IOException {
+        Path log = tempDir.resolve("security.log");
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.removeSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            assertEquals(1, repository.getSensors().size());
+            Sensor replayed = repository.getSensors().iterator().next();
+            assertEquals(door.getSensorId(), replayed.getSensorId());
+            assertEquals("Front Door", replayed.getName());
+            assertEquals(SensorType.DOOR, replayed.getSensorType());
+            assertTrue(replayed.getActive());
+            assertEquals(1, repository.getActiveSensorCount());
+            assertEquals(1, repository.getActiveSensorCount(SensorType.DOOR));
+            assertEquals(0, repository.getActiveSensorCount(SensorType.WINDOW));
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    void tornRecordAtEndOfLog_isTruncated() throws IOException {
+        Path log = tempDir.resolve("security.log");
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            repository.addSensor(new Sensor("Motion", SensorType.MOTION));
+        }
+        long validLength = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            assertEquals(1, repository.getSensors().size());
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        }
+        assertTrue(Files.size(log) > validLength);
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    void repeatedUpdates_compactLog() throws IOException {
+        Path log = tempDir.resolve("security.log");
+        Sensor sensor = new Sensor("Garage", SensorType.DOOR);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log, false, 16)) {
+            repository.addSensor(sensor);
+            for (int i = 0; i < 1000; i++) {
+                sensor.setActive(i % 2 == 0);
+                repository.updateSensor(sensor);
+            }
+        }
+        assertTrue(Files.size(log) < 1024, "log should have been compacted");
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            assertFalse(repository.getSensors().iterator().next().getActive());
+        }
+    }
+
+    @Test
+    void nameTooLongToReplay_rejectedBeforeWrite() throws IOException {
+        Path log = tempDir.resolve("security.log");
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            repository.addSensor(door);
+            long logLength = Files.size(log);
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> repository.addSensor(new Sensor("\u20ac".repeat(21_839), SensorType.WINDOW)));
+            door.setName("a".repeat(65_516));
+            assertThrows(IllegalArgumentException.class, () -> repository.updateSensor(door));
+
+            assertEquals(logLength, Files.size(log));
+            assertEquals(1, repository.getSensors().size());
+            door.setName("a".repeat(65_515));
+            repository.updateSensor(door);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(log)) {
+            assertEquals(65_515, repository.getSensors().iterator().next().getName().length());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.application.StatusListener;
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.SecurityRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class AsyncStatusListenerTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final StatusListener delegate = mock(StatusListener.class);
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void alarmBurst_coalescedToLatestStatus() {
+        AsyncStatusListener listener = new AsyncStatusListener(delegate, tasks::add, 8);
+
+        listener.notify(AlarmStatus.PENDING_ALARM);
+        listener.notify(AlarmStatus.ALARM);
+        listener.notify(AlarmStatus.PENDING_ALARM);
+        listener.catDetected(true);
+        verifyNoInteractions(delegate);
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).notify(AlarmStatus.PENDING_ALARM);
+        inOrder.verify(delegate).catDetected(true);
+        verifyNoMoreInteractions(delegate);
+        assertEquals(2, listener.getCoalescedCount());
+        assertEquals(2, listener.getDeliveredCount());
+        assertEquals(0, listener.getPendingCount());
+    }
+
+    @Test
+    void fullMailbox_dropsSupersededNotification_keepsLatestOfEachKind() {
+        AsyncStatusListener listener = new AsyncStatusListener(delegate, tasks::add, 4);
+
+        listener.notify(AlarmStatus.ALARM);
+        listener.catDetected(true);
+        listener.notify(AlarmStatus.PENDING_ALARM);
+        listener.sensorStatusChanged();
+        listener.catDetected(false);
+        runTasks();
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).catDetected(true);
+        inOrder.verify(delegate).notify(AlarmStatus.PENDING_ALARM);
+        inOrder.verify(delegate).sensorStatusChanged();
+        inOrder.verify(delegate).catDetected(false);
+        verify(delegate, never()).notify(AlarmStatus.ALARM);
+        assertEquals(1, listener.getDroppedCount());
+    }
+
+    @Test
+    void removeStatusListener_removesAsyncRegistration() {
+        SecurityService securityService = new SecurityService(mock(SecurityRepository.class),
+                mock(ImageService.class));
+        securityService.addStatusListener(delegate, tasks::add);
+        securityService.removeStatusListener(delegate);
+
+        securityService.setAlarmStatus(AlarmStatus.ALARM);
+
+        assertTrue(tasks.isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.InMemorySecurityRepositoryImpl;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CameraWorkersTest {
+
+    @Test
+    void manyCameras_eachProcessedSerially_latestVerdictsApplied() {
+        ImageService imageService = mock(ImageService.class, Answers.CALLS_REAL_METHODS);
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        BufferedImage catImage = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        //the cat image is shared by cameras, so only the other images tell which camera is busy
+        ConcurrentHashMap<BufferedImage, String> cameraOf = new ConcurrentHashMap<>();
+        Set<String> busyCameras = ConcurrentHashMap.newKeySet();
+        AtomicInteger overlaps = new AtomicInteger();
+        doAnswer(call -> {
+            BufferedImage image = call.getArgument(0);
+            String cameraId = cameraOf.get(image);
+            if (cameraId != null && !busyCameras.add(cameraId)) {
+                overlaps.incrementAndGet();
+            }
+            Thread.sleep(1);
+            if (cameraId != null) {
+                busyCameras.remove(cameraId);
+            }
+            return image == catImage;
+        }).when(imageService).imageContainsCat(any(), anyFloat());
+        int cameraCount = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CameraWorkers workers = new CameraWorkers(securityService, executor);
+
+        List<CompletableFuture<Void>> last = new ArrayList<>();
+        for (int i = 0; i < cameraCount; i++) {
+            securityService.addCamera("camera-" + i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < cameraCount; i++) {
+                String cameraId = "camera-" + i;
+                BufferedImage image = round == 9 && i % 2 == 0 ? catImage : new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+                if (image != catImage) {
+                    cameraOf.put(image, cameraId);
+                }
+                CompletableFuture<Void> result = workers.submit(cameraId, image);
+                if (round == 9) {
+                    last.add(result);
+                }
+            }
+        }
+        CompletableFuture.allOf(last.toArray(CompletableFuture[]::new)).join();
+        executor.shutdown();
+
+        assertEquals(0, overlaps.get());
+        CameraRegistry cameras = securityService.getCameraRegistry();
+        assertEquals(cameraCount / 2, cameras.getCatCameraCount());
+        for (int i = 0; i < cameraCount; i++) {
+            assertEquals(i % 2 == 0, cameras.seesCat(cameras.indexOf("camera-" + i)));
+        }
+    }
+
+    @Test
+    void waitingImage_replacedByNewerOne() throws InterruptedException {
+        ImageService imageService = mock(ImageService.class, Answers.CALLS_REAL_METHODS);
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return false;
+        }).when(imageService).imageContainsCat(any(), anyFloat());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CameraWorkers workers = new CameraWorkers(securityService, executor);
+        securityService.addCamera("garden");
+
+        CompletableFuture<Void> first = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> replaced = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        CompletableFuture<Void> newest = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        release.countDown();
+
+        newest.join();
+        first.join();
+        assertTrue(replaced.isCancelled());
+        assertEquals(1, workers.getReplacedImageCount());
+        verify(imageService, times(2)).imageContainsCat(any(), anyFloat());
+        assertThrows(IllegalArgumentException.class,
+                () -> workers.submit("attic", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)));
+        executor.shutdown();
+    }
+
+    @Test
+    void executorShutDownWhileProcessing_waitingImageFails() throws InterruptedException {
+        ImageService imageService = mock(ImageService.class, Answers.CALLS_REAL_METHODS);
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return false;
+        }).when(imageService).imageContainsCat(any(), anyFloat());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CameraWorkers workers = new CameraWorkers(securityService, executor);
+        securityService.addCamera("garden");
+
+        CompletableFuture<Void> first = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> waiting = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        executor.shutdown();
+        release.countDown();
+
+        first.join();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        CompletableFuture<Void> afterShutdown = workers.submit("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        assertTrue(afterShutdown.isCompletedExceptionally());
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
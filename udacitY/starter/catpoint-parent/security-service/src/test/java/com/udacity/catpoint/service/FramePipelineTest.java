@@ -0,0 +1,184 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.InMemorySecurityRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramePipelineTest {
+
+    private final InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+    private FramePipeline pipeline;
+
+    @AfterEach
+    void close() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    private static BufferedImage frame(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void encodedFrame_decodedDownscaledClassifiedAndApplied() throws IOException, InterruptedException {
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        SecurityService securityService = new SecurityService(repository, null);
+        AtomicInteger classifiedWidth = new AtomicInteger();
+        ImageService imageService = (image, confidenceThreshold) -> {
+            classifiedWidth.set(image.getWidth());
+            return true;
+        };
+        pipeline = new FramePipeline(securityService, imageService, null, 160, Map.of());
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(frame(640, 480, 0x808080), "png", png);
+
+        assertTrue(pipeline.submit(png.toByteArray()));
+        await(() -> securityService.getAlarmStatus() == AlarmStatus.ALARM);
+
+        assertEquals(160, classifiedWidth.get());
+        assertEquals(1, pipeline.getMetrics(FramePipeline.Stage.APPLY).getProcessedCount());
+        assertNull(pipeline.getMetrics(FramePipeline.Stage.GATE));
+    }
+
+    @Test
+    void unreadableFrame_countedAsFailed() throws InterruptedException {
+        pipeline = new FramePipeline(new SecurityService(repository, null), (image, threshold) -> false, null, 160, Map.of());
+
+        pipeline.submit(new byte[]{1, 2, 3});
+        await(() -> pipeline.getMetrics(FramePipeline.Stage.DECODE).getProcessedCount() == 1);
+
+        assertEquals(1, pipeline.getMetrics(FramePipeline.Stage.DECODE).getFailedCount());
+        assertEquals(0, pipeline.getMetrics(FramePipeline.Stage.DOWNSCALE).getProcessedCount());
+    }
+
+    @Test
+    void unchangedFrames_filteredByGate() throws InterruptedException {
+        AtomicInteger classified = new AtomicInteger();
+        ImageService imageService = (image, threshold) -> {
+            classified.incrementAndGet();
+            return false;
+        };
+        Map<FramePipeline.Stage, FramePipeline.StageSettings> settings = new EnumMap<>(FramePipeline.Stage.class);
+        settings.put(FramePipeline.Stage.DOWNSCALE, new FramePipeline.StageSettings(1, 64, FramePipeline.OverflowPolicy.BLOCK));
+        settings.put(FramePipeline.Stage.GATE, new FramePipeline.StageSettings(1, 64, FramePipeline.OverflowPolicy.BLOCK));
+        pipeline = new FramePipeline(new SecurityService(repository, null), imageService,
+                new FrameDifferenceGate(16, 12, 16, 0.05), 160, settings);
+
+        BufferedImage still = frame(160, 120, 0x404040);
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(still);
+        }
+        await(() -> pipeline.getMetrics(FramePipeline.Stage.GATE).getProcessedCount() == 20);
+
+        assertEquals(19, pipeline.getMetrics(FramePipeline.Stage.GATE).getFilteredCount());
+        await(() -> classified.get() == 1);
+    }
+
+    @Test
+    void unknownVerdictOrFailure_sameFrameClassifiedAgain() throws InterruptedException {
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        SecurityService securityService = new SecurityService(repository, null);
+        AtomicInteger classified = new AtomicInteger();
+        ImageService imageService = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+                return true;
+            }
+
+            @Override
+            public ImageVerdict classify(BufferedImage image, float confidenceThreshold) {
+                return switch (classified.incrementAndGet()) {
+                    case 1 -> ImageVerdict.UNKNOWN;
+                    case 2 -> throw new IllegalStateException("Rekognition unavailable");
+                    default -> ImageVerdict.CAT;
+                };
+            }
+        };
+        pipeline = new FramePipeline(securityService, imageService, new FrameDifferenceGate(16, 12, 16, 0.05), 160, Map.of());
+
+        BufferedImage still = frame(160, 120, 0x404040);
+        for (int i = 1; i <= 3; i++) {
+            int expected = i;
+            pipeline.submit(still);
+            await(() -> classified.get() == expected);
+        }
+        await(() -> securityService.getAlarmStatus() == AlarmStatus.ALARM);
+
+        assertEquals(1, pipeline.getMetrics(FramePipeline.Stage.CLASSIFY).getFailedCount());
+    }
+
+    @Test
+    void slowClassifier_keepLatest_dropsFramesInsteadOfFallingBehind() throws InterruptedException {
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        SecurityService securityService = new SecurityService(repository, null);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger classified = new AtomicInteger();
+        ImageService imageService = (image, threshold) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            classified.incrementAndGet();
+            //only the last frame is white
+            return image.getRGB(0, 0) == 0xFFFFFFFF;
+        };
+        Map<FramePipeline.Stage, FramePipeline.StageSettings> settings = new EnumMap<>(FramePipeline.Stage.class);
+        settings.put(FramePipeline.Stage.DOWNSCALE, new FramePipeline.StageSettings(1, 64, FramePipeline.OverflowPolicy.BLOCK));
+        settings.put(FramePipeline.Stage.CLASSIFY, new FramePipeline.StageSettings(1, 1, FramePipeline.OverflowPolicy.KEEP_LATEST));
+        pipeline = new FramePipeline(securityService, imageService, null, 160, settings);
+
+        for (int i = 0; i < 30; i++) {
+            pipeline.submit(frame(16, 16, 0x000000));
+        }
+        pipeline.submit(frame(16, 16, 0xFFFFFF));
+        await(() -> pipeline.getMetrics(FramePipeline.Stage.DOWNSCALE).getProcessedCount() == 31);
+        release.countDown();
+        await(() -> securityService.getAlarmStatus() == AlarmStatus.ALARM);
+
+        FramePipeline.StageMetrics classify = pipeline.getMetrics(FramePipeline.Stage.CLASSIFY);
+        assertTrue(classify.getDroppedCount() >= 28, "dropped " + classify.getDroppedCount());
+        assertTrue(classified.get() <= 3);
+        assertEquals(0, classify.getQueueDepth());
+    }
+
+    @Test
+    void gateWithSeveralWorkers_rejected() {
+        SecurityService securityService = new SecurityService(repository, null);
+        Map<FramePipeline.Stage, FramePipeline.StageSettings> settings = Map.of(FramePipeline.Stage.GATE,
+                new FramePipeline.StageSettings(2, 8, FramePipeline.OverflowPolicy.BLOCK));
+
+        assertThrows(IllegalArgumentException.class, () -> new FramePipeline(securityService,
+                (image, threshold) -> false, new FrameDifferenceGate(8, 8, 8, 0.1), 160, settings));
+    }
+}
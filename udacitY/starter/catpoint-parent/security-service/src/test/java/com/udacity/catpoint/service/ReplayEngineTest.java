@@ -0,0 +1,129 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.Mockito.*;
+
+public class ReplayEngineTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final ImageService imageService = mock(ImageService.class, CALLS_REAL_METHODS);
+
+    @Test
+    void replay_reproducesRecordedAlarmTrace() throws IOException {
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        Sensor existing = new Sensor("Front Door", SensorType.DOOR);
+        securityService.addSensor(existing);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        EventRecorder recorder = new EventRecorder(securityService, recording, clock);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        securityService.addSensor(window);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        clock.advance(Duration.ofSeconds(1));
+        securityService.changeSensorActivationStatus(existing, true);
+        securityService.changeSensorActivationStatus(window, true);
+        securityService.changeSensorActivationStatus(existing, false);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        securityService.processImage(null);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
+        securityService.processImage(null);
+        securityService.removeSensor(window);
+        recorder.close();
+
+        ReplayEngine.ReplayResult result = ReplayEngine.replay(new ByteArrayInputStream(recording.toByteArray()));
+
+        assertTrue(result.traceMatches());
+        assertTrue(result.getAnnouncementCount() > 0);
+        assertEquals(recorder.getEventCount(), result.getEventCount());
+        SecurityService replayed = result.getSecurityService();
+        assertEquals(securityService.getAlarmStatus(), replayed.getAlarmStatus());
+        assertEquals(ArmingStatus.ARMED_HOME, replayed.getArmingStatus());
+        assertEquals(1, replayed.getSensors().size());
+        assertEquals(existing.getSensorId(), replayed.getSensors().iterator().next().getSensorId());
+    }
+
+    @Test
+    void replay_runsLargeRecordings() throws IOException {
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        Sensor sensor = new Sensor("Motion", SensorType.MOTION);
+        securityService.addSensor(sensor);
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        EventRecorder recorder = new EventRecorder(securityService, recording, clock);
+        for (int i = 0; i < 100_000; i++) {
+            securityService.changeSensorActivationStatus(sensor, i % 2 == 0);
+        }
+        recorder.close();
+
+        ReplayEngine.ReplayResult result = ReplayEngine.replay(new ByteArrayInputStream(recording.toByteArray()));
+
+        assertTrue(result.traceMatches());
+        assertEquals(recorder.getEventCount(), result.getEventCount());
+        assertEquals(securityService.getAlarmStatus(), result.getSecurityService().getAlarmStatus());
+    }
+
+    @Test
+    void replay_timersFireBetweenSameInputs() throws IOException {
+        TimerWheel timers = new TimerWheel(clock, Duration.ofMillis(100), 64);
+        AlarmDelays delays = new AlarmDelays(Duration.ofSeconds(30), Duration.ofSeconds(60), Duration.ofMinutes(5));
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService, timers, delays);
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        securityService.addSensor(door);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        EventRecorder recorder = new EventRecorder(securityService, recording, clock);
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        //leaving during the exit delay
+        securityService.changeSensorActivationStatus(door, true);
+        securityService.changeSensorActivationStatus(door, false);
+        clock.advance(Duration.ofSeconds(61));
+        timers.advance();
+        //coming back, the entry delay runs out and the alarm later silences itself
+        securityService.changeSensorActivationStatus(door, true);
+        clock.advance(Duration.ofSeconds(31));
+        timers.advance();
+        clock.advance(Duration.ofMinutes(6));
+        timers.advance();
+        recorder.close();
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+
+        ReplayEngine.ReplayResult result = ReplayEngine.replay(new ByteArrayInputStream(recording.toByteArray()));
+
+        assertTrue(result.traceMatches());
+        assertEquals(3, result.getAnnouncementCount());
+        assertEquals(AlarmStatus.NO_ALARM, result.getSecurityService().getAlarmStatus());
+    }
+
+    @Test
+    void unnamedSensor_recordedAndReplayed() throws IOException {
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        EventRecorder recorder = new EventRecorder(securityService, recording, clock);
+        Sensor unnamed = new Sensor(null, SensorType.MOTION);
+        securityService.addSensor(unnamed);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.changeSensorActivationStatus(unnamed, true);
+        recorder.close();
+
+        ReplayEngine.ReplayResult result = ReplayEngine.replay(new ByteArrayInputStream(recording.toByteArray()));
+
+        assertTrue(result.traceMatches());
+        assertEquals(recorder.getEventCount(), result.getEventCount());
+        assertNull(result.getSecurityService().getSensors().iterator().next().getName());
+    }
+}
@@ -0,0 +1,161 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.data.SecurityRepository;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SecurityFleetTest {
+
+    @Test
+    void eachSite_runsItsWorkSerially_onItsOwnRepository() {
+        ConcurrentHashMap<String, SecurityRepository> repositories = new ConcurrentHashMap<>();
+        SecurityFleet fleet = new SecurityFleet(4, 1000, siteId -> repositories.computeIfAbsent(siteId,
+                id -> mock(SecurityRepository.class)), mock(ImageService.class));
+        ConcurrentHashMap<String, AtomicBoolean> busy = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int site = 0; site < 50; site++) {
+                String siteId = "site-" + site;
+                results.add(fleet.submit(siteId, securityService -> {
+                    AtomicBoolean flag = busy.computeIfAbsent(siteId, id -> new AtomicBoolean());
+                    if (!flag.compareAndSet(false, true)) {
+                        overlaps.incrementAndGet();
+                    }
+                    securityService.setArmingStatus(ArmingStatus.DISARMED);
+                    flag.set(false);
+                }));
+            }
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+
+        assertEquals(0, overlaps.get());
+        assertEquals(50, fleet.getSiteCount());
+        repositories.values().forEach(repository ->
+                verify(repository, times(100)).setAlarmStatus(AlarmStatus.NO_ALARM));
+        fleet.close();
+        assertEquals(0, fleet.getSiteCount());
+    }
+
+    @Test
+    void fullMailbox_rejectsWork() throws InterruptedException {
+        SecurityFleet fleet = new SecurityFleet(1, 1, siteId -> mock(SecurityRepository.class), mock(ImageService.class));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Void> blocking = fleet.submit("home", securityService -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        CompletableFuture<Void> queued = fleet.submit("home", securityService -> { });
+        CompletableFuture<Void> rejected = fleet.submit("home", securityService -> { });
+        release.countDown();
+
+        CompletionException thrown = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, thrown.getCause());
+        blocking.join();
+        queued.join();
+        fleet.close();
+    }
+
+    @Test
+    void siteBeingClosed_rejectsWork_untilRepositoryClosed() throws InterruptedException {
+        AtomicInteger repositoriesCreated = new AtomicInteger();
+        SecurityFleet fleet = new SecurityFleet(1, 10, siteId -> {
+            repositoriesCreated.incrementAndGet();
+            return mock(SecurityRepository.class);
+        }, mock(ImageService.class));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        fleet.submit("home", securityService -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+
+        CompletableFuture<Void> closing = fleet.closeSite("home");
+        CompletableFuture<Void> rejected = fleet.submit("home", securityService -> { });
+        release.countDown();
+        closing.join();
+
+        CompletionException thrown = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, thrown.getCause());
+        assertEquals(1, repositoriesCreated.get());
+        assertEquals(0, fleet.getSiteCount());
+        fleet.submit("home", securityService -> { }).join();
+        assertEquals(2, repositoriesCreated.get());
+        fleet.close();
+    }
+
+    @Test
+    void taskThrowsError_siteKeepsRunning() {
+        SecurityFleet fleet = new SecurityFleet(1, 10, siteId -> mock(SecurityRepository.class), mock(ImageService.class));
+
+        CompletableFuture<Void> failed = fleet.submit("home", securityService -> {
+            throw new AssertionError("task failed");
+        });
+        CompletableFuture<Void> next = fleet.submit("home", securityService -> { });
+
+        CompletionException thrown = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(AssertionError.class, thrown.getCause());
+        next.join();
+        fleet.close();
+    }
+
+    @Test
+    void sharedTimerWheel_appliesDelays_cancelledWhenSiteCloses() {
+        MutableClock clock = new MutableClock();
+        TimerWheel timers = new TimerWheel(clock, Duration.ofMillis(100), 64);
+        AlarmDelays delays = new AlarmDelays(Duration.ofSeconds(30), Duration.ZERO, Duration.ZERO);
+        SecurityFleet fleet = new SecurityFleet(2, 10, siteId -> new InMemorySecurityRepositoryImpl(),
+                mock(ImageService.class), timers, delays);
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        fleet.submit("home", securityService -> {
+            securityService.addSensor(door);
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            securityService.changeSensorActivationStatus(door, true);
+        }).join();
+        fleet.submit("office", securityService -> {
+            securityService.addSensor(new Sensor("Door", SensorType.DOOR));
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            securityService.changeSensorActivationStatus(securityService.getSensors().iterator().next(), true);
+        }).join();
+        assertEquals(2, timers.getPendingCount());
+
+        fleet.closeSite("office").join();
+        assertEquals(1, timers.getPendingCount());
+        clock.advance(Duration.ofSeconds(31));
+        timers.advance();
+
+        assertEquals(AlarmStatus.ALARM, fleet.getSite("home").getSecurityService().getAlarmStatus());
+        fleet.close();
+    }
+}
@@ -9,12 +9,19 @@ import com.udacity.catpoint.data.SensorType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.awt.image.BufferedImage;
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,7 +34,7 @@ public class SecurityServiceTest {
     @Mock
     private SecurityRepository securityRepository;
 
-    @Mock
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private ImageService imageService;
 
     @Mock
@@ -68,11 +75,9 @@ public class SecurityServiceTest {
     void pendingAlarm_allSensorsInactive_statusNoAlarm() {
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
 
-        // Create a set with the test sensor (inactive)
-        Set<Sensor> sensors = new HashSet<>();
+        // The test sensor is the only sensor and it is inactive
         testSensor.setActive(false);
-        sensors.add(testSensor);
-        when(securityRepository.getSensors()).thenReturn(sensors);
+        when(securityRepository.getActiveSensorCount()).thenReturn(0);
 
         // Deactivate the already inactive sensor
         securityService.changeSensorActivationStatus(testSensor, false);
@@ -127,7 +132,7 @@ public class SecurityServiceTest {
     @Test
     void noCatDetected_sensorsInactive_statusNoAlarm() {
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
-        when(securityRepository.getSensors()).thenReturn(new HashSet<>()); // No active sensors
+        when(securityRepository.getActiveSensorCount()).thenReturn(0); // No active sensors
 
         securityService.processImage(mock(BufferedImage.class));
 
@@ -155,9 +160,10 @@ public class SecurityServiceTest {
 
         securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
 
-        // Verify sensor was updated to inactive
+        // Verify sensor was updated to inactive in a single batch
         assertFalse(activeSensor.getActive());
-        verify(securityRepository).updateSensor(activeSensor);
+        verify(securityRepository).updateSensors(List.of(activeSensor));
+        verify(securityRepository, never()).updateSensor(any(Sensor.class));
     }
 
     // Test 11: If the system is armed-home while the camera shows a cat, set the alarm status to alarm
@@ -224,6 +230,16 @@ public class SecurityServiceTest {
         verify(securityRepository).removeSensor(sensor);
     }
 
+    // Test 15b: Bulk import stores all sensors in one repository call
+    @Test
+    void addSensors_singleRepositoryCall() {
+        List<Sensor> sensors = List.of(new Sensor("A", SensorType.DOOR), new Sensor("B", SensorType.MOTION));
+
+        securityService.addSensors(sensors);
+
+        verify(securityRepository).updateSensors(sensors);
+    }
+
     // Test 16: When cat detected but system is armed-away (not armed-home), no alarm
     @Test
     void catDetected_systemArmedAway_noAlarm() {
@@ -285,4 +301,264 @@ public class SecurityServiceTest {
 
         assertEquals(expectedSensors, securityService.getSensors());
     }
-}
\ No newline at end of file
+
+    // Test 20: A verdict that arrives after a newer image's verdict is dropped
+    @Test
+    void processImageAsync_staleVerdict_dropped() {
+        CompletableFuture<Boolean> older = new CompletableFuture<>();
+        CompletableFuture<Boolean> newer = new CompletableFuture<>();
+        doReturn(older, newer).when(imageService).imageContainsCatAsync(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        CompletableFuture<Boolean> olderResult = securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+        CompletableFuture<Boolean> newerResult = securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+        newer.complete(false);
+        older.complete(true);
+
+        assertFalse(newerResult.join());
+        assertTrue(olderResult.isCancelled());
+        verify(statusListener).catDetected(false);
+        verify(statusListener, never()).catDetected(true);
+        assertEquals(1, securityService.getStaleFrameCount());
+    }
+
+    // Test 21: Cancelling a scan abandons the analysis and never applies its verdict
+    @Test
+    void processImageAsync_cancelled_verdictNotApplied() {
+        CompletableFuture<Boolean> analysis = new CompletableFuture<>();
+        doReturn(analysis).when(imageService).imageContainsCatAsync(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null).cancel(true);
+        analysis.complete(true);
+
+        assertTrue(analysis.isCancelled());
+        verify(statusListener, never()).catDetected(anyBoolean());
+    }
+
+    // Test 22: A scan that takes longer than its timeout fails without changing the system
+    @Test
+    void processImageAsync_timeout_failsWithoutVerdict() {
+        doReturn(new CompletableFuture<>()).when(imageService).imageContainsCatAsync(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        CompletableFuture<Boolean> result = securityService.processImageAsync(
+                new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), Duration.ofMillis(20));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, thrown.getCause());
+        verify(statusListener, never()).catDetected(anyBoolean());
+    }
+
+    // Test 23: A frame without a cat from one camera does not clear a cat seen by another
+    @Test
+    void twoCameras_noCatFromOne_keepsCatFromOther() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        BufferedImage catImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage emptyImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        when(imageService.imageContainsCat(eq(catImage), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(eq(emptyImage), anyFloat())).thenReturn(false);
+        securityService.addCamera("garden");
+        securityService.addCamera("kitchen");
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImage("garden", catImage);
+        securityService.processImage("kitchen", emptyImage);
+
+        verify(statusListener, times(2)).catDetected(true);
+        verify(statusListener, never()).catDetected(false);
+        assertEquals(1, securityService.getCameraRegistry().getCatCameraCount());
+
+        securityService.processImage("garden", emptyImage);
+
+        verify(statusListener).catDetected(false);
+    }
+
+    // Test 24: Images from cameras that were never added are rejected
+    @Test
+    void processImage_unknownCamera_rejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> securityService.processImage("attic", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)));
+        verifyNoInteractions(imageService);
+    }
+
+    // Test 25: Many cameras processed in parallel end up with every camera's latest verdict
+    @Test
+    void manyCameras_processedInParallel_fusedVerdictMatchesCameras() throws InterruptedException {
+        BufferedImage catImage = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenAnswer(call -> call.getArgument(0) == catImage);
+        int cameraCount = 64;
+        for (int i = 0; i < cameraCount; i++) {
+            securityService.addCamera("camera-" + i);
+        }
+
+        Thread[] workers = new Thread[8];
+        for (int w = 0; w < workers.length; w++) {
+            int first = w;
+            workers[w] = new Thread(() -> {
+                for (int round = 0; round < 20; round++) {
+                    for (int i = first; i < cameraCount; i += workers.length) {
+                        boolean cat = round == 19 && i % 2 == 0;
+                        securityService.processImage("camera-" + i, cat ? catImage : new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+                    }
+                }
+            });
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        CameraRegistry cameras = securityService.getCameraRegistry();
+        assertEquals(cameraCount / 2, cameras.getCatCameraCount());
+        for (int i = 0; i < cameraCount; i++) {
+            assertEquals(i % 2 == 0, cameras.seesCat(cameras.indexOf("camera-" + i)));
+        }
+    }
+
+    // Test 26: Disarming forgets the cats every camera has seen
+    @Test
+    void disarm_clearsCatsOfAllCameras() {
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        securityService.addCamera("garden");
+        securityService.addCamera("kitchen");
+        securityService.processImage("garden", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        securityService.processImage("kitchen", new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        securityService.setArmingStatus(ArmingStatus.DISARMED);
+
+        assertFalse(securityService.getCameraRegistry().anyCameraSeesCat());
+    }
+
+    // Test 27: An unknown verdict neither clears a cat that was seen nor changes the alarm
+    @Test
+    void unknownVerdict_leavesCatAndAlarmUnchanged() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        doReturn(ImageVerdict.CAT, ImageVerdict.UNKNOWN).when(imageService).classify(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+        verify(statusListener, times(1)).catDetected(true);
+        verify(statusListener, never()).catDetected(false);
+        assertTrue(securityService.getCameraRegistry().anyCameraSeesCat());
+        assertEquals(1, securityService.getUnknownFrameCount());
+    }
+
+    // Test 28: A scan whose verdict is unknown fails without changing the system
+    @Test
+    void processImageAsync_unknownVerdict_failsWithoutVerdict() {
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.UNKNOWN)).when(imageService).classifyAsync(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        CompletableFuture<Boolean> result = securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, thrown.getCause());
+        verify(statusListener, never()).catDetected(anyBoolean());
+        assertEquals(1, securityService.getUnknownFrameCount());
+    }
+
+    // Test 29: With a scheduler, images are classified through it, urgently while the system is armed
+    @Test
+    void processImageAsync_withScheduler_armedImagesHighPriority() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        ClassificationScheduler scheduler = mock(ClassificationScheduler.class);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.NO_CAT)).when(scheduler).submit(any(), any(), anyFloat(), any());
+        securityService.setClassificationScheduler(scheduler);
+
+        assertFalse(securityService.processImageAsync(image, null).join());
+
+        verify(scheduler).submit(any(), eq(image), eq(SecurityService.CAT_CONFIDENCE_THRESHOLD), eq(ClassificationScheduler.Priority.HIGH));
+        verifyNoInteractions(imageService);
+    }
+
+    // Test 30: A status the repository failed to store stays dirty and is written with the next change
+    @Test
+    void repositoryWriteFails_statusWrittenAgainWithNextChange() {
+        doThrow(new IllegalStateException("disk full")).doNothing().when(securityRepository).setAlarmStatus(any());
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> securityService.setAlarmStatus(AlarmStatus.ALARM));
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        verify(securityRepository, times(2)).setAlarmStatus(AlarmStatus.ALARM);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    // Test 31: Services sharing a scheduler never replace each other's images, even from cameras with the same ID
+    @Test
+    void sharedScheduler_sameCameraIdInTwoServices_bothClassified() throws InterruptedException {
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
+        SecurityService neighbour = new SecurityService(mock(SecurityRepository.class), imageService);
+        try (ClassificationScheduler scheduler = new ClassificationScheduler(imageService, 5, 1)) {
+            securityService.setClassificationScheduler(scheduler);
+            neighbour.setClassificationScheduler(scheduler);
+            // the first image uses up the only token, so the next two have to wait together
+            securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+            while (scheduler.getDispatchedCount() == 0) {
+                Thread.sleep(1);
+            }
+
+            CompletableFuture<Boolean> ours = securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+            CompletableFuture<Boolean> theirs = neighbour.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+
+            assertFalse(ours.join());
+            assertFalse(theirs.join());
+            assertEquals(0, scheduler.getSupersededCount());
+        }
+    }
+
+    // Test 32: Images processed synchronously also go through the scheduler
+    @Test
+    void processImage_withScheduler_classifiedThroughScheduler() {
+        ClassificationScheduler scheduler = mock(ClassificationScheduler.class);
+        doReturn(CompletableFuture.completedFuture(ImageVerdict.CAT)).when(scheduler).submit(any(), any(), anyFloat(), any());
+        securityService.setClassificationScheduler(scheduler);
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        verify(scheduler).submit(any(), any(), anyFloat(), eq(ClassificationScheduler.Priority.LOW));
+        verify(statusListener).catDetected(true);
+        verifyNoInteractions(imageService);
+    }
+
+    // Test 33: An image replaced by a newer one while waiting for the scheduler is dropped as stale
+    @Test
+    void processImage_supersededInScheduler_droppedAsStale() {
+        ClassificationScheduler scheduler = mock(ClassificationScheduler.class);
+        CompletableFuture<ImageVerdict> superseded = new CompletableFuture<>();
+        superseded.cancel(false);
+        doReturn(superseded).when(scheduler).submit(any(), any(), anyFloat(), any());
+        securityService.setClassificationScheduler(scheduler);
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        verify(statusListener, never()).catDetected(anyBoolean());
+        assertEquals(1, securityService.getStaleFrameCount());
+    }
+
+    // Test 34: An image service that returns no verdict, like a plain mock, leaves a cat that was seen in place
+    @Test
+    void missingVerdict_treatedAsUnknown() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        doReturn(ImageVerdict.CAT).doReturn(null).when(imageService).classify(any(), anyFloat());
+        doReturn(CompletableFuture.completedFuture(null)).when(imageService).classifyAsync(any(), anyFloat());
+        securityService.addStatusListener(statusListener);
+
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        CompletableFuture<Boolean> result = securityService.processImageAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), null);
+
+        assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(ImageVerdict.UNKNOWN, securityService.classifyFrame(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), imageService));
+        verify(statusListener, never()).catDetected(false);
+        assertTrue(securityService.getCameraRegistry().anyCameraSeesCat());
+        assertEquals(2, securityService.getUnknownFrameCount());
+    }
+}
@@ -0,0 +1,86 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SensorEventFilterTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final TimerWheel wheel = new TimerWheel(clock, Duration.ofMillis(10), 64);
+    private final SecurityService securityService = mock(SecurityService.class);
+    private final Sensor sensor = new Sensor("Hallway", SensorType.MOTION);
+
+    private void elapse(Duration duration) {
+        clock.advance(duration);
+        wheel.advance();
+    }
+
+    @Test
+    void bounceWithinDebounceWindow_neverReachesService() {
+        SensorEventFilter filter = new SensorEventFilter(securityService, wheel, clock,
+                new SensorFilterSettings(Duration.ofMillis(200), 1, Duration.ZERO, 0, Duration.ZERO));
+
+        assertFalse(filter.changeSensorActivationStatus(sensor, true));
+        elapse(Duration.ofMillis(50));
+        filter.changeSensorActivationStatus(sensor, false);
+        elapse(Duration.ofMillis(500));
+
+        verifyNoInteractions(securityService);
+        assertEquals(1, filter.getBounceSuppressedCount());
+    }
+
+    @Test
+    void stableChange_passedOnWhenDebounceWindowEnds() {
+        SensorEventFilter filter = new SensorEventFilter(securityService, wheel, clock,
+                new SensorFilterSettings(Duration.ofMillis(200), 1, Duration.ZERO, 0, Duration.ZERO));
+
+        filter.changeSensorActivationStatus(sensor, true);
+        elapse(Duration.ofMillis(100));
+        filter.changeSensorActivationStatus(sensor, true);
+        verifyNoInteractions(securityService);
+        elapse(Duration.ofMillis(110));
+
+        verify(securityService, times(1)).changeSensorActivationStatus(sensor, true);
+        assertEquals(1, filter.getForwardedCount());
+    }
+
+    @Test
+    void hysteresis_requiresConsecutiveReports() {
+        SensorEventFilter filter = new SensorEventFilter(securityService, wheel, clock,
+                new SensorFilterSettings(Duration.ZERO, 3, Duration.ZERO, 0, Duration.ZERO));
+
+        assertFalse(filter.changeSensorActivationStatus(sensor, true));
+        assertFalse(filter.changeSensorActivationStatus(sensor, true));
+        assertTrue(filter.changeSensorActivationStatus(sensor, true));
+
+        verify(securityService, times(1)).changeSensorActivationStatus(sensor, true);
+        assertEquals(2, filter.getHysteresisSuppressedCount());
+    }
+
+    @Test
+    void flappingSensor_heldBack_thenLatestStatePassedOn() {
+        SensorEventFilter filter = new SensorEventFilter(securityService, wheel, clock,
+                new SensorFilterSettings(Duration.ZERO, 1, Duration.ofSeconds(10), 3, Duration.ofSeconds(30)));
+
+        for (int i = 0; i < 100; i++) {
+            filter.changeSensorActivationStatus(sensor, i % 2 == 0);
+            elapse(Duration.ofMillis(10));
+        }
+        filter.changeSensorActivationStatus(sensor, true);
+
+        verify(securityService, times(2)).changeSensorActivationStatus(sensor, true);
+        verify(securityService, times(2)).changeSensorActivationStatus(sensor, false);
+        assertEquals(1, filter.getFlapDetectedCount());
+        assertEquals(49, filter.getFlapSuppressedCount());
+        assertEquals(48, filter.getBounceSuppressedCount());
+
+        elapse(Duration.ofSeconds(30));
+        verify(securityService, times(3)).changeSensorActivationStatus(sensor, true);
+    }
+}
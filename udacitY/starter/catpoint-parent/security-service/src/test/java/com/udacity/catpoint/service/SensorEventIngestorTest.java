@@ -0,0 +1,62 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorSnapshot;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SensorEventIngestorTest {
+
+    @ParameterizedTest
+    @EnumSource(SensorEventIngestor.WaitStrategy.class)
+    void eventsFromManyProducers_allApplied(SensorEventIngestor.WaitStrategy waitStrategy) throws InterruptedException {
+        Sensor sensor = new Sensor("Door", SensorType.DOOR);
+        SecurityService securityService = mock(SecurityService.class);
+        when(securityService.getSensorSnapshot()).thenReturn(SensorSnapshot.of(1, List.of(sensor)));
+
+        SensorEventIngestor ingestor = new SensorEventIngestor(securityService, 64, 16, waitStrategy);
+        ingestor.start();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    ingestor.publish(sensor.getSensorId(), i % 2 == 0, i);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        ingestor.close();
+
+        assertEquals(2000, ingestor.getAppliedCount());
+        assertEquals(0, ingestor.getPendingCount());
+        verify(securityService, times(1000)).changeSensorActivationStatus(sensor, true);
+        verify(securityService, times(1000)).changeSensorActivationStatus(sensor, false);
+    }
+
+    @Test
+    void fullRing_rejectsWithoutBlocking() {
+        SensorEventIngestor ingestor = new SensorEventIngestor(mock(SecurityService.class), 4, 4,
+                SensorEventIngestor.WaitStrategy.SLEEPING);
+        UUID sensorId = UUID.randomUUID();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ingestor.tryPublish(sensorId, true, i));
+        }
+        assertFalse(ingestor.tryPublish(sensorId, true, 4));
+        assertEquals(1, ingestor.getRejectedCount());
+        assertEquals(4, ingestor.getPendingCount());
+    }
+}
@@ -0,0 +1,81 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.application.StatusListener;
+import com.udacity.catpoint.data.SecurityRepository;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SensorLivenessMonitorTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final StatusListener statusListener = mock(StatusListener.class);
+    private SensorLivenessMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        SecurityService securityService = new SecurityService(mock(SecurityRepository.class), mock(ImageService.class));
+        securityService.addStatusListener(statusListener);
+        monitor = new SensorLivenessMonitor(securityService, clock, 100_000, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void silentSensor_announcedOfflineOnce_reportingSensorStaysOnline() {
+        Sensor silent = new Sensor("Back Door", SensorType.DOOR);
+        Sensor chatty = new Sensor("Front Door", SensorType.DOOR);
+        monitor.register(silent, Duration.ofSeconds(30));
+        int chattyHandle = monitor.register(chatty, Duration.ofSeconds(30));
+
+        for (int i = 0; i < 9; i++) {
+            clock.advance(Duration.ofSeconds(10));
+            monitor.report(chattyHandle);
+            monitor.sweep();
+        }
+
+        verify(statusListener, times(1)).sensorOffline(silent);
+        verify(statusListener, never()).sensorOffline(chatty);
+        assertFalse(monitor.isOnline(silent.getSensorId()));
+        assertTrue(monitor.isOnline(chatty.getSensorId()));
+    }
+
+    @Test
+    void offlineSensor_watchedAgainAfterReporting() {
+        Sensor sensor = new Sensor("Window", SensorType.WINDOW);
+        monitor.register(sensor, Duration.ofSeconds(5));
+
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(1, monitor.sweep());
+        assertTrue(monitor.report(sensor.getSensorId()));
+        assertTrue(monitor.isOnline(sensor.getSensorId()));
+
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(1, monitor.sweep());
+        verify(statusListener, times(2)).sensorOffline(sensor);
+    }
+
+    @Test
+    void manySensors_sweepOnlyFindsTheSilentOnes() {
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            handles.add(monitor.register(new Sensor("Sensor " + i, SensorType.MOTION), Duration.ofSeconds(60)));
+        }
+
+        clock.advance(Duration.ofSeconds(30));
+        for (int i = 0; i < handles.size(); i += 2) {
+            monitor.report(handles.get(i));
+        }
+        assertEquals(0, monitor.sweep());
+        clock.advance(Duration.ofSeconds(31));
+
+        assertEquals(50_000, monitor.sweep());
+        assertEquals(50_000, monitor.getOfflineCount());
+    }
+}
@@ -0,0 +1,117 @@
+package com.udacity.catpoint.service;
+
+import com.udacity.catpoint.data.AlarmStatus;
+import com.udacity.catpoint.data.ArmingStatus;
+import com.udacity.catpoint.data.SecurityRepository;
+import com.udacity.catpoint.data.Sensor;
+import com.udacity.catpoint.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TimerWheelTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final TimerWheel wheel = new TimerWheel(clock, Duration.ofMillis(100), 8);
+
+    @Test
+    void timers_fireOnceTheirDelayHasPassed_includingLaterRounds() {
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(t -> fired.add("short"), Duration.ofMillis(250));
+        wheel.schedule(t -> fired.add("long"), Duration.ofSeconds(2));
+
+        clock.advance(Duration.ofMillis(200));
+        assertEquals(0, wheel.advance());
+        clock.advance(Duration.ofMillis(100));
+        assertEquals(1, wheel.advance());
+        assertEquals(List.of("short"), fired);
+
+        clock.advance(Duration.ofMillis(1600));
+        wheel.advance();
+        assertEquals(List.of("short"), fired);
+        clock.advance(Duration.ofMillis(100));
+        wheel.advance();
+        assertEquals(List.of("short", "long"), fired);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void cancelledTimer_neverFires() {
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timeout timeout = wheel.schedule(t -> fired.add("cancelled"), Duration.ofMillis(100));
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        clock.advance(Duration.ofSeconds(1));
+        wheel.advance();
+
+        assertTrue(fired.isEmpty());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void entryDelay_escalatesPendingAlarm_autoSilenceResetsAlarm() {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        SecurityService securityService = new SecurityService(securityRepository, mock(ImageService.class), wheel,
+                new AlarmDelays(Duration.ofSeconds(30), Duration.ZERO, Duration.ofMinutes(5)));
+
+        securityService.changeSensorActivationStatus(new Sensor("Door", SensorType.DOOR), true);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        clock.advance(Duration.ofSeconds(30));
+        wheel.advance();
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+        clock.advance(Duration.ofMinutes(5));
+        wheel.advance();
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void exitDelay_ignoresActivationsUntilItExpires() {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        SecurityService securityService = new SecurityService(securityRepository, mock(ImageService.class), wheel,
+                new AlarmDelays(Duration.ZERO, Duration.ofSeconds(60), Duration.ZERO));
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        securityService.changeSensorActivationStatus(door, true);
+        securityService.changeSensorActivationStatus(door, false);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+
+        clock.advance(Duration.ofSeconds(60));
+        wheel.advance();
+        securityService.changeSensorActivationStatus(door, true);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void disarmedWhileArming_exitDelayStillStarts() {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        SecurityService securityService = new SecurityService(securityRepository, mock(ImageService.class), wheel,
+                new AlarmDelays(Duration.ZERO, Duration.ofSeconds(60), Duration.ZERO));
+        //someone disarms while the sensors are being reset for arming away
+        doAnswer(call -> {
+            securityService.setArmingStatus(ArmingStatus.DISARMED);
+            return null;
+        }).when(securityRepository).updateSensors(any());
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        securityService.changeSensorActivationStatus(new Sensor("Door", SensorType.DOOR), true);
+
+        assertEquals(ArmingStatus.ARMED_AWAY, securityService.getArmingStatus());
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+    }
+}